@@ -19,7 +19,11 @@ package com.fatwire.gst.foundation.controller.action;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpSession;
 
@@ -33,6 +37,7 @@ import com.fatwire.cs.core.db.Util;
 import com.fatwire.gst.foundation.DebugHelper;
 import com.fatwire.gst.foundation.controller.annotation.Bind;
 import com.fatwire.gst.foundation.controller.annotation.InjectForRequest;
+import com.fatwire.gst.foundation.facade.cache.ClassCache;
 
 /**
  * Helper to bind variables to an Object based on annotated fields.
@@ -62,18 +67,11 @@ public final class AnnotationBinder {
         }
         final long start = LOG_TIME.isDebugEnabled() ? System.nanoTime() : 0L;
         try {
-            Class<?> c = object.getClass();
-            // all annotated fields.
-            while (c != Object.class && c != null) {
-                for (final Field field : c.getDeclaredFields()) {
-                    if (field.isAnnotationPresent(Bind.class)) {
-                        bindToField(object, ics, field);
-                    }
-
-                }
-
-                c = c.getSuperclass();
+            for (final BindPoint point : getBindPoints(object.getClass())) {
+                point.bind(object, ics);
             }
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException(e);
         } finally {
             DebugHelper.printTime(LOG_TIME, "inject model for " + object.getClass().getName(), start);
         }
@@ -86,128 +84,137 @@ public final class AnnotationBinder {
      * @throws SecurityException
      */
     public static void bindToField(final Object object, final ICS ics, final Field field) throws SecurityException {
+        try {
+            new BindPoint(object.getClass(), field).bind(object, ics);
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The bind points per class. Classes are scanned only once; the annotations
+     * on a class can not change. The classes are held with a weak reference
+     * and the bind points with a soft reference, as the bind points refer to
+     * the class through their fields.
+     */
+    private static final ClassCache<BindPoint[]> PLANS = new ClassCache<BindPoint[]>();
 
-        if (!field.isAccessible()) {
-            field.setAccessible(true); // make private fields accessible
+    private static BindPoint[] getBindPoints(final Class<?> clazz) {
+        BindPoint[] points = PLANS.get(clazz);
+        if (points == null) {
+            final List<BindPoint> x = new ArrayList<BindPoint>();
+            Class<?> c = clazz;
+            // all annotated fields.
+            while (c != Object.class && c != null) {
+                for (final Field field : c.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(Bind.class)) {
+                        x.add(new BindPoint(clazz, field));
+                    }
+                }
+                c = c.getSuperclass();
+            }
+            points = x.toArray(new BindPoint[x.size()]);
+            PLANS.put(clazz, points);
         }
-        final Bind ifr = field.getAnnotation(Bind.class);
+        return points;
+    }
 
-        String name = ifr.value();
-        if (StringUtils.isBlank(name)) {
-            name = field.getName();
+    /**
+     * A field to bind to, with the annotation, the converter and the session
+     * factory method resolved.
+     */
+    private static final class BindPoint {
+        private final Field field;
+        private final String name;
+        private final Bind.Scope scope;
+        private final Converter converter;
+        private final Method createMethod;
+
+        BindPoint(final Class<?> clazz, final Field field) {
+            if (!field.isAccessible()) {
+                field.setAccessible(true); // make private fields accessible
+            }
+            this.field = field;
+            final Bind ifr = field.getAnnotation(Bind.class);
+            this.name = StringUtils.isBlank(ifr.value()) ? field.getName() : ifr.value();
+            this.scope = ifr.scope();
+            this.converter = Converter.forType(field.getType());
+            Method m = null;
+            if (scope == Bind.Scope.session) {
+                try {
+                    m = clazz.getMethod("create" + field.getType().getSimpleName(), ICS.class);
+                } catch (final NoSuchMethodException e) {
+                    // ignore
+                }
+            }
+            this.createMethod = m;
         }
-        try {
 
-            switch (ifr.scope()) {
+        void bind(final Object object, final ICS ics) throws IllegalAccessException {
+            switch (scope) {
                 case ics:
                     if (field.getType().isArray()) {
 
                     } else {
-                        String var = ics.GetVar(name);
+                        final String var = ics.GetVar(name);
                         if (StringUtils.isBlank(var)) {
-                            put(object, field, ics.GetObj(name));
+                            put(object, ics.GetObj(name));
                         } else {
-                            put(object, field, var);
+                            put(object, var);
                         }
                     }
                     break;
                 case request:
-                    put(object, field, ics.getAttribute(name));
+                    put(object, ics.getAttribute(name));
 
                     break;
                 case session:
                     @SuppressWarnings("deprecation")
-                    HttpSession s = ics.getIServlet().getServletRequest().getSession(false);
+                    final HttpSession s = ics.getIServlet().getServletRequest().getSession(false);
                     if (s != null) {
                         Object obj = s.getAttribute(name);
-                        if (obj == null) {
+                        if (obj == null && createMethod != null) {
                             try {
-                                Method m = object.getClass().getMethod("create" + field.getType().getSimpleName(),
-                                        ICS.class);
-                                obj = m.invoke(object, ics);
+                                obj = createMethod.invoke(object, ics);
                                 s.setAttribute(name, obj);
-                            } catch (NoSuchMethodException e) {
-                                // ignore
-                            } catch (IllegalArgumentException e) {
+                            } catch (final IllegalArgumentException e) {
                                 LOG.debug(e);
-                            } catch (InvocationTargetException e) {
+                            } catch (final InvocationTargetException e) {
                                 LOG.warn(e.getMessage());
                             }
                         }
-                        put(object, field, obj);
+                        put(object, obj);
                     }
                     break;
 
             }
-        } catch (final IllegalAccessException e) {
-            throw new RuntimeException(e);
         }
 
-    }
-
-    private static void putPrimitive(Object object, Field field, Object v) throws IllegalAccessException {
-        try {
-            if (field.getType() == Byte.TYPE) {
-                field.setByte(object, (Byte) v);
-            } else if (field.getType() == Integer.TYPE) {
-                field.setInt(object, (Integer) v);
-            } else if (field.getType() == Double.TYPE) {
-                field.setDouble(object, (Double) (v));
-            } else if (field.getType() == Float.TYPE) {
-                field.setFloat(object, (Float) (v));
-            } else if (field.getType() == Long.TYPE) {
-                field.setLong(object, (Long) (v));
-            } else if (field.getType() == Short.TYPE) {
-                field.setShort(object, (Short) (v));
-            } else if (field.getType() == Boolean.TYPE) {
-                field.setBoolean(object, (Boolean) (v));
-            } else {
-                LOG.debug("Can't set primitive field " + field.getName() + " to " + v);
+        private void put(final Object object, final Object value) throws IllegalAccessException {
+            if (value == null)
+                return;
+            if (value instanceof String) {
+                put(object, (String) value);
+            } else if (field.getType().isPrimitive()) {
+                set(object, value);
             }
-        } catch (final IllegalAccessException e) {
-            throw new IllegalAccessException("IllegalAccessException binding " + v + " to field " + field.getName());
-        }
-
-    }
-
-    private static void put(Object object, Field field, Object value) throws IllegalAccessException {
-        if (value == null)
-            return;
-        if (value instanceof String) {
-            put(object, field, (String) value);
-        } else if (field.getType().isPrimitive()) {
-            putPrimitive(object, field, value);
-
-        } else {
-
         }
 
-    }
-
-    private static void put(Object object, Field field, String var) throws IllegalAccessException {
-        if (StringUtils.isBlank(var))
-            return;
-        if (field.getType().isPrimitive()) {
-            putPrimitive(object, field, var);
-        } else {
-
-            Object value = null;
-            if (field.getType() == String.class) {
-                value = var;
-            } else if (field.getType() == Date.class) {
-                value = Util.parseJdbcDate(var);
-            } else if (field.getType() == Integer.class) {
-                value = new Integer(var);
-            } else if (field.getType() == Double.class) {
-                value = new Double(var);
-            } else if (field.getType() == Character.class) {
-                value = new Character(var.charAt(0));
-            } else if (field.getType() == Long.class) {
-                value = new Long(var);
+        private void put(final Object object, final String var) throws IllegalAccessException {
+            if (StringUtils.isBlank(var))
+                return;
+            if (converter == null) {
+                LOG.debug("Can't set primitive field " + field.getName() + " to " + var);
+                return;
             }
+            final Object value = converter.convert(var);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Binding " + value + " to field " + field.getName() + " for " + object.getClass().getName());
             }
+            set(object, value);
+        }
+
+        private void set(final Object object, final Object value) throws IllegalAccessException {
             try {
                 field.set(object, value);
             } catch (final IllegalArgumentException e) {
@@ -218,33 +225,105 @@ public final class AnnotationBinder {
                         + field.getName());
             }
         }
-
     }
 
-    private static void putPrimitive(Object object, Field field, String s) throws IllegalAccessException {
-        if (StringUtils.isBlank(s))
-            return;
-        try {
-            if (field.getType() == Byte.TYPE) {
-                field.setByte(object, Byte.parseByte(s));
-            } else if (field.getType() == Integer.TYPE) {
-                field.setInt(object, Integer.parseInt(s));
-            } else if (field.getType() == Double.TYPE) {
-                field.setDouble(object, Double.parseDouble(s));
-            } else if (field.getType() == Float.TYPE) {
-                field.setFloat(object, Float.parseFloat(s));
-            } else if (field.getType() == Long.TYPE) {
-                field.setLong(object, Long.parseLong(s));
-            } else if (field.getType() == Short.TYPE) {
-                field.setShort(object, Short.parseShort(s));
-            } else if (field.getType() == Boolean.TYPE) {
-                field.setBoolean(object, Boolean.parseBoolean(s));
-            } else {
-                LOG.debug("Can't set primitive field " + field.getName() + " to " + s);
+    /**
+     * Converts a String to the type of the field. For primitive fields the
+     * wrapper is returned, Field.set unwraps it.
+     */
+    private abstract static class Converter {
+        abstract Object convert(String s);
+
+        private static final Map<Class<?>, Converter> CONVERTERS = new HashMap<Class<?>, Converter>();
+
+        /** for non-primitive types that are not supported: sets null */
+        private static final Converter NULL = new Converter() {
+            @Override
+            Object convert(final String s) {
+                return null;
             }
-        } catch (final IllegalAccessException e) {
-            throw new IllegalAccessException("IllegalAccessException binding " + s + " to field " + field.getName());
+        };
+
+        static {
+            CONVERTERS.put(String.class, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return s;
+                }
+            });
+            CONVERTERS.put(Date.class, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return Util.parseJdbcDate(s);
+                }
+            });
+            CONVERTERS.put(Character.class, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return new Character(s.charAt(0));
+                }
+            });
+            final Converter toInteger = new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return new Integer(s);
+                }
+            };
+            CONVERTERS.put(Integer.class, toInteger);
+            CONVERTERS.put(Integer.TYPE, toInteger);
+            final Converter toLong = new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return new Long(s);
+                }
+            };
+            CONVERTERS.put(Long.class, toLong);
+            CONVERTERS.put(Long.TYPE, toLong);
+            final Converter toDouble = new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return new Double(s);
+                }
+            };
+            CONVERTERS.put(Double.class, toDouble);
+            CONVERTERS.put(Double.TYPE, toDouble);
+            CONVERTERS.put(Byte.TYPE, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return Byte.valueOf(s);
+                }
+            });
+            CONVERTERS.put(Float.TYPE, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return Float.valueOf(s);
+                }
+            });
+            CONVERTERS.put(Short.TYPE, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return Short.valueOf(s);
+                }
+            });
+            CONVERTERS.put(Boolean.TYPE, new Converter() {
+                @Override
+                Object convert(final String s) {
+                    return Boolean.valueOf(s);
+                }
+            });
         }
 
+        /**
+         * @param type the field type
+         * @return the converter, null for primitive types that can not be
+         *         converted.
+         */
+        static Converter forType(final Class<?> type) {
+            final Converter c = CONVERTERS.get(type);
+            if (c == null && !type.isPrimitive()) {
+                return NULL;
+            }
+            return c;
+        }
     }
 }
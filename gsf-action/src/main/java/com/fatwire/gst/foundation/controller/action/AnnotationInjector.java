@@ -30,6 +30,7 @@ import org.springframework.beans.BeanUtils;
 
 import com.fatwire.gst.foundation.DebugHelper;
 import com.fatwire.gst.foundation.controller.annotation.InjectForRequest;
+import com.fatwire.gst.foundation.facade.cache.ClassCache;
 
 /**
  * Helper to inject dependencies into Object based on annotated fields and
@@ -61,27 +62,109 @@ public final class AnnotationInjector {
         }
         final long start = LOG_TIME.isDebugEnabled() ? System.nanoTime() : 0L;
         try {
-            Class<?> c = object.getClass();
+            for (final InjectionPoint point : getInjectionPoints(object.getClass())) {
+                point.inject(object, factory);
+            }
+        } finally {
+            DebugHelper.printTime(LOG_TIME, "inject model for " + object.getClass().getName(), start);
+        }
+    }
+
+    /**
+     * The injection points per class. Classes are scanned only once; the
+     * annotations on a class can not change. The classes are held with a weak
+     * reference and the injection points with a soft reference, so that
+     * classes that are reloaded, for instance by a Groovy classloader, can be
+     * garbage collected.
+     */
+    private static final ClassCache<InjectionPoint[]> PLANS = new ClassCache<InjectionPoint[]>();
+
+    /**
+     * Finds all the annotated public setter methods and then all the annotated
+     * fields of the class and its super classes. The outcome is cached per
+     * class.
+     * 
+     * @param clazz the class to inspect
+     * @return the injection points, in the order they need to be injected.
+     */
+    private static InjectionPoint[] getInjectionPoints(final Class<?> clazz) {
+        InjectionPoint[] points = PLANS.get(clazz);
+        if (points == null) {
+            final List<InjectionPoint> x = new ArrayList<InjectionPoint>();
             // first to all annotated public setter methods.
-            for (final Method method : c.getMethods()) {
+            for (final Method method : clazz.getMethods()) {
                 if (method.isAnnotationPresent(InjectForRequest.class)) {
-                    injectIntoMethod(object, factory, method);
+                    x.add(new MethodInjectionPoint(method));
                 }
             }
             // and then all annotated fields.
+            Class<?> c = clazz;
             while (c != Object.class && c != null) {
                 for (final Field field : c.getDeclaredFields()) {
                     if (field.isAnnotationPresent(InjectForRequest.class)) {
-                        injectIntoField(object, factory, field);
+                        x.add(new FieldInjectionPoint(field));
                     }
-
                 }
-
                 c = c.getSuperclass();
             }
-        } finally {
-            DebugHelper.printTime(LOG_TIME, "inject model for " + object.getClass().getName(), start);
+            points = x.toArray(new InjectionPoint[x.size()]);
+            PLANS.put(clazz, points);
         }
+        return points;
+    }
+
+    /**
+     * A field or method to inject into, with the annotation already resolved.
+     */
+    private abstract static class InjectionPoint {
+        final String name;
+        final Class<?> type;
+
+        InjectionPoint(final String name, final Class<?> type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        abstract void inject(Object object, Factory factory);
+    }
+
+    private static final class FieldInjectionPoint extends InjectionPoint {
+        private final Field field;
+
+        FieldInjectionPoint(final Field field) {
+            super(injectionName(field), field.getType());
+            field.setAccessible(true); // make private fields accessible
+            this.field = field;
+        }
+
+        @Override
+        void inject(final Object object, final Factory factory) {
+            injectIntoField(object, factory, field, name);
+        }
+    }
+
+    private static final class MethodInjectionPoint extends InjectionPoint {
+        private final Method method;
+
+        MethodInjectionPoint(final Method method) {
+            super(injectionName(method), method.getParameterTypes()[0]);
+            this.method = method;
+        }
+
+        @Override
+        void inject(final Object object, final Factory factory) {
+            injectIntoMethod(object, factory, method, name, type);
+        }
+    }
+
+    private static String injectionName(final Field field) {
+        final String name = field.getAnnotation(InjectForRequest.class).value();
+        return StringUtils.isBlank(name) ? field.getName() : name;
+    }
+
+    private static String injectionName(final Method method) {
+        final String name = method.getAnnotation(InjectForRequest.class).value();
+        return StringUtils.isBlank(name) ? BeanUtils.findPropertyForMethod(method).getName() : name;
     }
 
     /**
@@ -124,19 +207,17 @@ public final class AnnotationInjector {
      */
     public static void injectIntoField(final Object object, final Factory factory, final Field field)
             throws SecurityException {
+        field.setAccessible(true); // make private fields accessible
+        injectIntoField(object, factory, field, injectionName(field));
+    }
 
-        final InjectForRequest ifr = field.getAnnotation(InjectForRequest.class);
-
-        String name = ifr.value();
-        if (StringUtils.isBlank(name)) {
-            name = field.getName();
-        }
+    private static void injectIntoField(final Object object, final Factory factory, final Field field,
+            final String name) {
         final Object injectionValue = factory.getObject(name, field.getType());
         if (injectionValue == null) {
             throw new InjectionException(factory.getClass().getName() + " does not know how to inject '"
                     + field.getType().getName() + "' into the field '" + field.getName() + "' for an action.");
         }
-        field.setAccessible(true); // make private fields accessible
         if (LOG.isDebugEnabled()) {
             LOG.debug("Injecting " + injectionValue.getClass().getName() + " into field " + field.getName() + " for "
                     + object.getClass().getName());
@@ -160,15 +241,11 @@ public final class AnnotationInjector {
      */
     public static void injectIntoMethod(final Object object, final Factory factory, final Method method)
             throws SecurityException {
-        // LOG.trace("Found annotated field: "+field.getName());
-        final InjectForRequest ifr = method.getAnnotation(InjectForRequest.class);
-
-        String name = ifr.value();
-        if (StringUtils.isBlank(name)) {
-            name = BeanUtils.findPropertyForMethod(method).getName();
-        }
+        injectIntoMethod(object, factory, method, injectionName(method), method.getParameterTypes()[0]);
+    }
 
-        final Class<?> type = method.getParameterTypes()[0];
+    private static void injectIntoMethod(final Object object, final Factory factory, final Method method,
+            final String name, final Class<?> type) {
         final Object injectionValue = factory.getObject(name, type);
         if (injectionValue == null) {
             throw new InjectionException(factory.getClass().getName() + " does not know how to inject '" + type.getName()
@@ -16,6 +16,13 @@
 
 package com.fatwire.gst.foundation.controller.action.support;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -36,6 +43,18 @@ import com.fatwire.gst.foundation.controller.action.Injector;
  * <p/>
  * Objects are created via a {@link Factory}, that can be obtained via the
  * <tt>FactoryFactory</tt>.
+ * <p/>
+ * ActionLocators that always resolve a name to a new instance of the same
+ * Action class, or never resolve it, can return true from
+ * {@link #isCacheable()}. For those the outcome per action name is remembered:
+ * either the constructor of the Action class, so only the instantiation and
+ * injection happen per request, or that the name is not handled here, so the
+ * fallback ActionLocator is called straight away. As the names may come from
+ * requests, at most {@value #MAX_NAMES} names are remembered for each of the
+ * two outcomes. In
+ * development mode, switched on with {@link #setDevelopmentMode(boolean)} or
+ * the system property <tt>com.fatwire.gst.foundation.action.development</tt>,
+ * nothing is remembered.
  * 
  * @author Dolf Dijkstra
  * @since Apr 27, 2011
@@ -43,11 +62,20 @@ import com.fatwire.gst.foundation.controller.action.Injector;
 public abstract class AbstractActionLocator implements ActionLocator {
 
     protected static final Log LOG = LogFactory.getLog(AbstractActionLocator.class.getPackage().getName());
+
+    public static final String DEVELOPMENT_MODE_PROPNAME = "com.fatwire.gst.foundation.action.development";
+
+    /** upper bound on the number of names remembered per outcome */
+    static final int MAX_NAMES = 1000;
+
     /**
      * The default fallbackActionLocator in case no action is found.
      */
     private ActionLocator fallbackActionLocator;
     private Injector injector;
+    private boolean developmentMode = Boolean.getBoolean(DEVELOPMENT_MODE_PROPNAME);
+    private final ConcurrentMap<String, Constructor<? extends Action>> resolved = new ConcurrentHashMap<String, Constructor<? extends Action>>();
+    private final Set<String> notHandled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
     public AbstractActionLocator() {
         super();
@@ -85,7 +113,7 @@ public abstract class AbstractActionLocator implements ActionLocator {
      */
     public final Action getAction(final ICS ics, final String name) {
         Action action = null;
-        action = doFindAction(ics, name);
+        action = findAction(ics, name);
         /*
          * the if/else construct might be confusing here. The contract is that
          * only if doFindAction() is returning an Action (aka THIS locator)
@@ -117,6 +145,95 @@ public abstract class AbstractActionLocator implements ActionLocator {
 
     }
 
+    /**
+     * Calls {@link #doFindAction(ICS, String)}, or uses the remembered outcome
+     * for the name if this ActionLocator is cacheable.
+     * 
+     * @param ics the Content Server context
+     * @param name the name of the action
+     * @return the Action if found, null is valid.
+     */
+    final Action findAction(final ICS ics, final String name) {
+        if (name == null || developmentMode || !isCacheable()) {
+            return doFindAction(ics, name);
+        }
+        if (notHandled.contains(name)) {
+            return null;
+        }
+        final Constructor<? extends Action> constructor = resolved.get(name);
+        if (constructor != null) {
+            return newInstance(constructor);
+        }
+        final Action action = doFindAction(ics, name);
+        // the names may come from requests, do not let the outcomes grow
+        // unbounded
+        if (action == null) {
+            if (notHandled.size() < MAX_NAMES) {
+                notHandled.add(name);
+            }
+        } else if (resolved.size() < MAX_NAMES) {
+            try {
+                resolved.put(name, action.getClass().getConstructor());
+            } catch (final NoSuchMethodException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Action " + action.getClass().getName()
+                            + " has no public default constructor, it will not be cached for '" + name + "'.");
+                }
+            }
+        }
+        return action;
+    }
+
+    private Action newInstance(final Constructor<? extends Action> constructor) {
+        try {
+            return constructor.newInstance();
+        } catch (final InstantiationException e) {
+            throw new RuntimeException("Class " + constructor.getDeclaringClass().getName() + " " + e.getMessage(), e);
+        } catch (final IllegalAccessException e) {
+            throw new RuntimeException("Class " + constructor.getDeclaringClass().getName() + " " + e.getMessage(), e);
+        } catch (final InvocationTargetException e) {
+            throw new RuntimeException("Class " + constructor.getDeclaringClass().getName() + " "
+                    + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Indicates if the outcome of {@link #doFindAction(ICS, String)} depends
+     * only on the name, and that a found Action is a new instance that can be
+     * created with its public default constructor. Only then the outcome is
+     * remembered per name.
+     * 
+     * @return false, to be overridden by cacheable ActionLocators.
+     */
+    protected boolean isCacheable() {
+        return false;
+    }
+
+    /**
+     * Forgets the remembered outcomes of {@link #doFindAction(ICS, String)}.
+     */
+    public void clearResolvedActions() {
+        resolved.clear();
+        notHandled.clear();
+    }
+
+    /**
+     * @return true if no outcomes of {@link #doFindAction(ICS, String)} are
+     *         remembered.
+     */
+    public boolean isDevelopmentMode() {
+        return developmentMode;
+    }
+
+    /**
+     * @param developmentMode true to not remember the outcomes of
+     *            {@link #doFindAction(ICS, String)}
+     */
+    public void setDevelopmentMode(final boolean developmentMode) {
+        this.developmentMode = developmentMode;
+        clearResolvedActions();
+    }
+
     /**
      * Template Method for finding the Action for the custom ActionLocator. In
      * case the Action is created through this method, it is expected to be
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.controller.action.support;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fatwire.gst.foundation.controller.action.Factory;
+import com.fatwire.gst.foundation.controller.annotation.ServiceProducer;
+
+/**
+ * Factory root that holds the objects with application scope, as produced by
+ * methods annotated with
+ * <tt>{@literal @}ServiceProducer(cache = true, scope = Scope.application)</tt>.
+ * <p/>
+ * One instance is held by the {@link DefaultWebAppContext} and passed as a
+ * root to the per-request {@link BaseFactory}. The BaseFactory registers the
+ * application scoped objects it produces with this factory, so that they are
+ * created once and shared by all requests. This object does not produce
+ * objects itself.
+ * 
+ * @see ServiceProducer#scope()
+ */
+public final class ApplicationFactory implements Factory {
+
+    private final ConcurrentMap<String, Object> objects = new ConcurrentHashMap<String, Object>();
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T getObject(final String name, final Class<T> type) {
+        if (name == null) {
+            return null;
+        }
+        final Object o = objects.get(name);
+        if (o != null && !type.isAssignableFrom(o.getClass())) {
+            throw new IllegalStateException("Name conflict: '" + name + "' is in application scope and is of type  '"
+                    + o.getClass() + "' but a '" + type.getName()
+                    + "' was asked for. Please check your factories for naming conflicts.");
+        }
+        return (T) o;
+    }
+
+    /**
+     * Registers the object under the name, unless another thread already
+     * registered an object under that name.
+     * 
+     * @param name the name of the object
+     * @param o the object, ignored when null
+     * @return the registered object, this might be another object than the
+     *         passed in object.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T register(final String name, final T o) {
+        if (o == null) {
+            return null;
+        }
+        final Object other = objects.putIfAbsent(name, o);
+        return other == null ? o : (T) other;
+    }
+
+    /**
+     * Removes all the application scoped objects, they will be created again
+     * on next use.
+     */
+    public void clear() {
+        objects.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "ApplicationFactory [objects=" + objects.keySet() + "]";
+    }
+
+}
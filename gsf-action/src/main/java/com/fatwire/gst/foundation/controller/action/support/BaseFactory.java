@@ -19,8 +19,10 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
@@ -37,7 +39,11 @@ import com.fatwire.gst.foundation.facade.logging.LogUtil;
  * and {@link #ctorStrategy(String, Class)}) to produce objects.
  * <p/>
  * This class caches the produced objects for the lifetime of this object.
- * Effectively this means the lifetime of the ICS object.
+ * Effectively this means the lifetime of the ICS object, unless the producer
+ * method has application scope and this factory has an
+ * {@link ApplicationFactory} root. The producer methods
+ * of the factory classes are looked up in an index that is built once per
+ * class and shared by all instances.
  * 
  * @author Dolf Dijkstra
  * 
@@ -49,7 +55,8 @@ public abstract class BaseFactory implements Factory {
     protected final ICS ics;
 
     private final Map<String, Object> objectCache = new HashMap<String, Object>();
-    private Factory[] roots = new Factory[0];;
+    private Factory[] roots = new Factory[0];
+    private ApplicationFactory application;
 
     public BaseFactory(ICS ics) {
         super();
@@ -57,11 +64,26 @@ public abstract class BaseFactory implements Factory {
 
     }
 
+    /**
+     * @param ics the Content Server context
+     * @param roots the factories to ask when this factory can not produce an
+     *            object. An {@link ApplicationFactory} root is used to hold the
+     *            objects with application scope.
+     */
     public BaseFactory(ICS ics, Factory... roots) {
         super();
         this.ics = ics;
-        if (roots != null)
-            this.roots = roots;
+        if (roots != null) {
+            List<Factory> r = new ArrayList<Factory>(roots.length);
+            for (Factory root : roots) {
+                if (root instanceof ApplicationFactory && application == null) {
+                    application = (ApplicationFactory) root;
+                } else {
+                    r.add(root);
+                }
+            }
+            this.roots = r.toArray(new Factory[r.size()]);
+        }
     }
 
     @Override
@@ -115,6 +137,9 @@ public abstract class BaseFactory implements Factory {
             throw new IllegalStateException("Name conflict: '" + name + "' is in cache and is of type  '"
                     + o.getClass() + "' but a '" + c.getName()
                     + "' was asked for. Please check your factories for naming conflicts.");
+        if (o == null && application != null) {
+            o = application.getObject(name, c);
+        }
         if (o == null) {
             o = namedAnnotationStrategy(name, c);
         }
@@ -153,16 +178,9 @@ public abstract class BaseFactory implements Factory {
     protected <T> T namedAnnotationStrategy(String name, Class<T> c) throws InvocationTargetException {
 
         for (Class<?> reflectionClass : factoryClasses(ics)) {
-            for (Method m : reflectionClass.getMethods()) {
-                if (m.isAnnotationPresent(ServiceProducer.class)) {
-                    if (c.isAssignableFrom(m.getReturnType())) {
-                        String n = m.getAnnotation(ServiceProducer.class).name();
-                        if (name.equals(n)) {
-                            return createFromMethod(name, c, m);
-                        }
-                    }
-                }
-
+            Method m = ProducerIndex.forClass(reflectionClass).findNamed(name, c);
+            if (m != null) {
+                return createFromMethod(name, c, m);
             }
         }
         return null;
@@ -180,16 +198,9 @@ public abstract class BaseFactory implements Factory {
     protected <T> T unnamedAnnotationStrategy(String name, Class<T> c) throws InvocationTargetException {
 
         for (Class<?> reflectionClass : factoryClasses(ics)) {
-            for (Method m : reflectionClass.getMethods()) {
-                if (m.isAnnotationPresent(ServiceProducer.class)) {
-                    if (c.isAssignableFrom(m.getReturnType())) {
-                        String n = m.getAnnotation(ServiceProducer.class).name();
-                        if (StringUtils.isBlank(n)) {
-                            return createFromMethod(name, c, m);
-                        }
-                    }
-                }
-
+            Method m = ProducerIndex.forClass(reflectionClass).findUnnamed(c);
+            if (m != null) {
+                return createFromMethod(name, c, m);
             }
         }
         return null;
@@ -219,13 +230,9 @@ public abstract class BaseFactory implements Factory {
     protected <T> T reflectionStrategy(String name, Class<T> c) throws InvocationTargetException {
 
         for (Class<?> reflectionClass : factoryClasses(ics)) {
-
-            for (Method m : reflectionClass.getMethods()) {
-                if (m.getName().equals("create" + c.getSimpleName())) {
-                    if (c.isAssignableFrom(m.getReturnType())) {
-                        return createFromMethod(name, c, m);
-                    }
-                }
+            Method m = ProducerIndex.forClass(reflectionClass).findCreate(c);
+            if (m != null) {
+                return createFromMethod(name, c, m);
             }
         }
         return null;
@@ -289,8 +296,12 @@ public abstract class BaseFactory implements Factory {
             } else if (m.getParameterTypes().length == 0) {
                 o = invokeCreateMethod(m, from, name);
             }
-            if (shouldCache(m))
+            if (shouldCache(m)) {
+                if (application != null && isApplicationScoped(m)) {
+                    o = application.register(name, o);
+                }
                 objectCache.put(name, o);
+            }
 
         }
         return (T) o;
@@ -325,6 +336,15 @@ public abstract class BaseFactory implements Factory {
         return r;
     }
 
+    /**
+     * @param m the producer method
+     * @return true if the produced object should be shared by all requests.
+     */
+    protected boolean isApplicationScoped(Method m) {
+        ServiceProducer annon = m.getAnnotation(ServiceProducer.class);
+        return annon != null && annon.scope() == ServiceProducer.Scope.application;
+    }
+
     /**
      * @param e
      */
@@ -379,7 +399,7 @@ public abstract class BaseFactory implements Factory {
 
     @Override
     public String toString() {
-        return "BaseFactory [roots=" + Arrays.toString(roots) + "]";
+        return "BaseFactory [roots=" + Arrays.toString(roots) + ", application=" + application + "]";
     }
 
 }
@@ -46,6 +46,14 @@ public class ClassActionLocator extends AbstractActionLocator {
         super();
     }
 
+    /**
+     * A class name always resolves to a new instance of the same class.
+     */
+    @Override
+    protected boolean isCacheable() {
+        return true;
+    }
+
     @Override
     protected Action doFindAction(ICS ics, String name) {
         if (StringUtils.startsWith(name, CLASS_PREFIX)) {
@@ -40,6 +40,8 @@ import com.fatwire.gst.foundation.controller.support.WebAppContext;
  */
 public class DefaultWebAppContext extends WebAppContext implements FactoryProducer {
 
+    private final ApplicationFactory applicationFactory = new ApplicationFactory();
+
     public DefaultWebAppContext(final ServletContext context) {
         super(context);
 
@@ -77,7 +79,15 @@ public class DefaultWebAppContext extends WebAppContext implements FactoryProduc
     @Override
     public Factory getFactory(final ICS ics) {
         // called very often; once per request/pagelet, scoped per ICS context
-        return new IcsBackedObjectFactoryTemplate(ics);
+        return new IcsBackedObjectFactoryTemplate(ics, getApplicationFactory());
+    }
+
+    /**
+     * @return the factory root that holds the objects with application scope
+     *         for this web application.
+     */
+    public ApplicationFactory getApplicationFactory() {
+        return applicationFactory;
     }
 
 }
@@ -23,10 +23,12 @@ import COM.FutureTense.Interfaces.ICS;
 import com.fatwire.gst.foundation.controller.action.Factory;
 import com.fatwire.gst.foundation.controller.action.Model;
 import com.fatwire.gst.foundation.controller.annotation.ServiceProducer;
+import com.fatwire.gst.foundation.controller.annotation.ServiceProducer.Scope;
 import com.fatwire.gst.foundation.facade.assetapi.AssetAccessTemplate;
 import com.fatwire.gst.foundation.facade.assetapi.asset.PreviewContext;
 import com.fatwire.gst.foundation.facade.assetapi.asset.ScatteredAssetAccessTemplate;
 import com.fatwire.gst.foundation.facade.assetapi.asset.TemplateAssetAccess;
+import com.fatwire.gst.foundation.facade.mda.CachedLocaleService;
 import com.fatwire.gst.foundation.facade.mda.DefaultLocaleService;
 import com.fatwire.gst.foundation.facade.mda.LocaleService;
 import com.fatwire.gst.foundation.facade.search.SimpleSearchEngine;
@@ -35,14 +37,16 @@ import com.fatwire.gst.foundation.include.IncludeService;
 import com.fatwire.gst.foundation.mapping.IcsMappingService;
 import com.fatwire.gst.foundation.mapping.MappingService;
 import com.fatwire.gst.foundation.navigation.NavigationService;
+import com.fatwire.gst.foundation.navigation.support.CachedNavigationService;
 import com.fatwire.gst.foundation.navigation.support.SimpleNavigationHelper;
-import com.fatwire.gst.foundation.properties.AssetApiPropertyDao;
+import com.fatwire.gst.foundation.properties.CachedPropertyDao;
 import com.fatwire.gst.foundation.properties.PropertyDao;
 import com.fatwire.gst.foundation.url.WraPathTranslationService;
 import com.fatwire.gst.foundation.url.db.DbSimpleWRADao;
+import com.fatwire.gst.foundation.url.db.IndexedUrlRegistryDao;
 import com.fatwire.gst.foundation.url.db.UrlRegistry2;
 import com.fatwire.gst.foundation.url.db.UrlRegistryDao;
-import com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl;
+import com.fatwire.gst.foundation.vwebroot.CachedVirtualWebrootDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
 import com.fatwire.gst.foundation.wra.AliasCoreFieldDao;
@@ -100,14 +104,14 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
 
     @ServiceProducer(cache = true)
     public PropertyDao createPropertyDao(final ICS ics) {
-        return AssetApiPropertyDao.newInstance(ics);
+        return new CachedPropertyDao(ics);
     }
 
     @ServiceProducer(cache = true)
     public WraPathTranslationService createWraPathTranslationService(final ICS ics) {
         final SimpleWRADao wraDao = new DbSimpleWRADao(ics);
-        final VirtualWebrootDao vwDao = new VirtualWebrootApiBypassDao(ics);
-        final UrlRegistryDao regDao = new UrlRegistryDaoImpl(ics);
+        final VirtualWebrootDao vwDao = new CachedVirtualWebrootDao(ics, new VirtualWebrootApiBypassDao(ics));
+        final UrlRegistryDao regDao = IndexedUrlRegistryDao.newInstance(ics);
         final UrlRegistry2 x = new UrlRegistry2(ics, wraDao, vwDao, regDao);
         return x;
     }
@@ -134,7 +138,7 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
 
     @ServiceProducer(cache = true)
     public LocaleService createLocaleService(final ICS ics) {
-        return new DefaultLocaleService(ics);
+        return new CachedLocaleService(ics);
     }
 
     @ServiceProducer(cache = true)
@@ -147,7 +151,7 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
         return new Model();
     }
 
-    @ServiceProducer(cache = true)
+    @ServiceProducer(cache = true, scope = Scope.application)
     public SimpleSearchEngine createSimpleSearchEngine(final ICS ics) {
         return new SimpleSearchEngine("lucene");
     }
@@ -161,7 +165,7 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
         TemplateAssetAccess taa = getObject("templateAssetAccess", TemplateAssetAccess.class);
         // TODO come up with a generalized Strategy for per-site dispatching
         if ("avisports".equalsIgnoreCase(ics.GetVar("site"))) {
-            return new SimpleNavigationHelper(ics, taa, "title", "path");
+            return cached(ics, new SimpleNavigationHelper(ics, taa, "title", "path"), "simple", null);
         } else if (wraNavigationSupport) {
             // BE AWARE that the NavigationService is cached per request and
             // that the DimensionFilter is also reused per all the
@@ -177,11 +181,38 @@ public class IcsBackedObjectFactoryTemplate extends BaseFactory {
 
             AliasCoreFieldDao aliasDao = getObject("aliasCoreFieldDao", AliasCoreFieldDao.class);
             Date date = PreviewContext.getPreviewDateFromCSVar(ics, "previewDate");
-            return new WraNavigationService(ics, taa, aliasDao, filter, date);
+            NavigationService wns = new WraNavigationService(ics, taa, aliasDao, filter, date);
+            if (!CachedNavigationService.isEnabled(ics)) {
+                return wns;
+            }
+            // the tree depends on the locales the dimension filter prefers
+            String variant = filter == null ? "wra" : "wra|" + getPreferredLocales(ics, ls);
+            // without an explicit preview date the tree is for the current
+            // date, and is rebuilt after the reload interval
+            Date treeDate = ics.GetVar("previewDate") == null ? null : date;
+            return new CachedNavigationService(ics, wns, variant, treeDate);
         } else {
-            return new SimpleNavigationHelper(ics, taa, "linktext", "path");
+            return cached(ics, new SimpleNavigationHelper(ics, taa, "linktext", "path"), "simple", null);
+
+        }
+    }
+
+    private NavigationService cached(final ICS ics, final NavigationService delegate, final String variant,
+            final Date previewDate) {
+        if (CachedNavigationService.isEnabled(ics)) {
+            return new CachedNavigationService(ics, delegate, variant, previewDate);
+        }
+        return delegate;
+    }
 
+    @SuppressWarnings("deprecation")
+    private String getPreferredLocales(final ICS ics, final LocaleService ls) {
+        if (ls instanceof DefaultLocaleService) {
+            return String.valueOf(((DefaultLocaleService) ls).getPreferredLocaleIds());
         }
+        // unknown implementation, key on its inputs
+        return ics.GetVar("lang") + "|" + ics.GetVar("locale") + "|" + ics.GetSSVar("locale") + "|"
+                + ics.getIServlet().getServletRequest().getHeader("Accept-Language");
     }
 
 }
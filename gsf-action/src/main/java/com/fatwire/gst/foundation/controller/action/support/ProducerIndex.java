@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.controller.action.support;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.fatwire.gst.foundation.controller.annotation.ServiceProducer;
+import com.fatwire.gst.foundation.facade.cache.ClassCache;
+
+/**
+ * Index of the producer methods of a factory class, built once per class. It
+ * answers the lookups of the {@link BaseFactory} strategies with map lookups
+ * instead of scanning <tt>getMethods()</tt> on each call. The methods are
+ * kept in the order of <tt>getMethods()</tt>, so the first match is the same
+ * as with a scan.
+ * <p/>
+ * The indexes are held with a weak reference to the class and a soft
+ * reference to the index, so that factory classes that are reloaded, for
+ * instance by a Groovy classloader, can be garbage collected.
+ */
+final class ProducerIndex {
+
+    private static final ClassCache<ProducerIndex> INDEXES = new ClassCache<ProducerIndex>();
+
+    private static final Method[] NONE = new Method[0];
+
+    /** ServiceProducer name to producer methods */
+    private final Map<String, Method[]> named;
+
+    /** ServiceProducer methods without a name */
+    private final Method[] unnamed;
+
+    /** create&lt;Type&gt; method name to methods */
+    private final Map<String, Method[]> create;
+
+    /** asked type to the first assignable unnamed producer, or NONE */
+    private final ConcurrentMap<Class<?>, Method[]> unnamedByType = new ConcurrentHashMap<Class<?>, Method[]>();
+
+    static ProducerIndex forClass(final Class<?> clazz) {
+        ProducerIndex index = INDEXES.get(clazz);
+        if (index == null) {
+            index = new ProducerIndex(clazz);
+            INDEXES.put(clazz, index);
+        }
+        return index;
+    }
+
+    private ProducerIndex(final Class<?> clazz) {
+        final Map<String, List<Method>> n = new LinkedHashMap<String, List<Method>>();
+        final Map<String, List<Method>> cr = new LinkedHashMap<String, List<Method>>();
+        final List<Method> u = new ArrayList<Method>();
+        for (final Method m : clazz.getMethods()) {
+            if (m.isAnnotationPresent(ServiceProducer.class)) {
+                final String name = m.getAnnotation(ServiceProducer.class).name();
+                if (StringUtils.isBlank(name)) {
+                    u.add(m);
+                } else {
+                    add(n, name, m);
+                }
+            }
+            if (m.getName().startsWith("create")) {
+                add(cr, m.getName(), m);
+            }
+        }
+        named = toArrays(n);
+        create = toArrays(cr);
+        unnamed = u.toArray(new Method[u.size()]);
+    }
+
+    /**
+     * @param name the name of the ServiceProducer
+     * @param c the asked type
+     * @return the first producer with that name that returns a c, or null.
+     */
+    Method findNamed(final String name, final Class<?> c) {
+        return first(named.get(name), c);
+    }
+
+    /**
+     * @param c the asked type
+     * @return the first ServiceProducer without a name that returns a c, or
+     *         null.
+     */
+    Method findUnnamed(final Class<?> c) {
+        Method[] m = unnamedByType.get(c);
+        if (m == null) {
+            final Method found = first(unnamed, c);
+            m = found == null ? NONE : new Method[] { found };
+            unnamedByType.put(c, m);
+        }
+        return m.length == 0 ? null : m[0];
+    }
+
+    /**
+     * @param c the asked type
+     * @return the first create&lt;SimpleName&gt; method that returns a c, or
+     *         null.
+     */
+    Method findCreate(final Class<?> c) {
+        return first(create.get("create" + c.getSimpleName()), c);
+    }
+
+    private static Method first(final Method[] methods, final Class<?> c) {
+        if (methods != null) {
+            for (final Method m : methods) {
+                if (c.isAssignableFrom(m.getReturnType())) {
+                    return m;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static void add(final Map<String, List<Method>> map, final String key, final Method m) {
+        List<Method> l = map.get(key);
+        if (l == null) {
+            l = new ArrayList<Method>(1);
+            map.put(key, l);
+        }
+        l.add(m);
+    }
+
+    private static Map<String, Method[]> toArrays(final Map<String, List<Method>> map) {
+        final Map<String, Method[]> r = new HashMap<String, Method[]>(map.size() * 2);
+        for (final Map.Entry<String, List<Method>> e : map.entrySet()) {
+            r.put(e.getKey(), e.getValue().toArray(new Method[e.getValue().size()]));
+        }
+        return r;
+    }
+}
@@ -23,6 +23,14 @@ import java.lang.annotation.Target;
 /**
  * Annotation to tag a method that this is a producer method. The cache flag
  * indicates if this should be cached.
+ * <p/>
+ * The scope indicates for how long a cached object lives. Objects with
+ * <tt>request</tt> scope are cached for the life of the ICS object. Objects
+ * with <tt>application</tt> scope are created once and shared by all requests
+ * and threads, if the factory has an application root, see
+ * {@link com.fatwire.gst.foundation.controller.action.support.ApplicationFactory}.
+ * Application scoped objects need to be thread-safe and must not hold on to
+ * the ICS object that is passed to the producer method.
  * 
  * @author Dolf Dijkstra
  * 
@@ -30,9 +38,17 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface ServiceProducer {
+    public enum Scope {
+        request, application
+    }
 
     boolean cache() default false;
 
     String name() default "";
 
+    /**
+     * @return the scope of a cached object, only used when cache is true.
+     */
+    Scope scope() default Scope.request;
+
 }
@@ -36,6 +36,7 @@ import org.apache.commons.logging.Log;
 
 import com.fatwire.gst.foundation.controller.AppContext;
 import com.fatwire.gst.foundation.controller.action.support.DefaultWebAppContext;
+import com.fatwire.gst.foundation.facade.assetapi.listener.CoalescingAssetEventListener;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
 
 /**
@@ -213,6 +214,8 @@ public class WebAppContextLoader implements ServletContextListener {
     @Override
     public void contextDestroyed(final ServletContextEvent sce) {
         sce.getServletContext().removeAttribute(WebAppContext.WEB_CONTEXT_NAME);
+        // stop the asset event threads, they hold on to this classloader
+        CoalescingAssetEventListener.shutdown();
     }
 
     /**
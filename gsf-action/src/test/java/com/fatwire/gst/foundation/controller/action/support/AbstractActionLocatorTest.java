@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.controller.action.support;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.controller.action.Action;
+import com.fatwire.gst.foundation.test.MockICS;
+
+public class AbstractActionLocatorTest {
+
+    public static class TestAction implements Action {
+        public void handleRequest(ICS ics) {
+        }
+    }
+
+    /**
+     * Handles the names that start with 'a' and counts the lookups.
+     */
+    static class CountingActionLocator extends AbstractActionLocator {
+        private final boolean cacheable;
+        int lookups;
+
+        CountingActionLocator(boolean cacheable) {
+            this.cacheable = cacheable;
+        }
+
+        @Override
+        protected boolean isCacheable() {
+            return cacheable;
+        }
+
+        @Override
+        protected Action doFindAction(ICS ics, String name) {
+            lookups++;
+            return name.startsWith("a") ? new TestAction() : null;
+        }
+    }
+
+    private final ICS ics = new MockICS();
+
+    @Test
+    public void testResolvedActionIsRemembered() {
+        CountingActionLocator locator = new CountingActionLocator(true);
+        Action first = locator.findAction(ics, "a1");
+        Action second = locator.findAction(ics, "a1");
+        Assert.assertTrue(second instanceof TestAction);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(1, locator.lookups);
+    }
+
+    @Test
+    public void testNotHandledIsRemembered() {
+        CountingActionLocator locator = new CountingActionLocator(true);
+        Assert.assertNull(locator.findAction(ics, "b1"));
+        Assert.assertNull(locator.findAction(ics, "b1"));
+        Assert.assertEquals(1, locator.lookups);
+    }
+
+    @Test
+    public void testNotCacheable() {
+        CountingActionLocator locator = new CountingActionLocator(false);
+        locator.findAction(ics, "a1");
+        locator.findAction(ics, "a1");
+        locator.findAction(ics, "b1");
+        locator.findAction(ics, "b1");
+        Assert.assertEquals(4, locator.lookups);
+    }
+
+    @Test
+    public void testDevelopmentMode() {
+        CountingActionLocator locator = new CountingActionLocator(true);
+        locator.findAction(ics, "a1");
+        locator.setDevelopmentMode(true);
+        Assert.assertTrue(locator.isDevelopmentMode());
+        locator.findAction(ics, "a1");
+        locator.findAction(ics, "b1");
+        locator.findAction(ics, "b1");
+        Assert.assertEquals(4, locator.lookups);
+
+        // nothing that was remembered before is used again
+        locator.setDevelopmentMode(false);
+        locator.findAction(ics, "a1");
+        locator.findAction(ics, "a1");
+        Assert.assertEquals(5, locator.lookups);
+    }
+
+    @Test
+    public void testClearResolvedActions() {
+        CountingActionLocator locator = new CountingActionLocator(true);
+        locator.findAction(ics, "a1");
+        locator.findAction(ics, "b1");
+        locator.clearResolvedActions();
+        locator.findAction(ics, "a1");
+        locator.findAction(ics, "b1");
+        Assert.assertEquals(4, locator.lookups);
+    }
+
+    @Test
+    public void testRememberedNamesAreBounded() {
+        CountingActionLocator locator = new CountingActionLocator(true);
+        for (int i = 0; i < AbstractActionLocator.MAX_NAMES; i++) {
+            locator.findAction(ics, "a" + i);
+            locator.findAction(ics, "b" + i);
+        }
+        locator.lookups = 0;
+        locator.findAction(ics, "a-new");
+        locator.findAction(ics, "a-new");
+        locator.findAction(ics, "b-new");
+        locator.findAction(ics, "b-new");
+        Assert.assertEquals(4, locator.lookups);
+
+        // the names remembered before the bound was reached still are
+        locator.findAction(ics, "a0");
+        locator.findAction(ics, "b0");
+        Assert.assertEquals(4, locator.lookups);
+    }
+
+}
@@ -16,12 +16,16 @@
 
 package com.fatwire.gst.foundation.facade.assetapi;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 import COM.FutureTense.Interfaces.IList;
@@ -60,6 +64,12 @@ import com.openmarket.xcelerate.asset.AssetIdImpl;
  */
 public class AssetAccessTemplate {
 
+    /**
+     * The number of ids that are read together by
+     * {@link #readAsset(Iterable, AssetClosure, String...)}.
+     */
+    public static final int BULK_READ_WINDOW = 100;
+
     private final Session session;
     private AssetDataManager assetDataManager;
 
@@ -257,29 +267,106 @@ public class AssetAccessTemplate {
     }
 
     /**
-     * Method to read an asset and pass the results to the closure for further
-     * handling.
+     * Method to read assets and pass the results to the closure for further
+     * handling. Only the list of attributes is retrieved from the assets.
+     * <p/>
+     * The ids are read in windows of {@value #BULK_READ_WINDOW}. Within a
+     * window the ids are grouped by asset type and each type is read with one
+     * query, so the number of reads does not grow with the number of ids. The
+     * closure receives the assets in the order of the ids; ids that are not
+     * found are skipped. When the closure returns false no further windows are
+     * read.
      * 
      * @param ids a list of AssetIds
      * @param closure the closure
+     * @param attributes the list of attributes to return
      */
     public void readAsset(final Iterable<AssetId> ids, final AssetClosure closure, final String... attributes) {
-        final AssetDataManager m = getAssetDataManager();
-
-        try {
-            for (final AssetId id : ids) {
-                final AssetData asset = m.readAttributes(id, Arrays.asList(attributes));
-                if (asset != null) {
-                    if (!closure.work(asset)) {
-                        return;
-                    }
+        final List<AssetId> window = new ArrayList<AssetId>(BULK_READ_WINDOW);
+        for (final AssetId id : ids) {
+            if (id == null) {
+                continue;
+            }
+            window.add(id);
+            if (window.size() == BULK_READ_WINDOW) {
+                if (!readWindow(window, closure, attributes)) {
+                    return;
                 }
+                window.clear();
+            }
+        }
+        if (!window.isEmpty()) {
+            readWindow(window, closure, attributes);
+        }
+
+    }
 
+    /**
+     * Reads one window of ids with one query per asset type and hands the
+     * assets to the closure in the order of the window.
+     * <p/>
+     * The query is a basic search on the id column, without a subtype, so it
+     * is not limited to a definition. A search may leave out assets that a read
+     * by id returns, for instance voided assets. The ids that the query did
+     * not return are therefore read one by one with
+     * {@link AssetDataManager#readAttributes(AssetId, List)}, as before, so
+     * that assets of any status are handed out the same as by a read per id.
+     * 
+     * @param window the ids to read
+     * @param closure the closure
+     * @param attributes the list of attributes to return
+     * @return false if the closure asked to stop.
+     */
+    private boolean readWindow(final List<AssetId> window, final AssetClosure closure, final String... attributes) {
+        final Map<String, List<String>> byType = new LinkedHashMap<String, List<String>>();
+        for (final AssetId id : window) {
+            List<String> cids = byType.get(id.getType());
+            if (cids == null) {
+                cids = new ArrayList<String>();
+                byType.put(id.getType(), cids);
+            }
+            final String cid = Long.toString(id.getId());
+            if (!cids.contains(cid)) {
+                cids.add(cid);
+            }
+        }
+
+        final Map<String, AssetData> found = new HashMap<String, AssetData>();
+        for (final Map.Entry<String, List<String>> e : byType.entrySet()) {
+            final Query q = new QueryBuilder(e.getKey()).condition("id", OpTypeEnum.EQUALS, e.getValue())
+                    .setBasicSearch(true).attributes(attributes).toQuery();
+            for (final AssetData asset : readAssets(q)) {
+                found.put(key(asset.getAssetId()), asset);
+            }
+        }
+
+        for (final AssetId id : window) {
+            final String key = key(id);
+            AssetData asset = found.get(key);
+            if (asset == null && !found.containsKey(key)) {
+                asset = readAttributes(id, attributes);
+                // remember the miss for duplicate ids in the window
+                found.put(key, asset);
+            }
+            if (asset != null) {
+                if (!closure.work(asset)) {
+                    return false;
+                }
             }
+        }
+        return true;
+    }
+
+    private AssetData readAttributes(final AssetId id, final String... attributes) {
+        try {
+            return getAssetDataManager().readAttributes(id, Arrays.asList(attributes));
         } catch (final AssetAccessException e) {
             throw new RuntimeAssetAccessException(e);
         }
+    }
 
+    private static String key(final AssetId id) {
+        return id.getType() + ":" + id.getId();
     }
 
     /**
@@ -578,10 +665,7 @@ public class AssetAccessTemplate {
         if (list == null || list.isEmpty()) {
             return;
         }
-
-        for (final AssetId child : list) {
-            readAsset(child, closure, attributes);
-        }
+        readAsset((Iterable<AssetId>) list, closure, attributes);
 
     }
 
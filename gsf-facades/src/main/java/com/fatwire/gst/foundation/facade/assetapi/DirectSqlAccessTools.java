@@ -17,8 +17,12 @@
 package com.fatwire.gst.foundation.facade.assetapi;
 
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import COM.FutureTense.Interfaces.ICS;
 
@@ -40,6 +44,51 @@ import com.fatwire.gst.foundation.facade.sql.SqlHelper;
  * @since 2011-05-07
  */
 public final class DirectSqlAccessTools {
+
+    /**
+     * Milliseconds that the outcome is remembered for an asset type that was
+     * found not to be a flex asset type, as it may still be created as one.
+     */
+    private static final long NOT_FLEX_TTL = 60000L;
+
+    /**
+     * The value columns of the _Mungo table that are read, in order of
+     * preference. blobvalue and urlvalue are not supported.
+     */
+    private static final String[] VALUE_COLUMNS = { "stringvalue", "textvalue", "intvalue", "floatvalue",
+            "moneyvalue", "datevalue", "assetvalue" };
+
+    /**
+     * The number of ids and attribute names in a statement are rounded up to
+     * one of these sizes, to limit the number of distinct cached statements.
+     */
+    private static final int[] ARITIES = { 1, 2, 5, 10, 25, 50, 100, 250 };
+
+    private static final int MAX_ARITY = ARITIES[ARITIES.length - 1];
+
+    /** asset type to its flex attribute type */
+    private static final ConcurrentMap<String, FlexType> ATTR_TYPES = new ConcurrentHashMap<String, FlexType>();
+
+    /**
+     * The outcome of the flex attribute type lookup of an asset type.
+     */
+    private static final class FlexType {
+        /** the attribute type, null if the asset type is not flex */
+        private final String attrType;
+        private final long checkedAt = System.currentTimeMillis();
+
+        FlexType(String attrType) {
+            this.attrType = attrType;
+        }
+
+        boolean isCurrent() {
+            return attrType != null || System.currentTimeMillis() - checkedAt < NOT_FLEX_TTL;
+        }
+    }
+
+    /** statements per asset type, attribute count and id count */
+    private static final ConcurrentMap<String, PreparedStmt> STATEMENTS = new ConcurrentHashMap<String, PreparedStmt>();
+
     private final ICS ics;
 
     public DirectSqlAccessTools(ICS ics) {
@@ -47,10 +96,7 @@ public final class DirectSqlAccessTools {
     }
 
     public boolean isFlex(AssetId id) {
-        StatementParam param = FLEX_ATTR_TYPE.newParam();
-        param.setString(0, id.getType());
-        param.setString(1, id.getType());
-        return SqlHelper.selectSingle(ics, FLEX_ATTR_TYPE, param) != null;
+        return lookupFlexAttributeType(id.getType()) != null;
     }
 
     private static final PreparedStmt FLEX_ATTR_TYPE = new PreparedStmt(
@@ -63,68 +109,165 @@ public final class DirectSqlAccessTools {
     }
 
     public String getFlexAttributeType(AssetId id) {
-        StatementParam param = FLEX_ATTR_TYPE.newParam();
-        param.setString(0, id.getType());
-        param.setString(1, id.getType());
-        Row row = SqlHelper.selectSingle(ics, FLEX_ATTR_TYPE, param);
-        if (row == null) {
+        String attrType = lookupFlexAttributeType(id.getType());
+        if (attrType == null) {
             throw new IllegalArgumentException("Asset " + id + " is not a flex asset!");
         }
-        return row.getString("assetattr");
+        return attrType;
     }
-  
 
+    /**
+     * Looks up the attribute type of a flex asset type. The attribute type is
+     * cached for the life of the JVM, as asset types do not change their
+     * attribute type. That an asset type is not flex is only remembered for a
+     * minute, and a failed lookup is not remembered at all.
+     * 
+     * @param assetType
+     * @return the attribute type or null if the asset type is not flex
+     */
+    private String lookupFlexAttributeType(String assetType) {
+        FlexType type = ATTR_TYPES.get(assetType);
+        if (type == null || !type.isCurrent()) {
+            StatementParam param = FLEX_ATTR_TYPE.newParam();
+            param.setString(0, assetType);
+            param.setString(1, assetType);
+            Row row = SqlHelper.selectSingle(ics, FLEX_ATTR_TYPE, param);
+            type = new FlexType(row == null ? null : row.getString("assetattr"));
+            ATTR_TYPES.put(assetType, type);
+        }
+        return type.attrType;
+    }
 
     public String getFlexAttributeValue(AssetId id, String attrName) {
-        // todo: medium: fix as this is very inefficient
-        String attrType = getFlexAttributeType(id);
-        PreparedStmt flexFields = new PreparedStmt("SELECT attr.name AS name, cmungo.stringvalue AS stringvalue "
-                + "FROM " + attrType + " attr, " + id.getType() + "_Mungo cmungo " + "WHERE cmungo.cs_ownerid = ? "
-                + "AND cmungo.cs_attrid = attr.id AND attr.name = ?", Arrays.asList(attrType, id.getType() + "_Mungo"));
-        flexFields.setElement(0, id.getType() + "_Mungo", "cs_ownerid");
-        flexFields.setElement(1, attrType, "name");
-        StatementParam param = flexFields.newParam();
-        param.setLong(0, id.getId());
-        param.setString(1, attrName);
-        Row r = SqlHelper.selectSingle(ics, flexFields, param);
-        if (r == null)
-            return null;
-        else
-            return r.getString("stringvalue");
+        return getFlexAttributeValues(id, attrName).get(attrName);
     }
 
     public Map<String, String> getFlexAttributeValues(AssetId id, String... attrName) {
-        // todo: medium: fix as this is very inefficient
+        Map<String, String> map = getFlexAttributeValues(id.getType(), Collections.singleton(id.getId()), attrName).get(
+                id.getId());
+        if (map == null) {
+            return new HashMap<String, String>();
+        }
+        return map;
+    }
+
+    /**
+     * Loads a number of attributes for a number of flex assets of one asset
+     * type. The values are read from the _Mungo table with one statement per
+     * 250 assets. For multi-valued attributes only one of the values is
+     * returned.
+     * <p/>
+     * Values that are not stored in the stringvalue column (text, int, float,
+     * money, date and asset attributes) are returned as their string
+     * representation.
+     * 
+     * @param assetType the flex asset type
+     * @param ids the ids of the assets
+     * @param attrName the names of the attributes
+     * @return map of asset id to a map of attribute name to value. Assets
+     *         without any of the attributes are not present in the map.
+     */
+    public Map<Long, Map<String, String>> getFlexAttributeValues(String assetType, Collection<Long> ids,
+            String... attrName) {
         if (attrName == null || attrName.length == 0)
             throw new IllegalArgumentException("attrName must not be null or zero-length array.");
-        String attrType = getFlexAttributeType(id);
-        StringBuilder sql = new StringBuilder("SELECT attr.name AS name, cmungo.stringvalue AS stringvalue FROM ")
-                .append(attrType).append(" attr, ").append(id.getType())
-                .append("_Mungo cmungo WHERE cmungo.cs_ownerid = ? AND cmungo.cs_attrid = attr.id AND attr.name IN (");
-
-        for (int num = 0; num < attrName.length; num++) {
-            if (num > 0)
-                sql.append(",");
-            sql.append("?");
+        if (attrName.length > MAX_ARITY)
+            throw new IllegalArgumentException("No more than " + MAX_ARITY + " attributes can be loaded at once.");
+        String attrType = lookupFlexAttributeType(assetType);
+        if (attrType == null) {
+            throw new IllegalArgumentException("Asset type " + assetType + " is not a flex asset type!");
         }
+        Map<Long, Map<String, String>> result = new HashMap<Long, Map<String, String>>();
+        if (ids.isEmpty()) {
+            return result;
+        }
+        int attrArity = arity(attrName.length);
+        Long[] all = ids.toArray(new Long[ids.size()]);
+        for (int offset = 0; offset < all.length; offset += MAX_ARITY) {
+            int n = Math.min(MAX_ARITY, all.length - offset);
+            int idArity = arity(n);
+            PreparedStmt stmt = getStatement(assetType, attrType, attrArity, idArity);
+            StatementParam param = stmt.newParam();
+            int p = 0;
+            for (int i = 0; i < attrArity; i++) {
+                // pad with the last name, duplicates in an IN list are harmless
+                param.setString(p++, attrName[Math.min(i, attrName.length - 1)]);
+            }
+            for (int i = 0; i < idArity; i++) {
+                param.setLong(p++, all[offset + Math.min(i, n - 1)]);
+            }
+            for (Row r : SqlHelper.select(ics, stmt, param)) {
+                Long owner = r.getLong("cs_ownerid");
+                Map<String, String> values = result.get(owner);
+                if (values == null) {
+                    values = new HashMap<String, String>(attrName.length * 2);
+                    result.put(owner, values);
+                }
+                String name = r.getString("name");
+                if (!values.containsKey(name)) {
+                    values.put(name, value(r));
+                }
+            }
+        }
+        return result;
+    }
 
-        sql.append(")");
+    private static String value(Row r) {
+        for (String column : VALUE_COLUMNS) {
+            String v = r.getString(column);
+            if (v != null && v.length() > 0) {
+                return v;
+            }
+        }
+        return null;
+    }
 
-        PreparedStmt flexFields = new PreparedStmt(sql.toString(), Arrays.asList(id.getType(),attrType, id.getType() + "_Mungo"));
-        flexFields.setElement(0, id.getType() + "_Mungo", "cs_ownerid");
-        for (int num = 0; num < attrName.length; num++) {
-            flexFields.setElement(num + 1, attrType, "name");
+    private static int arity(int n) {
+        for (int a : ARITIES) {
+            if (n <= a) {
+                return a;
+            }
         }
+        throw new IllegalArgumentException("No more than " + MAX_ARITY + " values are supported.");
+    }
 
-        StatementParam param = flexFields.newParam();
-        param.setLong(0, id.getId());
-        for (int num = 0; num < attrName.length; num++) {
-            param.setString(num + 1, attrName[num]);
+    private static PreparedStmt getStatement(String assetType, String attrType, int attrArity, int idArity) {
+        String key = assetType + '/' + attrArity + '/' + idArity;
+        PreparedStmt stmt = STATEMENTS.get(key);
+        if (stmt == null) {
+            String mungo = assetType + "_Mungo";
+            StringBuilder sql = new StringBuilder("SELECT cmungo.cs_ownerid AS cs_ownerid, attr.name AS name");
+            for (String column : VALUE_COLUMNS) {
+                sql.append(", cmungo.").append(column).append(" AS ").append(column);
+            }
+            sql.append(" FROM ").append(attrType).append(" attr, ").append(mungo)
+                    .append(" cmungo WHERE cmungo.cs_attrid = attr.id AND attr.name IN (");
+            appendPlaceholders(sql, attrArity);
+            sql.append(") AND cmungo.cs_ownerid IN (");
+            appendPlaceholders(sql, idArity);
+            sql.append(")");
+
+            stmt = new PreparedStmt(sql.toString(), Arrays.asList(assetType, attrType, mungo));
+            int p = 0;
+            for (int i = 0; i < attrArity; i++) {
+                stmt.setElement(p++, attrType, "name");
+            }
+            for (int i = 0; i < idArity; i++) {
+                stmt.setElement(p++, mungo, "cs_ownerid");
+            }
+            PreparedStmt other = STATEMENTS.putIfAbsent(key, stmt);
+            if (other != null) {
+                stmt = other;
+            }
         }
-        Map<String, String> map = new HashMap<String, String>();
-        for (Row r : SqlHelper.select(ics, flexFields, param)) {
-            map.put(r.getString("name"), r.getString("stringvalue"));
+        return stmt;
+    }
+
+    private static void appendPlaceholders(StringBuilder sql, int n) {
+        for (int i = 0; i < n; i++) {
+            if (i > 0)
+                sql.append(",");
+            sql.append("?");
         }
-        return map;
     }
 }
@@ -16,6 +16,7 @@
 
 package com.fatwire.gst.foundation.facade.assetapi.asset;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -23,9 +24,11 @@ import java.util.List;
 
 import COM.FutureTense.Interfaces.ICS;
 
+import com.fatwire.assetapi.data.AssetData;
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.assetapi.query.Query;
 import com.fatwire.gst.foundation.facade.assetapi.AssetAccessTemplate;
+import com.fatwire.gst.foundation.facade.assetapi.AssetClosure;
 import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.facade.assetapi.AssetMapper;
 import com.fatwire.gst.foundation.facade.runtag.asset.AssetRelationTreeUtils;
@@ -67,6 +70,28 @@ public class MappedAssetAccessTemplate<T> extends AssetAccessTemplate {
         return this.readAsset(id, mapper, attributes);
     }
 
+    /**
+     * Reads the attributes of a list of assets with as few reads as possible.
+     * The mapped objects are returned in the order of the ids; ids that are not
+     * found are skipped.
+     * 
+     * @param ids
+     * @param attributes
+     * @return the mapped objects
+     * @see AssetAccessTemplate#readAsset(Iterable, AssetClosure, String...)
+     */
+    public List<T> readAll(final Iterable<AssetId> ids, final String... attributes) {
+        final List<T> l = new ArrayList<T>();
+        readAsset(ids, new AssetClosure() {
+
+            public boolean work(final AssetData asset) {
+                l.add(mapper.map(asset));
+                return true;
+            }
+        }, attributes);
+        return l;
+    }
+
     /**
      * Reads the associated assets of an asset and returns them as a
      * ScatteredAsset. This takes care of the asset read operation of the
@@ -139,11 +164,7 @@ public class MappedAssetAccessTemplate<T> extends AssetAccessTemplate {
         if (list == null || list.isEmpty()) {
             return Collections.emptyList();
         }
-        final List<T> l = new LinkedList<T>();
-        for (final AssetId child : list) {
-            l.add(read(child, attributes));
-        }
-        return l;
+        return readAll(list, attributes);
 
     }
 
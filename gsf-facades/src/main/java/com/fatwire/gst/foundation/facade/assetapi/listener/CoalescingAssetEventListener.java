@@ -0,0 +1,595 @@
+/*
+ * Copyright 2008 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.assetapi.listener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.CS.Factory;
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.install.AssetListenerInstall;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.openmarket.basic.event.AbstractAssetEventListener;
+
+/**
+ * AssetEventListener that hands the events to {@link #process(List)} in
+ * batches.
+ * <p/>
+ * By default the events are processed in the calling thread, one at a time,
+ * and like the {@link RunOnceAssetEventListener} only the first event for an
+ * asset on an ICS is processed.
+ * <p/>
+ * When the property <tt>com.fatwire.gst.foundation.listener.async</tt> is set
+ * to true the events are put on a queue per listener class and the save or
+ * publish thread returns immediately. Events for the same asset that arrive
+ * within the window of <tt>com.fatwire.gst.foundation.listener.window</tt>
+ * milliseconds (default 1000) are merged into one event, and a background
+ * thread processes all the merged events in one batch. The queue holds at most
+ * <tt>com.fatwire.gst.foundation.listener.queue</tt> assets (default 10000);
+ * when it is full the event is processed in the calling thread. So are the
+ * events when the background thread cannot be started; starting it is tried
+ * again after a minute. Subclasses
+ * can process some events in the calling thread regardless, see
+ * {@link #isSynchronous(AssetEvent)}. The queue depth and lag are available
+ * from {@link #getStatistics()}.
+ * <p/>
+ * The background thread works on its own listener instance that is
+ * initialized with an ICS from {@link #createWorkerICS()}. That ICS is not
+ * backed by a request, so subclasses should only use it for database, asset
+ * api and cache work, and must not rely on request variables.
+ * <p/>
+ * The background threads are stopped by {@link #shutdown()}, which the
+ * {@link EventPipelineContextListener} and the WebAppContextLoader call when
+ * the web application is stopped.
+ */
+public abstract class CoalescingAssetEventListener extends AbstractAssetEventListener {
+
+    public static final String ASYNC_PROPNAME = "com.fatwire.gst.foundation.listener.async";
+
+    public static final String WINDOW_PROPNAME = "com.fatwire.gst.foundation.listener.window";
+
+    public static final String QUEUE_PROPNAME = "com.fatwire.gst.foundation.listener.queue";
+
+    private static final long DEFAULT_WINDOW_MILLIS = 1000;
+
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+
+    /** time to wait for a background thread to process its last events */
+    private static final long SHUTDOWN_WAIT_MILLIS = 10000;
+
+    /** time to wait before a pipeline that failed to start is tried again */
+    private static final long RETRY_MILLIS = 60000;
+
+    private static final ConcurrentMap<Class<?>, Pipeline> PIPELINES = new ConcurrentHashMap<Class<?>, Pipeline>();
+
+    /**
+     * the time a pipeline failed to start, by listener class, guarded by the
+     * lock on PIPELINES.
+     */
+    private static final Map<Class<?>, Long> FAILURES = new HashMap<Class<?>, Long>();
+
+    protected final Log LOG = LogUtil.getLog(getClass());
+
+    private ICS ics;
+
+    /**
+     * The kind of asset event.
+     */
+    public enum Type {
+        ADDED, UPDATED, DELETED
+    }
+
+    /**
+     * An event for an asset, possibly merged from several events.
+     */
+    public static final class AssetEvent {
+        private final AssetId id;
+        private final Type type;
+        private final long receivedAt;
+
+        AssetEvent(final AssetId id, final Type type, final long receivedAt) {
+            this.id = id;
+            this.type = type;
+            this.receivedAt = receivedAt;
+        }
+
+        /**
+         * @return the asset
+         */
+        public AssetId getId() {
+            return id;
+        }
+
+        /**
+         * @return the type of the event
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return the time the first of the merged events was received.
+         */
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+
+        /**
+         * An asset that is added and then updated is still added, otherwise
+         * the later event wins.
+         */
+        AssetEvent merge(final AssetEvent later) {
+            final Type t = type == Type.ADDED && later.type == Type.UPDATED ? Type.ADDED : later.type;
+            return new AssetEvent(id, t, receivedAt);
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + id;
+        }
+    }
+
+    /**
+     * Queue depth and lag of the pipeline of a listener class.
+     */
+    public static final class Statistics {
+        private final int queueDepth;
+        private final long lag;
+        private final long lastBatchLag;
+        private final long received;
+        private final long coalesced;
+        private final long processed;
+        private final long batches;
+        private final long overflows;
+
+        Statistics(final int queueDepth, final long lag, final long lastBatchLag, final long received,
+                final long coalesced, final long processed, final long batches, final long overflows) {
+            this.queueDepth = queueDepth;
+            this.lag = lag;
+            this.lastBatchLag = lastBatchLag;
+            this.received = received;
+            this.coalesced = coalesced;
+            this.processed = processed;
+            this.batches = batches;
+            this.overflows = overflows;
+        }
+
+        /**
+         * @return the number of assets waiting to be processed.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return the age in milliseconds of the oldest waiting event, 0 if
+         *         none are waiting.
+         */
+        public long getLag() {
+            return lag;
+        }
+
+        /**
+         * @return the milliseconds between receiving the oldest event of the
+         *         last batch and finishing that batch.
+         */
+        public long getLastBatchLag() {
+            return lastBatchLag;
+        }
+
+        /**
+         * @return the number of events put on the queue.
+         */
+        public long getReceived() {
+            return received;
+        }
+
+        /**
+         * @return the number of events merged into an event that was already
+         *         waiting.
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        /**
+         * @return the number of merged events processed.
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * @return the number of batches processed.
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * @return the number of events processed in the calling thread because
+         *         the queue was full.
+         */
+        public long getOverflows() {
+            return overflows;
+        }
+
+        @Override
+        public String toString() {
+            return "queueDepth=" + queueDepth + ", lag=" + lag + "ms, lastBatchLag=" + lastBatchLag
+                    + "ms, received=" + received + ", coalesced=" + coalesced + ", processed=" + processed
+                    + ", batches=" + batches + ", overflows=" + overflows;
+        }
+    }
+
+    /**
+     * The queue and background thread of one listener class.
+     */
+    private static final class Pipeline implements Runnable {
+        private final Log log;
+        private final CoalescingAssetEventListener worker;
+        private final long window;
+        private final int capacity;
+        private final Map<String, AssetEvent> pending = new LinkedHashMap<String, AssetEvent>();
+        private boolean running;
+        private Thread thread;
+        private long lastBatchLag;
+        private long received;
+        private long coalesced;
+        private long processed;
+        private long batches;
+        private long overflows;
+
+        Pipeline(final CoalescingAssetEventListener worker, final long window, final int capacity) {
+            this.log = worker.LOG;
+            this.worker = worker;
+            this.window = window;
+            this.capacity = capacity;
+        }
+
+        synchronized void start() {
+            running = true;
+            thread = new Thread(this, "GSF event pipeline " + worker.getClass().getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        synchronized boolean offer(final AssetEvent event) {
+            if (!running) {
+                return false;
+            }
+            final String key = event.getId().toString();
+            final AssetEvent waiting = pending.get(key);
+            if (waiting != null) {
+                pending.put(key, waiting.merge(event));
+                received++;
+                coalesced++;
+                return true;
+            }
+            if (pending.size() >= capacity) {
+                overflows++;
+                return false;
+            }
+            pending.put(key, event);
+            received++;
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Stops the pipeline and waits for the background thread to process
+         * the waiting events.
+         */
+        void stop() throws InterruptedException {
+            final Thread t;
+            synchronized (this) {
+                running = false;
+                notifyAll();
+                t = thread;
+            }
+            if (t != null) {
+                t.join(SHUTDOWN_WAIT_MILLIS);
+                if (t.isAlive()) {
+                    log.warn("The event pipeline for " + worker.getClass().getName() + " did not stop within "
+                            + SHUTDOWN_WAIT_MILLIS + "ms.");
+                }
+            }
+        }
+
+        /**
+         * Waits for the window of the oldest event to close and takes all the
+         * waiting events. When stopped it returns the waiting events without
+         * delay.
+         */
+        private synchronized List<AssetEvent> take() throws InterruptedException {
+            while (running && pending.isEmpty()) {
+                wait();
+            }
+            if (running) {
+                final long due = pending.values().iterator().next().getReceivedAt() + window;
+                long now = System.currentTimeMillis();
+                while (running && now < due) {
+                    wait(due - now);
+                    now = System.currentTimeMillis();
+                }
+            }
+            final List<AssetEvent> batch = new ArrayList<AssetEvent>(pending.values());
+            pending.clear();
+            return batch;
+        }
+
+        public void run() {
+            try {
+                work();
+            } finally {
+                // the ICS is not used after the pipeline has stopped
+                worker.init(null);
+            }
+        }
+
+        private void work() {
+            boolean more = true;
+            while (more) {
+                List<AssetEvent> batch;
+                try {
+                    batch = take();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                synchronized (this) {
+                    more = running;
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing a batch of " + batch.size() + " asset events.");
+                }
+                try {
+                    worker.process(batch);
+                } catch (final RuntimeException e) {
+                    log.error("Processing " + batch.size() + " asset events failed: " + e.getMessage(), e);
+                } finally {
+                    worker.getICS().ClearErrno();
+                }
+                long oldest = Long.MAX_VALUE;
+                for (final AssetEvent event : batch) {
+                    oldest = Math.min(oldest, event.getReceivedAt());
+                }
+                synchronized (this) {
+                    lastBatchLag = System.currentTimeMillis() - oldest;
+                    processed += batch.size();
+                    batches++;
+                }
+            }
+        }
+
+        synchronized Statistics statistics() {
+            final long lag = pending.isEmpty() ? 0 : System.currentTimeMillis()
+                    - pending.values().iterator().next().getReceivedAt();
+            return new Statistics(pending.size(), lag, lastBatchLag, received, coalesced, processed, batches,
+                    overflows);
+        }
+    }
+
+    /**
+     * @return the statistics of the background pipelines, by listener class
+     *         name.
+     */
+    public static Map<String, Statistics> getStatistics() {
+        final Map<String, Statistics> m = new TreeMap<String, Statistics>();
+        for (final Map.Entry<Class<?>, Pipeline> e : PIPELINES.entrySet()) {
+            m.put(e.getKey().getName(), e.getValue().statistics());
+        }
+        return m;
+    }
+
+    /**
+     * Stops the background pipelines. The waiting events are processed before
+     * the threads end, this method waits for that.
+     */
+    public static void shutdown() {
+        final List<Pipeline> pipelines;
+        synchronized (PIPELINES) {
+            pipelines = new ArrayList<Pipeline>(PIPELINES.values());
+            PIPELINES.clear();
+            FAILURES.clear();
+        }
+        for (final Pipeline p : pipelines) {
+            try {
+                p.stop();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public final void assetAdded(final AssetId id) {
+        LOG.debug("Asset added event received for " + id);
+        receive(new AssetEvent(id, Type.ADDED, System.currentTimeMillis()));
+    }
+
+    @Override
+    public final void assetDeleted(final AssetId id) {
+        LOG.debug("Asset deleted event received for " + id);
+        receive(new AssetEvent(id, Type.DELETED, System.currentTimeMillis()));
+    }
+
+    @Override
+    public final void assetUpdated(final AssetId id) {
+        LOG.debug("Asset updated event received for " + id);
+        receive(new AssetEvent(id, Type.UPDATED, System.currentTimeMillis()));
+    }
+
+    private void receive(final AssetEvent event) {
+        if (isAsync() && !isSynchronous(event)) {
+            final Pipeline p = pipeline();
+            if (p != null && p.offer(event)) {
+                return;
+            }
+            LOG.warn("Processing " + event + " in the calling thread, the event queue for " + getClass().getName()
+                    + " is not available or full.");
+        }
+        if (seenBefore(event.getId())) {
+            LOG.debug("An event for asset " + event.getId() + " was executed before.");
+            return;
+        }
+        process(Collections.singletonList(event));
+    }
+
+    /**
+     * Tells if an event must be processed in the calling thread, also when
+     * the events are processed asynchronously. This is needed when the
+     * processing depends on state that is gone by the time the background
+     * thread gets to the event. The default is false.
+     *
+     * @param event the event
+     * @return true to process the event in the calling thread.
+     */
+    protected boolean isSynchronous(final AssetEvent event) {
+        return false;
+    }
+
+    /**
+     * Processes a batch of events. Each asset occurs at most once in the batch,
+     * the events are in the order they were first received.
+     *
+     * @param events the events
+     */
+    protected abstract void process(List<AssetEvent> events);
+
+    /**
+     * Creates the ICS for the background thread. The default creates an ICS
+     * that is not backed by a request.
+     *
+     * @return a new ICS
+     * @throws Exception when the ICS cannot be created
+     */
+    protected ICS createWorkerICS() throws Exception {
+        return Factory.newCS();
+    }
+
+    /**
+     * @return the pipeline of this listener class, or null if it cannot be
+     *         started.
+     */
+    private Pipeline pipeline() {
+        Pipeline p = PIPELINES.get(getClass());
+        if (p == null) {
+            synchronized (PIPELINES) {
+                p = PIPELINES.get(getClass());
+                if (p == null) {
+                    // only the time is kept on failure, not this listener
+                    // and its ICS
+                    final Long failedAt = FAILURES.get(getClass());
+                    if (failedAt != null && System.currentTimeMillis() - failedAt < RETRY_MILLIS) {
+                        return null;
+                    }
+                    p = newPipeline();
+                    if (p == null) {
+                        FAILURES.put(getClass(), System.currentTimeMillis());
+                    } else {
+                        FAILURES.remove(getClass());
+                        PIPELINES.put(getClass(), p);
+                    }
+                }
+            }
+        }
+        return p;
+    }
+
+    private Pipeline newPipeline() {
+        CoalescingAssetEventListener worker;
+        try {
+            worker = getClass().newInstance();
+            worker.init(createWorkerICS());
+        } catch (final Exception e) {
+            LOG.error("Cannot start the event pipeline for " + getClass().getName()
+                    + ", events will be processed in the calling thread for the next " + RETRY_MILLIS
+                    + "ms: " + e.getMessage(), e);
+            return null;
+        }
+        final Pipeline p = new Pipeline(worker, getWindow(), (int) ConfigProperties.getLong(getICS(), QUEUE_PROPNAME,
+                DEFAULT_QUEUE_SIZE));
+        p.start();
+        return p;
+    }
+
+    private boolean seenBefore(final AssetId id) {
+        final String name = getClass().getName() + "-RunOnceList";
+        @SuppressWarnings("unchecked")
+        Set<String> seen = (Set<String>) getICS().GetObj(name);
+        if (seen == null) {
+            seen = new HashSet<String>();
+            getICS().SetObj(name, seen);
+        }
+        return !seen.add(id.toString());
+    }
+
+    /**
+     * @return true if the events are processed by the background thread, as
+     *         configured by <tt>com.fatwire.gst.foundation.listener.async</tt>.
+     */
+    protected boolean isAsync() {
+        return Boolean.valueOf(ConfigProperties.getProperty(getICS(), ASYNC_PROPNAME));
+    }
+
+    /**
+     * @return the milliseconds that events are collected before they are
+     *         processed in the background, as configured by
+     *         <tt>com.fatwire.gst.foundation.listener.window</tt>.
+     */
+    protected long getWindow() {
+        return ConfigProperties.getLong(getICS(), WINDOW_PROPNAME, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Install self into AssetListener_reg table
+     */
+    public final void install(final ICS ics) {
+        AssetListenerInstall.register(ics, getClass().getName(), true);
+    }
+
+    protected ICS getICS() {
+        return ics;
+    }
+
+    @Override
+    public void init(final ICS ics) {
+        this.ics = ics;
+    }
+
+    public final boolean isInstalled(final ICS ics) {
+        return AssetListenerInstall.isRegistered(ics, getClass().getName());
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.assetapi.listener;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+/**
+ * ServletContextListener that stops the background threads of the
+ * {@link CoalescingAssetEventListener}s when the web application is stopped,
+ * after they have processed the waiting events. Without it the threads and
+ * with them the web application's classloader outlive a redeploy.
+ * <p/>
+ * Register it in web.xml:
+ * 
+ * <pre>
+ * &lt;listener&gt;
+ *     &lt;listener-class&gt;com.fatwire.gst.foundation.facade.assetapi.listener.EventPipelineContextListener&lt;/listener-class&gt;
+ * &lt;/listener&gt;
+ * </pre>
+ */
+public class EventPipelineContextListener implements ServletContextListener {
+
+    public void contextInitialized(final ServletContextEvent sce) {
+        // the pipelines are started on the first event
+    }
+
+    public void contextDestroyed(final ServletContextEvent sce) {
+        CoalescingAssetEventListener.shutdown();
+    }
+
+}
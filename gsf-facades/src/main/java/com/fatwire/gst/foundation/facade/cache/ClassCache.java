@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Thread-safe cache of a value per class, for values that are derived from the
+ * class once, like the result of scanning its annotations.
+ * <p/>
+ * The classes are held with a weak reference and the values with a soft
+ * reference, so that classes that are reloaded, for instance by a Groovy
+ * classloader, can be garbage collected. The values often refer to the class
+ * through its fields or methods, a weak key alone would pin them.
+ * <p/>
+ * Unlike a synchronized <tt>WeakHashMap</tt>, lookups do not take a lock;
+ * they are a plain <tt>ConcurrentHashMap</tt> get. The entries of collected
+ * classes are purged on the next put.
+ *
+ * @param <V> the type of the values
+ */
+public final class ClassCache<V> {
+
+    private final ConcurrentMap<Object, SoftReference<V>> map = new ConcurrentHashMap<Object, SoftReference<V>>();
+
+    private final ReferenceQueue<Class<?>> queue = new ReferenceQueue<Class<?>>();
+
+    /**
+     * @param clazz the class
+     * @return the value for the class, or null if there is none or if it was
+     *         collected.
+     */
+    public V get(final Class<?> clazz) {
+        final SoftReference<V> ref = map.get(new Lookup(clazz));
+        return ref == null ? null : ref.get();
+    }
+
+    /**
+     * @param clazz the class
+     * @param value the value for the class
+     */
+    public void put(final Class<?> clazz, final V value) {
+        purge();
+        map.put(new Key(clazz, queue), new SoftReference<V>(value));
+    }
+
+    /**
+     * @return the number of entries, including the entries of classes that
+     *         are collected but not purged yet.
+     */
+    public int size() {
+        return map.size();
+    }
+
+    private void purge() {
+        Reference<? extends Class<?>> ref;
+        while ((ref = queue.poll()) != null) {
+            map.remove(ref);
+        }
+    }
+
+    /**
+     * The key of an entry. It is equal to the keys and lookups for the same
+     * class, and only to itself once the class is collected.
+     */
+    private static final class Key extends WeakReference<Class<?>> {
+        private final int hash;
+
+        Key(final Class<?> clazz, final ReferenceQueue<Class<?>> queue) {
+            super(clazz, queue);
+            hash = System.identityHashCode(clazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (o == this) {
+                return true;
+            }
+            final Class<?> c = get();
+            if (c == null) {
+                return false;
+            }
+            if (o instanceof Key) {
+                return c == ((Key) o).get();
+            }
+            return o instanceof Lookup && c == ((Lookup) o).clazz;
+        }
+    }
+
+    /**
+     * The key used for lookups, so a get does not create a weak reference.
+     */
+    private static final class Lookup {
+        private final Class<?> clazz;
+
+        Lookup(final Class<?> clazz) {
+            this.clazz = clazz;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(clazz);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Key ? o.equals(this) : o instanceof Lookup && clazz == ((Lookup) o).clazz;
+        }
+    }
+
+}
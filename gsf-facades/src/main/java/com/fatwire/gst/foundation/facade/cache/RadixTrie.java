@@ -0,0 +1,314 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.cache;
+
+/**
+ * Compact radix trie (patricia trie) that maps String keys to values. Common
+ * prefixes of the keys are stored only once, which makes it a good fit for
+ * large sets of url paths that share long prefixes.
+ * <p/>
+ * Next to exact lookups the trie supports a longest-prefix lookup, returning
+ * the value of the longest key that is a prefix of the argument.
+ * <p/>
+ * This class is not thread-safe. Callers that share an instance between
+ * threads need to provide their own locking.
+ *
+ * @param <V> the type of the values
+ */
+public class RadixTrie<V> {
+
+    private static final char[] EMPTY = new char[0];
+
+    private static final class Node<V> {
+        private char[] label;
+        private V value;
+        private Node<V>[] children;
+
+        Node(final char[] label, final V value) {
+            this.label = label;
+            this.value = value;
+        }
+
+        /**
+         * Binary search for the child whose label starts with c.
+         *
+         * @param c the first character of the child label
+         * @return the index of the child or (-(insertion point) - 1)
+         */
+        int find(final char c) {
+            if (children == null) {
+                return -1;
+            }
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                final char m = children[mid].label[0];
+                if (m < c) {
+                    low = mid + 1;
+                } else if (m > c) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        void insertChild(final int pos, final Node<V> child) {
+            if (children == null) {
+                children = new Node[] { child };
+                return;
+            }
+            final Node<V>[] n = new Node[children.length + 1];
+            System.arraycopy(children, 0, n, 0, pos);
+            n[pos] = child;
+            System.arraycopy(children, pos, n, pos + 1, children.length - pos);
+            children = n;
+        }
+
+        @SuppressWarnings("unchecked")
+        void removeChild(final int pos) {
+            if (children.length == 1) {
+                children = null;
+                return;
+            }
+            final Node<V>[] n = new Node[children.length - 1];
+            System.arraycopy(children, 0, n, 0, pos);
+            System.arraycopy(children, pos + 1, n, pos, children.length - pos - 1);
+            children = n;
+        }
+
+        int childCount() {
+            return children == null ? 0 : children.length;
+        }
+
+    }
+
+    private final Node<V> root = new Node<V>(EMPTY, null);
+    private int size;
+
+    /**
+     * @param key the key to look up, not null
+     * @return the value stored under the key, or null.
+     */
+    public V get(final String key) {
+        final Node<V> n = findNode(key);
+        return n == null ? null : n.value;
+    }
+
+    /**
+     * @param key the key to look up, not null
+     * @return true if a value is stored for this exact key.
+     */
+    public boolean containsKey(final String key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Finds the value of the longest key in the trie that is a prefix of the
+     * given string.
+     *
+     * @param s the string to match, not null
+     * @return the value for the longest matching prefix, or null if no key is
+     *         a prefix of s.
+     */
+    public V getLongestPrefix(final String s) {
+        Node<V> n = root;
+        V best = root.value;
+        int i = 0;
+        while (i < s.length()) {
+            final int pos = n.find(s.charAt(i));
+            if (pos < 0) {
+                break;
+            }
+            final Node<V> c = n.children[pos];
+            final int m = match(c.label, s, i);
+            if (m < c.label.length) {
+                break;
+            }
+            i += m;
+            n = c;
+            if (n.value != null) {
+                best = n.value;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stores the value under the key, replacing any previous value.
+     *
+     * @param key the key, not null
+     * @param value the value, not null
+     * @return the previous value or null
+     */
+    public V put(final String key, final V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value can not be null");
+        }
+        Node<V> n = root;
+        int i = 0;
+        while (i < key.length()) {
+            final int pos = n.find(key.charAt(i));
+            if (pos < 0) {
+                n.insertChild(-(pos + 1), new Node<V>(key.substring(i).toCharArray(), value));
+                size++;
+                return null;
+            }
+            final Node<V> c = n.children[pos];
+            final int m = match(c.label, key, i);
+            if (m < c.label.length) {
+                // split the edge at m
+                final Node<V> tail = new Node<V>(copy(c.label, m, c.label.length), c.value);
+                tail.children = c.children;
+                c.label = copy(c.label, 0, m);
+                c.value = null;
+                c.children = null;
+                c.insertChild(0, tail);
+            }
+            i += m;
+            n = c;
+        }
+        final V old = n.value;
+        n.value = value;
+        if (old == null) {
+            size++;
+        }
+        return old;
+    }
+
+    /**
+     * Removes the value stored under the key.
+     *
+     * @param key the key, not null
+     * @return the removed value or null if the key was not present.
+     */
+    public V remove(final String key) {
+        Node<V> parent = null;
+        int parentPos = -1;
+        Node<V> n = root;
+        int i = 0;
+        while (i < key.length()) {
+            final int pos = n.find(key.charAt(i));
+            if (pos < 0) {
+                return null;
+            }
+            final Node<V> c = n.children[pos];
+            final int m = match(c.label, key, i);
+            if (m < c.label.length) {
+                return null;
+            }
+            i += m;
+            parent = n;
+            parentPos = pos;
+            n = c;
+        }
+        final V old = n.value;
+        if (old == null) {
+            return null;
+        }
+        n.value = null;
+        size--;
+        if (parent != null) {
+            if (n.childCount() == 0) {
+                parent.removeChild(parentPos);
+                if (parent != root && parent.value == null && parent.childCount() == 1) {
+                    merge(parent);
+                }
+            } else if (n.childCount() == 1) {
+                merge(n);
+            }
+        }
+        return old;
+    }
+
+    /**
+     * @return the number of keys in the trie.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no keys in the trie.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        root.children = null;
+        root.value = null;
+        size = 0;
+    }
+
+    private Node<V> findNode(final String key) {
+        Node<V> n = root;
+        int i = 0;
+        while (i < key.length()) {
+            final int pos = n.find(key.charAt(i));
+            if (pos < 0) {
+                return null;
+            }
+            final Node<V> c = n.children[pos];
+            final int m = match(c.label, key, i);
+            if (m < c.label.length) {
+                return null;
+            }
+            i += m;
+            n = c;
+        }
+        return n;
+    }
+
+    /**
+     * Merges a value-less node with its only child.
+     */
+    private void merge(final Node<V> n) {
+        final Node<V> c = n.children[0];
+        final char[] label = new char[n.label.length + c.label.length];
+        System.arraycopy(n.label, 0, label, 0, n.label.length);
+        System.arraycopy(c.label, 0, label, n.label.length, c.label.length);
+        n.label = label;
+        n.value = c.value;
+        n.children = c.children;
+    }
+
+    /**
+     * @return the number of characters of label that match s starting at
+     *         offset.
+     */
+    private static int match(final char[] label, final String s, final int offset) {
+        final int max = Math.min(label.length, s.length() - offset);
+        int i = 0;
+        while (i < max && label[i] == s.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static char[] copy(final char[] c, final int from, final int to) {
+        final char[] r = new char[to - from];
+        System.arraycopy(c, from, r, 0, r.length);
+        return r;
+    }
+
+}
@@ -19,6 +19,7 @@ package com.fatwire.gst.foundation.facade.cm;
 import COM.FutureTense.Interfaces.ICS;
 
 import com.fatwire.gst.foundation.facade.FTValListFacade;
+import com.fatwire.gst.foundation.facade.sql.SqlResultCache;
 
 public abstract class FTCmdTemplate extends FTValListFacade {
 
@@ -26,11 +27,14 @@ public abstract class FTCmdTemplate extends FTValListFacade {
 
     private final String ftcmd;
 
+    private final String table;
+
     protected FTCmdTemplate(final String ftcmd, final String table) {
         super();
         list.setValString(FTCMD, ftcmd);
         list.setValString("tablename", table);
         this.ftcmd = ftcmd;
+        this.table = table;
     }
 
     /**
@@ -50,7 +54,10 @@ public abstract class FTCmdTemplate extends FTValListFacade {
     final public void execute(final ICS ics) {
         if (this.preExcecuteAssert(ics)) {
             ics.ClearErrno();
-            if (!ics.CatalogManager(list)) {
+            final boolean ok = ics.CatalogManager(list);
+            // the table may have changed, even if CatalogManager failed
+            SqlResultCache.invalidate(table);
+            if (!ok) {
                 throw new RuntimeException("CatalogManager said no to " + ftcmd + "with errno: " + ics.GetErrno());
             }
             this.postExcecuteCheck(ics);
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.ics;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+/**
+ * Reads the configuration properties of GSF. A property is looked up as a
+ * system property first, then in the Content Server property files
+ * (futuretense.ini and futuretense_xcel.ini).
+ */
+public final class ConfigProperties {
+    private static final Log LOG = LogUtil.getLog(ConfigProperties.class);
+
+    private static final String XCEL_INI = "futuretense_xcel.ini";
+
+    private ConfigProperties() {
+    }
+
+    /**
+     * @param ics Content Server context
+     * @param name the name of the property
+     * @return the trimmed value of the property, or null if it is not set or
+     *         blank.
+     */
+    public static String getProperty(final ICS ics, final String name) {
+        String value = StringUtils.trimToNull(System.getProperty(name));
+        if (value == null && ics != null) {
+            value = StringUtils.trimToNull(ics.GetProperty(name));
+            if (value == null) {
+                value = StringUtils.trimToNull(ics.GetProperty(name, XCEL_INI, true));
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param ics Content Server context
+     * @param name the name of the property
+     * @param defaultValue the value when the property is not set or not a
+     *            number
+     * @return the value of the property as a long.
+     */
+    public static long getLong(final ICS ics, final String name, final long defaultValue) {
+        final String value = getProperty(ics, name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            LOG.warn("Invalid value '" + value + "' for " + name + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads the reload interval of a cache, configured in seconds.
+     *
+     * @param ics Content Server context
+     * @param name the name of the property
+     * @param defaultSeconds the interval in seconds when the property is not
+     *            set
+     * @return the reload interval in milliseconds, 0 or less means the cache
+     *         is never reloaded.
+     */
+    public static long getReloadInterval(final ICS ics, final String name, final long defaultSeconds) {
+        return getLong(ics, name, defaultSeconds) * 1000L;
+    }
+
+}
@@ -0,0 +1,457 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.mda;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.FTValList;
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Interfaces.ISyncHash;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+import com.fatwire.mda.Dimension;
+import com.fatwire.mda.DimensionException;
+import com.fatwire.mda.DimensionFilterInstance;
+import com.fatwire.mda.DimensionSetInstance;
+
+/**
+ * LocaleService that keeps the lookups that are needed to build a
+ * DimensionFilter in memory, shared by all threads in the JVM:
+ * <ul>
+ * <li>the id of the DimensionSet per site;</li>
+ * <li>the ids of the Dimensions by name and the names by id;</li>
+ * <li>the ids of the preferred Dimensions per Accept-Language header.</li>
+ * </ul>
+ * Only these ids and names are shared. The DimensionSetInstance and the
+ * Dimensions are loaded with the ICS of this service, once per service, and a
+ * new filter is built from them for every call to
+ * {@link #getDimensionFilter(String)}.
+ * <p/>
+ * Translations for a preferred dimension and dimension set are memoized in the
+ * {@link TranslationCache}.
+ * <p/>
+ * The tables are discarded by {@link #invalidate(ICS, AssetId)}, which the
+ * WraAssetEventListener calls for every asset event, and after the reload
+ * interval in seconds as configured by the property
+ * <tt>com.fatwire.gst.foundation.locale.cache.reload</tt> (default 900, 0
+ * means never). The reload interval also picks up DimensionSets that are
+ * enabled or disabled for a site, as that does not raise an asset event. To
+ * reach every cluster member, a marker is kept in a cluster-synchronized
+ * ISyncHash that depends on the DimensionSet and Dimension tables, as the
+ * CachedPropertyDao does. When that hash is flushed the tables are discarded
+ * as well.
+ */
+public class CachedLocaleService extends DefaultLocaleService {
+    private static final Log LOG = LogUtil.getLog(CachedLocaleService.class);
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.locale.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    /** Upper bound on the number of distinct Accept-Language headers kept. */
+    private static final int MAX_ACCEPT_LANGUAGES = 1000;
+
+    /** id of a name that is not a dimension */
+    private static final Long UNKNOWN = Long.valueOf(-1L);
+
+    /** the key of the marker in the ISyncHash */
+    private static final String LOADED = "loaded";
+
+    private static final int TIMEOUT_MINUTES = 60 * 24; // one day
+
+    private static volatile Tables tables;
+
+    private final long maxAge;
+
+    private ISyncHash marker;
+
+    /** the DimensionSetInstances loaded with the ICS of this service */
+    private final Map<Long, DimensionSetInstance> dimensionSets = new HashMap<Long, DimensionSetInstance>();
+
+    /** the Dimensions loaded with the ICS of this service, null if unknown */
+    private final Map<Long, Dimension> dimensions = new HashMap<Long, Dimension>();
+
+    /**
+     * The lookup tables at a point in time. The maps are filled lazily and
+     * only hold immutable values.
+     */
+    private static final class Tables {
+        private final ConcurrentMap<String, Long> dimensionSetBySite = new ConcurrentHashMap<String, Long>();
+        private final ConcurrentMap<String, Long> idByName = new ConcurrentHashMap<String, Long>();
+        private final ConcurrentMap<Long, String> nameById = new ConcurrentHashMap<Long, String>();
+        private final ConcurrentMap<String, List<Long>> byAcceptLanguage = new ConcurrentHashMap<String, List<Long>>();
+        private final long loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Constructor with "lang" and "locale" as variable names for langVar and
+     * localeVar.
+     * 
+     * @param ics
+     */
+    public CachedLocaleService(final ICS ics) {
+        this(ics, "lang", "locale");
+    }
+
+    /**
+     * @param ics
+     * @param langVar the name of the ics variable for the current 'language',
+     *            as in en_US.
+     * @param localeVar the name of the ics variable for the current dimension
+     *            id.
+     */
+    public CachedLocaleService(final ICS ics, final String langVar, final String localeVar) {
+        super(ics, langVar, localeVar);
+        this.maxAge = ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+    }
+
+    /**
+     * Discards the cached tables on all cluster members if the asset is a
+     * DimensionSet or a Dimension; they will be reloaded on next use.
+     * 
+     * @param ics Content Server context
+     * @param id the asset that was changed
+     */
+    public static void invalidate(final ICS ics, final AssetId id) {
+        if ("DimensionSet".equals(id.getType()) || "Dimension".equals(id.getType())) {
+            invalidate(ics);
+        }
+    }
+
+    /**
+     * Discards all the cached tables on all cluster members.
+     * 
+     * @param ics Content Server context
+     */
+    public static void invalidate(final ICS ics) {
+        LOG.debug("Locale tables are invalidated.");
+        tables = null;
+        getMarker(ics).clear();
+    }
+
+    private static ISyncHash getMarker(final ICS ics) {
+        final String dsn = ics.GetProperty("cs.dsn");
+        return ics.GetSynchronizedHash(CachedLocaleService.class.getName(), true, TIMEOUT_MINUTES, 1, true, true,
+                Arrays.asList(dsn + "DimensionSet", dsn + "Dimension"));
+    }
+
+    @Override
+    public long locateDimensionSetForSite(final String site) {
+        if (StringUtils.isBlank(site)) {
+            throw new IllegalArgumentException("Required site name missing");
+        }
+        final Tables t = getTables();
+        Long id = t.dimensionSetBySite.get(site);
+        if (id == null) {
+            // throws an exception if there is not exactly one DimensionSet,
+            // that outcome is not remembered.
+            id = super.locateDimensionSetForSite(site);
+            t.dimensionSetBySite.put(site, id);
+        } else {
+            LogDep.logDep(getICS(), "DimensionSet", Long.toString(id));
+        }
+        return id;
+    }
+
+    @Override
+    public AssetId findTranslation(final AssetId id, final long preferredDimension, final long dimensionSetId) {
+        if (id == null) {
+            throw new IllegalArgumentException("Required Asset ID missing");
+        }
+        final Dimension preferred = getDimension(preferredDimension);
+        if (preferred == null) {
+            throw new RuntimeException("Attempted to load Dimension with id " + preferredDimension
+                    + " but it came back null");
+        }
+        final List<Dimension> preferredList = Collections.singletonList(preferred);
+        final String context = TranslationCache.context("relatives", dimensionSetId,
+                Collections.singletonList(preferred.getId()));
+        return TranslationCache.translate(getICS(), context, id, new TranslationCache.Translator() {
+
+            @Override
+            public AssetId translate(final AssetId source) {
+                final Dimension locale = getLocaleForAsset(source);
+                if (locale == null || locale.getId().getId() == preferredDimension) {
+                    LOG.debug("Input dimension is already in the preferred dimension.  Not invoking dimension set filter.  Asset: "
+                            + source + ", dimension: " + preferredDimension);
+                    return source;
+                }
+                final AssetId translated = CachedLocaleService.super.findTranslation(source,
+                        newFilter(getDimensionSet(dimensionSetId), preferredList));
+                if (translated == null) {
+                    LOG.warn("No translation found for asset " + source + " in dimension set " + dimensionSetId
+                            + " for dimension " + preferredDimension + ".");
+                }
+                return translated;
+            }
+        });
+    }
+
+    @Override
+    public Dimension getDimensionForName(final String name) {
+        if (name == null) {
+            return null;
+        }
+        final Tables t = getTables();
+        final Long id = t.idByName.get(name);
+        if (id != null) {
+            return UNKNOWN.equals(id) ? null : getDimension(id);
+        }
+        final Dimension d = super.getDimensionForName(name);
+        if (d == null) {
+            t.idByName.put(name, UNKNOWN);
+        } else {
+            dimensions.put(d.getId().getId(), d);
+            t.idByName.put(name, d.getId().getId());
+            t.nameById.put(d.getId().getId(), d.getName());
+        }
+        return d;
+    }
+
+    @Override
+    public String getNameForDimensionId(final long dimensionid) {
+        final String name = getTables().nameById.get(dimensionid);
+        if (name != null) {
+            return name;
+        }
+        final Dimension dim = getDimension(dimensionid);
+        return dim == null ? null : dim.getName();
+    }
+
+    @Override
+    public DimensionFilterInstance getDimensionFilter(final String site) {
+        if (StringUtils.isBlank(site)) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("no DimensionSet returned from getDimensionSet().");
+            }
+            return null;
+        }
+        try {
+            final DimensionSetInstance dimSet = getDimensionSet(locateDimensionSetForSite(site));
+            final List<Dimension> preferred = getPreferredDimensions();
+            final DimensionFilterInstance filter = newFilter(dimSet, preferred);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Located dimension filter: " + filter + " in dimensionSet " + dimSet
+                        + " with preferred locales: " + preferred + " ");
+            }
+            return filter;
+        } catch (final RuntimeException e) {
+            LOG.error("Could not locate dimension filter", e);
+            return null;
+        }
+    }
+
+    private DimensionFilterInstance newFilter(final DimensionSetInstance dimSet, final List<Dimension> preferred) {
+        final DimensionFilterInstance filter;
+        try {
+            filter = dimSet.getFilter();
+        } catch (final DimensionException e) {
+            throw new RuntimeException("Could not get Dimension Filter from DimensionSet", e);
+        }
+        if (filter != null) {
+            filter.setDimensonPreference(new ArrayList<Dimension>(preferred));
+        }
+        return filter;
+    }
+
+    @Override
+    public Collection<AssetId> getPreferredLocaleIds() {
+        final List<Dimension> preferred = getPreferredDimensions();
+        final List<AssetId> ids = new ArrayList<AssetId>(preferred.size());
+        for (final Dimension d : preferred) {
+            ids.add(d.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Finds the preferred dimensions, looking in the same places and in the
+     * same order as {@link #getPreferredLocales()}.
+     * 
+     * @return the preferred dimensions, never null.
+     */
+    private List<Dimension> getPreferredDimensions() {
+        final ICS ics = getICS();
+        final String lang = ics.GetVar(getLangVar());
+        if (StringUtils.isNotBlank(lang)) {
+            final Dimension d = getDimensionForName(lang);
+            if (d != null) {
+                LOG.trace("Preferred locale explicitly set to " + lang);
+                return Collections.singletonList(d);
+            }
+        }
+        Dimension d = getDimensionForVar(ics.GetVar(getLocaleVar()));
+        if (d != null) {
+            LOG.trace("Preferred locale detected in ICS context using 'locale' variable: " + d.getName());
+            return Collections.singletonList(d);
+        }
+        d = getDimensionForVar(ics.GetSSVar(getLocaleVar()));
+        if (d != null) {
+            LOG.trace("Preferred locale detected in ICS context using 'locale' session variable: " + d.getName());
+            return Collections.singletonList(d);
+        }
+        return getDimensionsForAcceptLanguage();
+    }
+
+    /**
+     * @param value dimension id or name
+     * @return the dimension or null
+     */
+    private Dimension getDimensionForVar(final String value) {
+        if (StringUtils.isBlank(value)) {
+            return null;
+        }
+        try {
+            return getDimension(Long.parseLong(value));
+        } catch (final NumberFormatException e) {
+            // maybe it's a locale name...
+            try {
+                return getDimensionForName(value);
+            } catch (final RuntimeException ex) {
+                return null;
+            }
+        }
+    }
+
+    private List<Dimension> getDimensionsForAcceptLanguage() {
+        @SuppressWarnings("deprecation")
+        final HttpServletRequest request = getICS().getIServlet().getServletRequest();
+        final String header = StringUtils.defaultString(request.getHeader("Accept-Language"));
+        final Tables t = getTables();
+        List<Long> ids = t.byAcceptLanguage.get(header);
+        if (ids == null) {
+            final List<Long> l = new ArrayList<Long>();
+            @SuppressWarnings("rawtypes")
+            final Enumeration locales = request.getLocales();
+            while (locales.hasMoreElements()) {
+                final Locale locale = (Locale) locales.nextElement();
+                if (locale == null || locale.toString().length() == 0) {
+                    continue;
+                }
+                try {
+                    final Dimension dimension = getDimensionForName(locale.toString());
+                    if (dimension != null) {
+                        l.add(dimension.getId().getId());
+                        LOG.trace("Found registered locale in user's Accept-Language header (or default): " + locale);
+                    }
+                } catch (final RuntimeException e) {
+                    LOG.trace("Found a locale in the user's Accept-Language header, but it was not registered as a dimension: "
+                            + locale + " (this is not usually an error)", e);
+                }
+            }
+            ids = Collections.unmodifiableList(l);
+            if (t.byAcceptLanguage.size() >= MAX_ACCEPT_LANGUAGES) {
+                // the header is client controlled, do not let it grow unbounded
+                t.byAcceptLanguage.clear();
+            }
+            t.byAcceptLanguage.put(header, ids);
+        }
+        final List<Dimension> dims = new ArrayList<Dimension>(ids.size());
+        for (final Long id : ids) {
+            final Dimension d = getDimension(id);
+            if (d != null) {
+                dims.add(d);
+            }
+        }
+        return dims;
+    }
+
+    private Dimension getDimension(final long id) {
+        if (dimensions.containsKey(id)) {
+            return dimensions.get(id);
+        }
+        final Dimension d = getDM().loadDimension(id);
+        dimensions.put(id, d);
+        if (d != null) {
+            final Tables t = getTables();
+            t.idByName.put(d.getName(), id);
+            t.nameById.put(id, d.getName());
+        }
+        return d;
+    }
+
+    private DimensionSetInstance getDimensionSet(final long id) {
+        DimensionSetInstance dimSet = dimensionSets.get(id);
+        if (dimSet == null) {
+            dimSet = loadDimensionSet(id);
+            dimensionSets.put(id, dimSet);
+        }
+        return dimSet;
+    }
+
+    private DimensionSetInstance loadDimensionSet(final long id) {
+        final ICS ics = getICS();
+        final String name = "CachedLocaleService:DimensionSet";
+        ics.SetObj(name, null); // clear first
+        final FTValList args = new FTValList();
+        args.put("NAME", name);
+        args.put("TYPE", "DimensionSet");
+        args.put("OBJECTID", Long.toString(id));
+        args.put("EDITABLE", "FALSE");
+        ics.runTag("ASSET.LOAD", args);
+
+        if (ics.GetErrno() < 0) {
+            throw new IllegalStateException("Could not load dimension set.  Errno: " + ics.GetErrno());
+        }
+        final Object o = ics.GetObj(name);
+        ics.SetObj(name, null);
+        if (o instanceof DimensionSetInstance) {
+            return (DimensionSetInstance) o;
+        }
+        throw new IllegalStateException("Could not load DimensionSet " + id + " as a DimensionSetInstance.");
+    }
+
+    private Tables getTables() {
+        Tables t = tables;
+        if (t == null || isExpired(t) || getMarker().get(LOADED) == null) {
+            // set before filling, a flush in the meantime discards the new
+            // tables
+            getMarker().put(LOADED, Long.valueOf(System.currentTimeMillis()));
+            t = new Tables();
+            tables = t;
+        }
+        return t;
+    }
+
+    private ISyncHash getMarker() {
+        if (marker == null) {
+            marker = getMarker(getICS());
+        }
+        return marker;
+    }
+
+    private boolean isExpired(final Tables t) {
+        return maxAge > 0 && System.currentTimeMillis() - t.loadedAt > maxAge;
+    }
+}
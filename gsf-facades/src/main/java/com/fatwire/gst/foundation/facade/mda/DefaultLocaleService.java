@@ -379,6 +379,27 @@ public class DefaultLocaleService implements LocaleService {
         return dam;
     }
 
+    /**
+     * @return the Content Server context of this service.
+     */
+    protected final ICS getICS() {
+        return ics;
+    }
+
+    /**
+     * @return the name of the ics variable for the current 'language'.
+     */
+    protected final String getLangVar() {
+        return langVar;
+    }
+
+    /**
+     * @return the name of the ics variable for the current dimension id.
+     */
+    protected final String getLocaleVar() {
+        return localeVar;
+    }
+
     private DimensionManager dm;
 
     /**
@@ -598,6 +619,16 @@ public class DefaultLocaleService implements LocaleService {
         return null;
     }
 
+    /**
+     * Get the ordered list of preferred locales that the user wants, as used
+     * by {@link #getDimensionFilter(String)}.
+     * 
+     * @return collection of asset identifiers of the preferred locales
+     */
+    public Collection<AssetId> getPreferredLocaleIds() {
+        return getPreferredLocales();
+    }
+
     /**
      * Get the ordered list of preferred locales that the user wants. Multiple
      * attempts are made to figure out the right locale.
@@ -271,7 +271,20 @@ public final class LocaleUtils {
      * @return assetid of translated asset.
      * @throws IllegalStateException
      */
-    public static AssetId findTranslation(ICS ics, AssetId id, long preferredDimension, DimensionSetInstance dimset)
+    public static AssetId findTranslation(final ICS ics, final AssetId id, final long preferredDimension,
+            final DimensionSetInstance dimset) throws IllegalStateException {
+        final List<AssetId> preferredDims = Collections.<AssetId> singletonList(new AssetIdImpl("Dimension",
+                preferredDimension));
+        final String context = TranslationCache.context("filter", dimset.getId().getId(), preferredDims);
+        return TranslationCache.translate(ics, context, id, new TranslationCache.Translator() {
+            @Override
+            public AssetId translate(AssetId source) {
+                return _findTranslation(ics, source, preferredDimension, dimset);
+            }
+        });
+    }
+
+    private static AssetId _findTranslation(ICS ics, AssetId id, long preferredDimension, DimensionSetInstance dimset)
             throws IllegalStateException {
         AssetId preferredDim = new AssetIdImpl("Dimension", preferredDimension);
         List<AssetId> preferredDims = Collections.singletonList(preferredDim);
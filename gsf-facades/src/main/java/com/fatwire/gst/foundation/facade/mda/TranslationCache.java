@@ -0,0 +1,376 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.mda;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+import com.fatwire.gst.foundation.facade.runtag.render.Unknowndeps;
+
+/**
+ * Memoizes the translation of assets, keyed by asset, DimensionSet and the
+ * chain of preferred dimensions. The cache is shared by all threads in the
+ * JVM, lookups do not take a lock. It holds about {@value #MAX_ENTRIES}
+ * translations; when it is full, translations that were not handed out
+ * recently are evicted first.
+ * <p/>
+ * The translation itself is done by a {@link Translator} that is passed in by
+ * the caller. The cache key is made up of a context, as returned by
+ * {@link #context(String, long, Collection)}, and the asset. The context must
+ * be different for translators that give different answers.
+ * <p/>
+ * A translation is always of the same asset type as the source asset. All
+ * translations of that asset type are dropped by {@link #invalidate(AssetId)},
+ * which the WraAssetEventListener calls for every asset event, as a new or
+ * changed translation of an asset has a different asset id than the asset
+ * itself. The keys are indexed by asset type for that purpose. A translation
+ * that was being made while the cache was invalidated is handed out but not
+ * cached. All translations are dropped on events for Dimension and
+ * DimensionSet assets, and translations expire after the interval in seconds
+ * as configured by the property
+ * <tt>com.fatwire.gst.foundation.translation.cache.reload</tt> (default 900, 0
+ * means never).
+ * <p/>
+ * For each translation that is handed out, a dependency is logged on the
+ * source asset and on the translated asset. If the asset has no translation,
+ * an unknown dependency on its asset type is logged instead.
+ */
+public final class TranslationCache {
+    private static final Log LOG = LogUtil.getLog(TranslationCache.class);
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.translation.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    private static final int MAX_ENTRIES = 10000;
+
+    private static final ConcurrentMap<String, Translation> ENTRIES = new ConcurrentHashMap<String, Translation>(256);
+
+    /**
+     * the keys in ENTRIES by asset type of the source asset. A key may be in
+     * here while the entry is not in ENTRIES (anymore), not the other way
+     * round.
+     */
+    private static final ConcurrentMap<String, Set<String>> KEYS_BY_TYPE = new ConcurrentHashMap<String, Set<String>>();
+
+    /**
+     * incremented on every invalidation, before any translation is dropped.
+     */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    /**
+     * set by the thread that evicts translations when the cache is full.
+     */
+    private static final AtomicBoolean EVICTING = new AtomicBoolean();
+
+    /**
+     * Translates a single asset, on a cache miss.
+     */
+    public interface Translator {
+        /**
+         * @param id the asset to translate
+         * @return the translation, or null if there is none.
+         */
+        AssetId translate(AssetId id);
+    }
+
+    /**
+     * Translates a number of assets in one go, on cache misses.
+     */
+    public interface BatchTranslator extends Translator {
+        /**
+         * Translates the assets as
+         * {@link com.fatwire.mda.DimensionFilterInstance#filterAssets(Collection)}
+         * does: the result holds the translation of each asset that has one,
+         * in no particular order.
+         * 
+         * @param ids the assets to translate, without duplicates
+         * @return the translations
+         */
+        Collection<AssetId> translateAll(Collection<AssetId> ids);
+    }
+
+    private static final class Translation {
+        private final AssetId source;
+        private final AssetId translation;
+        private final long createdAt = System.currentTimeMillis();
+
+        /** set when handed out, cleared by an eviction pass */
+        private volatile boolean used;
+
+        Translation(final AssetId source, final AssetId translation) {
+            this.source = source;
+            this.translation = translation;
+        }
+    }
+
+    private TranslationCache() {
+    }
+
+    /**
+     * Builds the context part of the cache key.
+     * 
+     * @param kind the kind of translation, distinguishing translators that
+     *            give different answers
+     * @param dimensionSetId id of the DimensionSet
+     * @param preferredDimensionIds the preferred dimensions, in order of
+     *            preference
+     * @return the context
+     */
+    public static String context(final String kind, final long dimensionSetId,
+            final Collection<AssetId> preferredDimensionIds) {
+        final StringBuilder b = new StringBuilder(kind).append('|').append(dimensionSetId).append('|');
+        for (final AssetId d : preferredDimensionIds) {
+            b.append(d.getId()).append(',');
+        }
+        return b.toString();
+    }
+
+    /**
+     * @param ics Content Server context, used to log dependencies
+     * @param context the context as returned by
+     *            {@link #context(String, long, Collection)}
+     * @param id the asset to translate
+     * @param translator translates the asset if it is not in the cache
+     * @return the translation, or null if there is none.
+     */
+    public static AssetId translate(final ICS ics, final String context, final AssetId id, final Translator translator) {
+        final long maxAge = getMaxAge(ics);
+        final long gen = GENERATION.get();
+        Translation e = get(key(context, id), maxAge);
+        if (e == null) {
+            e = new Translation(id, translator.translate(id));
+            put(context, e, gen);
+        }
+        logDependencies(ics, e);
+        return e.translation;
+    }
+
+    /**
+     * Translates a list of assets in one pass over the cache. The assets that
+     * are not in the cache are passed to the translator in one call to
+     * {@link BatchTranslator#translateAll(Collection)}. An asset that is in
+     * that result is its own translation; the others are passed to
+     * {@link Translator#translate(AssetId)} one by one, as the result does not
+     * tell which asset they are a translation of.
+     * 
+     * @param ics Content Server context, used to log dependencies
+     * @param context the context as returned by
+     *            {@link #context(String, long, Collection)}
+     * @param ids the assets to translate
+     * @param translator translates the assets that are not in the cache
+     * @return the translations in the same order as the input, with null for
+     *         the assets that do not have a translation.
+     */
+    public static List<AssetId> translate(final ICS ics, final String context, final List<AssetId> ids,
+            final BatchTranslator translator) {
+        final long maxAge = getMaxAge(ics);
+        final Map<AssetId, Translation> found = new HashMap<AssetId, Translation>();
+        final Set<AssetId> misses = new LinkedHashSet<AssetId>();
+        final long gen = GENERATION.get();
+        for (final AssetId id : ids) {
+            if (!found.containsKey(id) && !misses.contains(id)) {
+                final Translation e = get(key(context, id), maxAge);
+                if (e == null) {
+                    misses.add(id);
+                } else {
+                    found.put(id, e);
+                }
+            }
+        }
+        if (!misses.isEmpty()) {
+            final Collection<AssetId> translated = translator.translateAll(misses);
+            final Set<AssetId> self = translated == null ? new HashSet<AssetId>() : new HashSet<AssetId>(
+                    translated);
+            for (final AssetId id : misses) {
+                final Translation e = new Translation(id, self.contains(id) ? id : translator.translate(id));
+                put(context, e, gen);
+                found.put(id, e);
+            }
+        }
+        final List<AssetId> result = new ArrayList<AssetId>(ids.size());
+        for (final AssetId id : ids) {
+            final Translation e = found.get(id);
+            logDependencies(ics, e);
+            result.add(e.translation);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Translated " + ids.size() + " assets for " + context + " with " + misses.size()
+                    + " cache misses.");
+        }
+        return result;
+    }
+
+    /**
+     * Drops the translations that may be affected by a change to this asset.
+     * 
+     * @param id the asset that was changed
+     */
+    public static void invalidate(final AssetId id) {
+        if ("Dimension".equals(id.getType()) || "DimensionSet".equals(id.getType())) {
+            invalidate();
+            return;
+        }
+        GENERATION.incrementAndGet();
+        final Set<String> keys = KEYS_BY_TYPE.remove(id.getType());
+        if (keys != null) {
+            for (final String key : keys) {
+                ENTRIES.remove(key);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Dropped up to " + keys.size() + " translations for asset type " + id.getType() + ".");
+            }
+        }
+    }
+
+    /**
+     * Drops all translations.
+     */
+    public static void invalidate() {
+        GENERATION.incrementAndGet();
+        KEYS_BY_TYPE.clear();
+        ENTRIES.clear();
+    }
+
+    private static Translation get(final String key, final long maxAge) {
+        final Translation e = ENTRIES.get(key);
+        if (e == null) {
+            return null;
+        }
+        if (maxAge > 0 && System.currentTimeMillis() - e.createdAt > maxAge) {
+            remove(key, e);
+            return null;
+        }
+        if (!e.used) {
+            e.used = true;
+        }
+        return e;
+    }
+
+    /**
+     * Caches a translation that was made without looking at the cache, unless
+     * the cache was invalidated in the meantime. The key is indexed before the
+     * entry is added, and the generation is checked again after, so an
+     * invalidation that runs concurrently either sees the key or is seen here.
+     * 
+     * @param gen the generation read before the translation was made
+     */
+    private static void put(final String context, final Translation e, final long gen) {
+        if (gen != GENERATION.get()) {
+            return;
+        }
+        final String key = key(context, e.source);
+        Set<String> keys = KEYS_BY_TYPE.get(e.source.getType());
+        if (keys == null) {
+            keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            final Set<String> other = KEYS_BY_TYPE.putIfAbsent(e.source.getType(), keys);
+            if (other != null) {
+                keys = other;
+            }
+        }
+        keys.add(key);
+        ENTRIES.put(key, e);
+        if (gen != GENERATION.get()) {
+            ENTRIES.remove(key, e);
+            return;
+        }
+        if (ENTRIES.size() > MAX_ENTRIES) {
+            evict();
+        }
+    }
+
+    private static void remove(final String key, final Translation e) {
+        if (ENTRIES.remove(key, e)) {
+            final Set<String> keys = KEYS_BY_TYPE.get(e.source.getType());
+            if (keys != null) {
+                keys.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Approximates least recently used eviction: a pass drops the translations
+     * that were not handed out since the previous pass, and clears the mark
+     * of the others. Only one thread evicts at a time, the others do not wait
+     * for it.
+     */
+    private static void evict() {
+        if (!EVICTING.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            final int target = MAX_ENTRIES * 9 / 10;
+            int n = ENTRIES.size();
+            for (int pass = 0; pass < 2 && n > target; pass++) {
+                for (final Iterator<Map.Entry<String, Translation>> i = ENTRIES.entrySet().iterator(); i.hasNext()
+                        && n > target;) {
+                    final Map.Entry<String, Translation> entry = i.next();
+                    final Translation e = entry.getValue();
+                    if (e.used) {
+                        e.used = false;
+                    } else {
+                        remove(entry.getKey(), e);
+                        n--;
+                    }
+                }
+            }
+        } finally {
+            EVICTING.set(false);
+        }
+    }
+
+    /**
+     * Logs a dependency on the source and the translated asset. If there is
+     * no translation, a later one of this asset type may be the translation,
+     * so an unknown dependency on the asset type is logged as well.
+     */
+    private static void logDependencies(final ICS ics, final Translation e) {
+        LogDep.logDep(ics, e.source);
+        if (e.translation == null) {
+            Unknowndeps.unknonwDeps(ics, e.source.getType());
+        } else if (!e.translation.equals(e.source)) {
+            LogDep.logDep(ics, e.translation);
+        }
+    }
+
+    private static String key(final String context, final AssetId id) {
+        return context + id.getType() + ':' + id.getId();
+    }
+
+    private static long getMaxAge(final ICS ics) {
+        return ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+    }
+}
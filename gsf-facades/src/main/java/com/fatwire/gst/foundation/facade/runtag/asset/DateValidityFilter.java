@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.runtag.asset;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.assetapi.asset.PreviewContext;
+import com.fatwire.gst.foundation.facade.sql.Row;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+
+/**
+ * Filters assets on their startdate and enddate in Java, without calling the
+ * FilterAssetsByDate tag.
+ * <p/>
+ * The start and end dates are read per asset type with one query per 250
+ * assets, and checked with
+ * {@link FilterAssetsByDate#isDateWithinRange(Date, Date, Date)} against the
+ * given date or, if no date is given, the preview date as returned by
+ * {@link PreviewContext#getPreviewDateFromCSVar(ICS, String)} for the
+ * <tt>previewDate</tt> variable. When site preview is disabled all assets are
+ * valid and no dates are read, like the tag does.
+ * <p/>
+ * For the valid assets the same cache dependencies are recorded as by
+ * {@link FilterAssetsByDate#filter(ICS, Date, Collection)}, including the
+ * start and end date when site preview is set to delivery.
+ */
+public final class DateValidityFilter {
+    private static final Log LOG = LogFactory.getLog(DateValidityFilter.class);
+
+    /** Number of ids in the IN list of one statement. */
+    private static final int BATCH_SIZE = 250;
+
+    private final ICS ics;
+
+    public DateValidityFilter(final ICS ics) {
+        this.ics = ics;
+    }
+
+    /**
+     * @param id the asset
+     * @param date the date to check for, or null for the preview date
+     * @return true if the asset is valid on the date
+     */
+    public boolean isValidOnDate(final AssetId id, final Date date) {
+        return !filter(Collections.singletonList(id), date).isEmpty();
+    }
+
+    /**
+     * @param ids the assets to filter, of any asset type
+     * @param date the date to check for, or null for the preview date
+     * @return the assets that are valid on the date, in the same order as the
+     *         input.
+     */
+    public List<AssetId> filter(final Collection<AssetId> ids, final Date date) {
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            return new ArrayList<AssetId>(ids);
+        }
+        final Date effectiveDate = getEffectiveDate(date);
+        final Map<AssetId, Date[]> dates = loadDates(ids);
+
+        final List<AssetId> valid = new ArrayList<AssetId>(ids.size());
+        for (final AssetId id : ids) {
+            final Date[] d = dates.get(id);
+            if (isValid(d, effectiveDate)) {
+                valid.add(id);
+                FilterAssetsByDate.logDependency(ics, id, d[0], d[1]);
+            } else if (LOG.isTraceEnabled()) {
+                LOG.trace("Asset " + id + " is not valid on " + effectiveDate + ".");
+            }
+        }
+        ics.ClearErrno();
+        return valid;
+    }
+
+    /**
+     * @param date the date to check for, or null
+     * @return the date, or the preview date if it is null.
+     */
+    Date getEffectiveDate(final Date date) {
+        return date != null ? date : PreviewContext.getPreviewDateFromCSVar(ics, "previewDate");
+    }
+
+    /**
+     * @param dates {startdate, enddate} of the asset, or null if the asset
+     *            does not exist
+     * @param effectiveDate the date to check for
+     * @return true if the asset is valid on the date
+     */
+    static boolean isValid(final Date[] dates, final Date effectiveDate) {
+        return dates != null && FilterAssetsByDate.isDateWithinRange(dates[0], effectiveDate, dates[1]);
+    }
+
+    /**
+     * Reads startdate and enddate for all the assets, per asset type.
+     * 
+     * @return map of asset to {startdate, enddate}; assets that do not exist
+     *         are not in the map.
+     */
+    private Map<AssetId, Date[]> loadDates(final Collection<AssetId> ids) {
+        final Map<String, List<AssetId>> byType = new LinkedHashMap<String, List<AssetId>>();
+        for (final AssetId id : ids) {
+            List<AssetId> l = byType.get(id.getType());
+            if (l == null) {
+                l = new ArrayList<AssetId>();
+                byType.put(id.getType(), l);
+            }
+            l.add(id);
+        }
+        final Map<AssetId, Date[]> dates = new HashMap<AssetId, Date[]>(ids.size() * 2);
+        for (final Map.Entry<String, List<AssetId>> e : byType.entrySet()) {
+            final String type = e.getKey();
+            final List<AssetId> typeIds = e.getValue();
+            final Map<Long, AssetId> byId = new HashMap<Long, AssetId>(typeIds.size() * 2);
+            for (final AssetId id : typeIds) {
+                byId.put(id.getId(), id);
+            }
+            final List<Long> all = new ArrayList<Long>(byId.keySet());
+            for (int i = 0; i < all.size(); i += BATCH_SIZE) {
+                final List<Long> batch = all.subList(i, Math.min(all.size(), i + BATCH_SIZE));
+                final String sql = "SELECT id,startdate,enddate FROM " + type + " WHERE id IN ("
+                        + StringUtils.join(batch, ",") + ")";
+                for (final Row row : SqlHelper.select(ics, type, sql)) {
+                    final AssetId id = byId.get(row.getLong("id"));
+                    if (id != null) {
+                        dates.put(id, new Date[] { asDate(row, "startdate"), asDate(row, "enddate") });
+                    }
+                }
+            }
+        }
+        return dates;
+    }
+
+    private static Date asDate(final Row row, final String column) {
+        return StringUtils.isBlank(row.getString(column)) ? null : row.getDate(column);
+    }
+
+}
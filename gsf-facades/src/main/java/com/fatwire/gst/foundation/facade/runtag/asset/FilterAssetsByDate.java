@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import org.apache.commons.lang.StringUtils;
@@ -42,6 +43,7 @@ import com.fatwire.gst.foundation.facade.assetapi.AssetIdIList;
 import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
 import com.fatwire.gst.foundation.facade.assetapi.AttributeDataUtils;
 import com.fatwire.gst.foundation.facade.assetapi.asset.PreviewContext;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
 import com.fatwire.gst.foundation.facade.sql.IListIterable;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.openmarket.xcelerate.publish.PubConstants;
@@ -49,7 +51,10 @@ import com.openmarket.xcelerate.publish.PubConstants;
 /**
  * Filters assets via startdate/enddate.
  * <p/>
- * NOTE: This class calls a public yet internal function inside the JSP tag. No
+ * By default the filtering is done in bulk by the {@link DateValidityFilter}.
+ * See {@link #MODE_PROPNAME} to use the FilterAssetsByDate tag instead.
+ * <p/>
+ * NOTE: With the tag, this class calls a public yet internal function inside the JSP tag. No
  * guarantees can therefore exist as to its compatibility across patch versions.
  * The core function, however, is exceptionally slow to begin with, so caution
  * should be exercised when using this function.
@@ -62,6 +67,17 @@ import com.openmarket.xcelerate.publish.PubConstants;
 public final class FilterAssetsByDate {
     private static final Log LOG = LogFactory.getLog(FilterAssetsByDate.class);
 
+    /**
+     * Name of the property that selects the implementation of the date filter:
+     * <tt>tag</tt> for the FilterAssetsByDate tag, <tt>verify</tt> to run both
+     * the tag and the {@link DateValidityFilter} and log differences. By
+     * default only the DateValidityFilter is used.
+     */
+    public static final String MODE_PROPNAME = "com.fatwire.gst.foundation.date-filter";
+
+    private static final String MODE_TAG = "tag";
+    private static final String MODE_VERIFY = "verify";
+
     private static String[] jdbcDateFormatStrings = { "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd HH:mm:ss.SSS" };
 
     /**
@@ -126,6 +142,33 @@ public final class FilterAssetsByDate {
      * @return the Collection of asset filtered for the date.
      */
     public static Collection<AssetId> filter(ICS ics, Date date, Collection<AssetId> list) {
+        final String mode = getMode(ics);
+        if (MODE_TAG.equals(mode)) {
+            return filterWithTag(ics, date, list);
+        }
+        final Collection<AssetId> result = new DateValidityFilter(ics).filter(list, date);
+        if (MODE_VERIFY.equals(mode)) {
+            final Collection<AssetId> expected = filterWithTag(ics, date, list);
+            if (!new HashSet<AssetId>(expected).equals(new HashSet<AssetId>(result))) {
+                LOG.warn("Date filter mismatch for " + list + " on " + date + ": tag returned " + expected
+                        + ", DateValidityFilter returned " + result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Filter a collection of assets with the FilterAssetsByDate tag. This is
+     * the slow path that calls the tag internals directly; it is used when the
+     * property <tt>com.fatwire.gst.foundation.date-filter</tt> is set to
+     * <tt>tag</tt>, and for cross-checking when it is set to <tt>verify</tt>.
+     * 
+     * @param ics ics context
+     * @param date override date
+     * @param list Collection of assetids.
+     * @return the Collection of asset filtered for the date.
+     */
+    public static Collection<AssetId> filterWithTag(ICS ics, Date date, Collection<AssetId> list) {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Checking to see if asset " + list + " is valid on "
                     + (date == null ? "the site preview date, (assuming site preview is enabled)." : date));
@@ -165,6 +208,11 @@ public final class FilterAssetsByDate {
         return olist;
     }
 
+    private static String getMode(ICS ics) {
+        final String value = StringUtils.trimToNull(ConfigProperties.getProperty(ics, MODE_PROPNAME));
+        return value == null ? null : value.toLowerCase();
+    }
+
     static private void logDependancy(ICS ics, AssetId id) {
 
         if (PreviewContext.isSitePreviewDelivery(ics)) {
@@ -190,6 +238,29 @@ public final class FilterAssetsByDate {
 
     }
 
+    /**
+     * Records the cache dependency for an asset that passed the date filter,
+     * for callers that have already loaded the start and end date of the
+     * asset. Mirrors the dependencies recorded by
+     * {@link #filter(ICS, Date, Collection)} without reloading the asset.
+     * 
+     * @param ics context
+     * @param id the asset
+     * @param startDate start date of the asset or null
+     * @param endDate end date of the asset or null
+     */
+    public static void logDependency(ICS ics, AssetId id, Date startDate, Date endDate) {
+        final String key = PubConstants.CACHE_PREFIX + id.getId() + PubConstants.SEPARATOR + id.getType();
+        if (PreviewContext.isSitePreviewDelivery(ics) && (startDate != null || endDate != null)) {
+            CacheManager.RecordItem(ics, key, null,
+                    startDate == null ? null : com.fatwire.cs.core.db.Util.formatJdbcDate(startDate),
+                    endDate == null ? null : com.fatwire.cs.core.db.Util.formatJdbcDate(endDate));
+        } else {
+            CacheManager.RecordItem(ics, key);
+        }
+        ics.ClearErrno();
+    }
+
     /**
      * Method to check to see if a date falls between two dates. The comparison
      * date is a Date object, or null, in which case the current date is used.
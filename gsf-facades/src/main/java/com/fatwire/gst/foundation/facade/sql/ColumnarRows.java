@@ -0,0 +1,237 @@
+/*
+ * Copyright 2008 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.sql;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import COM.FutureTense.Interfaces.IList;
+
+import com.fatwire.cs.core.db.Util;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Copy of the values of an IList in column arrays, for results that need to
+ * outlive the IList, for instance when they are kept in a cache.
+ * <p/>
+ * Values are copied as Strings, equal values in a column share the same
+ * String instance. Binary values are copied as well; the byte arrays returned
+ * by {@link Row#getBytes(String)} are shared and must not be modified.
+ * <p/>
+ * The copy is immutable and can be shared between threads. Each iteration has
+ * its own cursor: the same {@link Row} instance is returned for every row of
+ * that iteration.
+ */
+public final class ColumnarRows implements Iterable<Row> {
+
+    /** distinct values per column above which values are no longer shared */
+    private static final int MAX_SHARED_VALUES = 64;
+
+    private final String[] columnNames;
+
+    /** values by column and then by row */
+    private final String[][] columns;
+
+    /** binary values by column and then by row, null for other columns */
+    private final byte[][][] binaries;
+
+    private final int numRows;
+
+    private ColumnarRows(final String[] columnNames, final String[][] columns, final byte[][][] binaries,
+            final int numRows) {
+        this.columnNames = columnNames;
+        this.columns = columns;
+        this.binaries = binaries;
+        this.numRows = numRows;
+    }
+
+    /**
+     * Copies all the rows of the list. The current row of the list is changed
+     * by this method.
+     * 
+     * @param list the list, may be null
+     * @return the copy
+     */
+    public static ColumnarRows copyOf(final IList list) {
+        if (list == null || !list.hasData()) {
+            return new ColumnarRows(new String[0], new String[0][], new byte[0][][], 0);
+        }
+        final String[] names = new String[list.numColumns()];
+        for (int c = 0; c < names.length; c++) {
+            names[c] = list.getColumnName(c);
+        }
+        final int rows = list.numRows();
+        final String[][] columns = new String[names.length][rows];
+        final byte[][][] binaries = new byte[names.length][][];
+        final Map<String, String> shared = new HashMap<String, String>();
+        for (int c = 0; c < names.length; c++) {
+            shared.clear();
+            boolean share = true;
+            for (int r = 0; r < rows; r++) {
+                list.moveTo(r + 1);
+                String value;
+                final Object o;
+                try {
+                    value = list.getValue(names[c]);
+                    o = list.getObject(names[c]);
+                } catch (final NoSuchFieldException e) {
+                    throw new RuntimeException(e);
+                }
+                if (o instanceof byte[]) {
+                    if (binaries[c] == null) {
+                        binaries[c] = new byte[rows][];
+                    }
+                    binaries[c][r] = ((byte[]) o).clone();
+                }
+                if (share && value != null) {
+                    final String other = shared.get(value);
+                    if (other != null) {
+                        value = other;
+                    } else if (shared.size() < MAX_SHARED_VALUES) {
+                        shared.put(value, value);
+                    } else {
+                        share = false;
+                    }
+                }
+                columns[c][r] = value;
+            }
+        }
+        return new ColumnarRows(names, columns, binaries, rows);
+    }
+
+    /**
+     * @return the number of rows.
+     */
+    public int size() {
+        return numRows;
+    }
+
+    /**
+     * @return the number of columns.
+     */
+    public int numColumns() {
+        return columnNames.length;
+    }
+
+    /**
+     * @param column the column index
+     * @return the name of the column.
+     */
+    public String getColumnName(final int column) {
+        return columnNames[column];
+    }
+
+    /**
+     * @param row the row index, starting at 0
+     * @param column the column index
+     * @return the value.
+     */
+    public String getString(final int row, final int column) {
+        return columns[column][row];
+    }
+
+    public Iterator<Row> iterator() {
+        final Cursor cursor = new Cursor();
+        return new Iterator<Row>() {
+
+            public boolean hasNext() {
+                return cursor.row + 1 < numRows;
+            }
+
+            public Row next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                cursor.row++;
+                return cursor;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException("Can not remove");
+            }
+        };
+    }
+
+    /**
+     * Row on the current row of an iteration. Column names are resolved, case
+     * insensitively, to column indexes once per iteration.
+     */
+    private final class Cursor implements Row {
+        private final Map<String, Integer> index = new HashMap<String, Integer>();
+        private int row = -1;
+
+        private int getColumnIndex(final String key) {
+            Integer i = index.get(key);
+            if (i == null) {
+                i = -1;
+                for (int c = 0; c < columnNames.length; c++) {
+                    if (columnNames[c].equalsIgnoreCase(key)) {
+                        i = c;
+                        break;
+                    }
+                }
+                index.put(key, i);
+            }
+            return i;
+        }
+
+        private int getExistingColumnIndex(final String key) {
+            final int c = getColumnIndex(key);
+            if (c < 0) {
+                throw new RuntimeException(new NoSuchFieldException(key));
+            }
+            return c;
+        }
+
+        public String getString(final String key) {
+            return columns[getExistingColumnIndex(key)][row];
+        }
+
+        public Long getLong(final String key) {
+            final String s = getString(key);
+            return StringUtils.isNotBlank(s) ? Long.valueOf(s) : null;
+        }
+
+        public Integer getInt(final String key) {
+            final String s = getString(key);
+            return StringUtils.isNotBlank(s) ? Integer.valueOf(s) : null;
+        }
+
+        public byte[] getBytes(final String key) {
+            final byte[][] b = binaries[getExistingColumnIndex(key)];
+            return b == null ? null : b[row];
+        }
+
+        public Character getChar(final String key) {
+            final String s = getString(key);
+            return StringUtils.isNotBlank(s) ? s.charAt(0) : null;
+        }
+
+        public Date getDate(final String key) {
+            final String s = getString(key);
+            return StringUtils.isNotBlank(s) ? Util.parseJdbcDate(s) : null;
+        }
+
+        public boolean isField(final String key) {
+            return getColumnIndex(key) >= 0;
+        }
+    }
+
+}
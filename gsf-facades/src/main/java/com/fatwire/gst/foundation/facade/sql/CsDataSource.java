@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.sql;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import COM.FutureTense.Interfaces.ICS;
+
+/**
+ * Access to the JDBC DataSource that Content Server itself uses, as
+ * configured by the <tt>cs.dsn</tt> property.
+ * <p/>
+ * Plain JDBC bypasses the Content Server resultset cache and does not flush
+ * any table. It is meant for bulk operations where ics.SQL and the
+ * CatalogManager are too slow, such as JDBC batches. Callers are responsible
+ * for flushing the tables they change.
+ */
+public final class CsDataSource {
+
+    private static final Log LOG = LogFactory.getLog(CsDataSource.class.getPackage().getName());
+
+    private CsDataSource() {
+    }
+
+    /**
+     * Looks up the Content Server DataSource in JNDI, first in the
+     * <tt>java:comp/env</tt> context and then as a global name.
+     *
+     * @param ics Content Server context
+     * @return the DataSource, never null
+     * @throws RuntimeException if the DataSource can not be found
+     */
+    public static DataSource lookup(final ICS ics) {
+        final String dsn = ics.GetProperty("cs.dsn");
+        if (dsn == null || dsn.trim().length() == 0) {
+            throw new RuntimeException("Property cs.dsn is not set, can not find the DataSource.");
+        }
+        InitialContext ctx = null;
+        try {
+            ctx = new InitialContext();
+            try {
+                return (DataSource) ctx.lookup("java:comp/env/" + dsn.trim());
+            } catch (final NamingException e) {
+                LOG.trace("DataSource " + dsn + " not found in java:comp/env, trying the global name.");
+                return (DataSource) ctx.lookup(dsn.trim());
+            }
+        } catch (final NamingException e) {
+            throw new RuntimeException("DataSource " + dsn + " could not be found in JNDI: " + e.getMessage(), e);
+        } finally {
+            if (ctx != null) {
+                try {
+                    ctx.close();
+                } catch (final NamingException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Closes the ResultSet, Statement and Connection, each of them may be
+     * null. Exceptions are logged and not thrown.
+     *
+     * @param rs the ResultSet
+     * @param stmt the Statement
+     * @param c the Connection
+     */
+    public static void close(final ResultSet rs, final Statement stmt, final Connection c) {
+        if (rs != null) {
+            try {
+                rs.close();
+            } catch (final SQLException e) {
+                LOG.debug("Exception closing ResultSet: " + e.getMessage());
+            }
+        }
+        if (stmt != null) {
+            try {
+                stmt.close();
+            } catch (final SQLException e) {
+                LOG.debug("Exception closing Statement: " + e.getMessage());
+            }
+        }
+        if (c != null) {
+            try {
+                c.close();
+            } catch (final SQLException e) {
+                LOG.debug("Exception closing Connection: " + e.getMessage());
+            }
+        }
+    }
+
+}
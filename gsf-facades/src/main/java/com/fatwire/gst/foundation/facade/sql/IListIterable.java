@@ -32,6 +32,9 @@ import COM.FutureTense.Interfaces.IList;
  * }
  * </pre>
  * 
+ * The same {@link Row} instance is returned for every row of an iteration, it
+ * shows the values of the current row of the IList. Use {@link #copy()} if the
+ * values are needed after the IList is gone.
  * 
  * @author Dolf Dijkstra
  * 
@@ -69,6 +72,7 @@ public class IListIterable implements Iterable<Row> {
 
             };
         }
+        final SingleRow row = new SingleRow(list);
         return new Iterator<Row>() {
             private int rowNum = 0;
 
@@ -79,7 +83,7 @@ public class IListIterable implements Iterable<Row> {
             public Row next() {
                 rowNum++;
                 list.moveTo(rowNum);
-                return new SingleRow(list);
+                return row;
             }
 
             public void remove() {
@@ -88,6 +92,16 @@ public class IListIterable implements Iterable<Row> {
         };
     }
 
+    /**
+     * Copies the values of all rows into column arrays.
+     * 
+     * @return the copy of the list.
+     * @see ColumnarRows#copyOf(IList)
+     */
+    public ColumnarRows copy() {
+        return ColumnarRows.copyOf(list);
+    }
+
     public int size() {
         return numRows;
     }
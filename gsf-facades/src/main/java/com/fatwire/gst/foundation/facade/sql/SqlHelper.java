@@ -28,6 +28,7 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import COM.FutureTense.Interfaces.ICS;
 import COM.FutureTense.Interfaces.IList;
@@ -126,27 +127,37 @@ public class SqlHelper {
 
         ics.SQL(table, sql, null, -1, false, true, errstr);
         if (ics.GetErrno() == 0) {
-            if (ics.FlushCatalog(table)) {
-                ics.ClearErrno();
-            } else {
-                LOG.warn("Flushing failed for table " + table + ". (" + ics.GetErrno() + ")");
-                ics.ClearErrno();
-            }
+            flushCatalog(ics, table);
+            ics.ClearErrno();
         } else if (ics.GetErrno() == -502) { // update statements do not
             // return an IList, cs signals
             // this via errno -502
-            if (ics.FlushCatalog(table)) {
-                ics.ClearErrno();
-            } else {
-                // throw exception??
-                LOG.warn("Flushing failed for table " + table + ". (" + ics.GetErrno() + ")");
-                ics.ClearErrno();
-            }
+            flushCatalog(ics, table);
+            ics.ClearErrno();
         } else {
+            SqlResultCache.invalidate(table);
             LOG.warn("ics.SQL returned " + ics.GetErrno() + " and errstr: " + errstr.toString() + " for " + sql);
         }
     }
 
+    /**
+     * Flushes the table from the Content Server resultset cache
+     * (ics.FlushCatalog()) and drops the results read from this table from
+     * the {@link SqlResultCache}.
+     * 
+     * @param ics
+     * @param table tablename
+     * @return true if ics.FlushCatalog() succeeded.
+     */
+    public static final boolean flushCatalog(final ICS ics, final String table) {
+        SqlResultCache.invalidate(table);
+        if (ics.FlushCatalog(table)) {
+            return true;
+        }
+        LOG.warn("Flushing failed for table " + table + ". (" + ics.GetErrno() + ")");
+        return false;
+    }
+
     /**
      * Executes a PreparedStatement
      * 
@@ -170,6 +181,52 @@ public class SqlHelper {
 
     }
 
+    /**
+     * Executes a PreparedStatement through the {@link SqlResultCache}. The
+     * result is a copy of the rows that can be kept after the request. The
+     * statement parameters are set from the values, in order and by type, as
+     * by {@link #selectSimplePrepared(ICS, String, String, Object...)}; the
+     * statement and the values identify the result.
+     * <p/>
+     * Only use this for tables that are written through SqlHelper or the
+     * CatalogManager facades, as other writes are not seen until the cached
+     * result expires.
+     * 
+     * @param ics
+     * @param stmt the PreparedStatement
+     * @param tables the tables the statement reads from
+     * @param values the values for the prepared statement parameters
+     * @return never null, always a ColumnarRows
+     */
+    public static final ColumnarRows selectCached(final ICS ics, final PreparedStmt stmt, final List<String> tables,
+            final Object... values) {
+        final Object[] v = values == null ? new Object[0] : values.clone();
+        return SqlResultCache.select(ics, stmt.toString(), tables, v, new SqlResultCache.Loader() {
+
+            public ColumnarRows load() {
+                return select(ics, stmt, newParam(stmt, v)).copy();
+            }
+        });
+    }
+
+    /**
+     * Executes an ICS.SQL operation through the {@link SqlResultCache}.
+     * 
+     * @param ics
+     * @param table tablename
+     * @param sql the sql statement, needs to start with 'select'
+     * @return never null, always a ColumnarRows
+     * @see #selectCached(ICS, PreparedStmt, List, Object...)
+     */
+    public static final ColumnarRows selectCached(final ICS ics, final String table, final String sql) {
+        return SqlResultCache.select(ics, sql, Collections.singletonList(table), null, new SqlResultCache.Loader() {
+
+            public ColumnarRows load() {
+                return select(ics, table, sql).copy();
+            }
+        });
+    }
+
     /**
      * Executes a PreparedStatement in a simple form. The values are simply
      * mapped based on order and type to prepared statement parameters.
@@ -187,6 +244,19 @@ public class SqlHelper {
         for (int i = 0; value != null && i < value.length; i++) {
             stmt.setElement(i, toJdbcType(value[i]));
         }
+        return select(ics, stmt, newParam(stmt, value));
+
+    }
+
+    /**
+     * Creates the statement parameters, the values are mapped based on order
+     * and type.
+     * 
+     * @param stmt the PreparedStatement
+     * @param value the values for the prepared statement parameters
+     * @return the statement parameters
+     */
+    private static StatementParam newParam(final PreparedStmt stmt, final Object... value) {
         final StatementParam param = stmt.newParam();
         for (int i = 0; value != null && i < value.length; i++) {
             Object o = value[i];
@@ -229,8 +299,7 @@ public class SqlHelper {
                 throw new IllegalArgumentException("Can't search for " + o.getClass().getName());
             }
         }
-        return select(ics, stmt, param);
-
+        return param;
     }
 
     private static int toJdbcType(Object o) {
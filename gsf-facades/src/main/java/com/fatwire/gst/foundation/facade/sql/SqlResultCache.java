@@ -0,0 +1,300 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.sql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+/**
+ * Cache of select results, keyed by statement and parameter values, used by
+ * the <tt>selectCached</tt> methods of {@link SqlHelper}. The results are
+ * held as immutable {@link ColumnarRows}. The cache is shared by all threads
+ * in the JVM and holds at most {@value #MAX_ENTRIES} results of at most
+ * {@value #MAX_ROWS} rows each, the least recently used are evicted first.
+ * <p/>
+ * Each result is tied to the tables it was read from. All results for a table
+ * are dropped by {@link #invalidate(String)}, which is called when the table
+ * is written through {@link SqlHelper#execute(ICS, String, String)}, the
+ * CatalogManager facades like AddRow and ReplaceRow or flushed through
+ * {@link SqlHelper#flushCatalog(ICS, String)}. Writes that bypass these, like
+ * asset saves or writes on other cluster members, are only seen after the
+ * results expire. Results expire after the interval in seconds as configured
+ * by the property <tt>com.fatwire.gst.foundation.sql.cache.reload</tt>
+ * (default 900, 0 means never).
+ * <p/>
+ * Hits and misses are counted per statement, see {@link #getStatistics()}.
+ * Counts are kept for at most {@value #MAX_STATEMENTS} statements, further
+ * statements are counted together under {@value #OTHER_STATEMENTS}.
+ */
+public final class SqlResultCache {
+    private static final Log LOG = LogUtil.getLog(SqlResultCache.class);
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.sql.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    private static final int MAX_ENTRIES = 1000;
+
+    private static final int MAX_ROWS = 1000;
+
+    private static final int MAX_STATEMENTS = 1000;
+
+    /**
+     * the key in {@link #getStatistics()} for the statements above
+     * {@value #MAX_STATEMENTS}
+     */
+    public static final String OTHER_STATEMENTS = "(other)";
+
+    private static final Map<Key, Result> ENTRIES = new LinkedHashMap<Key, Result>(256, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Key, Result> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * write version per table, a result is current while its tables are at the
+     * versions it was read at
+     */
+    private static final ConcurrentMap<String, AtomicLong> TABLE_VERSIONS = new ConcurrentHashMap<String, AtomicLong>();
+
+    private static final ConcurrentMap<String, Statistics> STATISTICS = new ConcurrentHashMap<String, Statistics>();
+
+    /**
+     * Reads the result on a cache miss.
+     */
+    public interface Loader {
+        /**
+         * @return the result of the statement.
+         */
+        ColumnarRows load();
+    }
+
+    /**
+     * Hit and miss counts for a statement.
+     */
+    public static final class Statistics {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        /**
+         * @return the number of results served from the cache.
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * @return the number of results read from the database.
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * @return hits divided by hits plus misses, 0 if there were none.
+         */
+        public double getHitRate() {
+            final long h = hits.get();
+            final long total = h + misses.get();
+            return total == 0 ? 0 : (double) h / total;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + getHits() + ", misses=" + getMisses();
+        }
+    }
+
+    private static final class Key {
+        private final String statement;
+        private final Object[] values;
+        private final int hash;
+
+        Key(final String statement, final Object[] values) {
+            this.statement = statement;
+            this.values = values;
+            this.hash = 31 * statement.hashCode() + Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hash == other.hash && statement.equals(other.statement) && Arrays.equals(values, other.values);
+        }
+    }
+
+    private static final class Result {
+        private final ColumnarRows rows;
+        private final String[] tables;
+        private final long[] versions;
+        private final long createdAt = System.currentTimeMillis();
+
+        Result(final ColumnarRows rows, final String[] tables, final long[] versions) {
+            this.rows = rows;
+            this.tables = tables;
+            this.versions = versions;
+        }
+
+        boolean isCurrent(final long maxAge) {
+            if (maxAge > 0 && System.currentTimeMillis() - createdAt > maxAge) {
+                return false;
+            }
+            for (int i = 0; i < tables.length; i++) {
+                if (version(tables[i]).get() != versions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private SqlResultCache() {
+    }
+
+    /**
+     * Returns the cached result of the statement for these values, or loads
+     * it.
+     * 
+     * @param ics Content Server context
+     * @param statement the statement, used as the key for the statistics
+     * @param tables the tables the statement reads from
+     * @param values the parameter values of the statement
+     * @param loader reads the result if it is not in the cache
+     * @return the result
+     */
+    public static ColumnarRows select(final ICS ics, final String statement, final List<String> tables,
+            final Object[] values, final Loader loader) {
+        final Key key = new Key(statement, values == null ? new Object[0] : values.clone());
+        final Statistics stats = statistics(statement);
+        final long maxAge = ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+        synchronized (ENTRIES) {
+            final Result e = ENTRIES.get(key);
+            if (e != null) {
+                if (e.isCurrent(maxAge)) {
+                    stats.hits.incrementAndGet();
+                    return e.rows;
+                }
+                ENTRIES.remove(key);
+            }
+        }
+        stats.misses.incrementAndGet();
+
+        // the versions are read before the statement is executed, a write
+        // that happens during the read makes the entry stale.
+        final String[] t = new String[tables.size()];
+        final long[] versions = new long[t.length];
+        for (int i = 0; i < t.length; i++) {
+            t[i] = tables.get(i).toLowerCase(Locale.ENGLISH);
+            versions[i] = version(t[i]).get();
+        }
+        final ColumnarRows rows = loader.load();
+        if (rows.size() <= MAX_ROWS) {
+            synchronized (ENTRIES) {
+                ENTRIES.put(key, new Result(rows, t, versions));
+            }
+        } else if (LOG.isDebugEnabled()) {
+            LOG.debug("Not caching " + rows.size() + " rows for " + statement);
+        }
+        return rows;
+    }
+
+    /**
+     * Drops all results that were read from this table.
+     * 
+     * @param table the table that was written to
+     */
+    public static void invalidate(final String table) {
+        if (table != null) {
+            version(table.toLowerCase(Locale.ENGLISH)).incrementAndGet();
+        }
+    }
+
+    /**
+     * Drops all results.
+     */
+    public static void invalidate() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+        }
+    }
+
+    /**
+     * @return the hit and miss counts by statement.
+     */
+    public static Map<String, Statistics> getStatistics() {
+        return Collections.unmodifiableMap(STATISTICS);
+    }
+
+    private static Statistics statistics(final String statement) {
+        Statistics s = STATISTICS.get(statement);
+        if (s == null) {
+            // statements may embed literal values, do not let the map grow
+            // unbounded
+            final String key = STATISTICS.size() < MAX_STATEMENTS ? statement : OTHER_STATEMENTS;
+            s = new Statistics();
+            final Statistics other = STATISTICS.putIfAbsent(key, s);
+            if (other != null) {
+                s = other;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @param name the table name in lower case, as table names are case
+     *            insensitive in Content Server
+     * @return the write version of the table.
+     */
+    private static AtomicLong version(final String name) {
+        AtomicLong v = TABLE_VERSIONS.get(name);
+        if (v == null) {
+            v = new AtomicLong();
+            final AtomicLong other = TABLE_VERSIONS.putIfAbsent(name, v);
+            if (other != null) {
+                v = other;
+            }
+        }
+        return v;
+    }
+}
@@ -20,6 +20,7 @@ import COM.FutureTense.Interfaces.FTValList;
 import COM.FutureTense.Interfaces.ICS;
 
 import com.fatwire.gst.foundation.CSRuntimeException;
+import com.fatwire.gst.foundation.facade.sql.SqlResultCache;
 
 /**
  * Facade over table create and delete CatalogManager operations
@@ -49,6 +50,7 @@ public class TableCreator {
 
         list.setValString("ftcmd", "deletetable");
         list.setValString("tablename", name);
+        SqlResultCache.invalidate(name);
         if (!ics.CatalogManager(list)) {
             throw new CSRuntimeException("Error deleting table " + name, ics.GetErrno());
         }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.facade.assetapi;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.fatwire.assetapi.data.AssetData;
+import com.fatwire.assetapi.data.AssetDataManager;
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.assetapi.query.SimpleQuery;
+import com.fatwire.system.Session;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+public final class AssetAccessTemplateTest extends TestCase {
+
+    /**
+     * An AssetDataManager that returns the published assets of the queried
+     * type for a search, and any asset, also voided ones, for a read by id.
+     */
+    private static final class FakeManager implements InvocationHandler {
+        final Set<AssetId> published = new HashSet<AssetId>();
+        final Set<AssetId> voided = new HashSet<AssetId>();
+        final List<SimpleQuery> queries = new ArrayList<SimpleQuery>();
+        final List<AssetId> reads = new ArrayList<AssetId>();
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            if ("read".equals(method.getName()) && args.length == 1 && args[0] instanceof SimpleQuery) {
+                final SimpleQuery q = (SimpleQuery) args[0];
+                queries.add(q);
+                final List<AssetData> r = new ArrayList<AssetData>();
+                for (final AssetId id : published) {
+                    if (id.getType().equals(q.getAssetType())) {
+                        r.add(data(id));
+                    }
+                }
+                return r;
+            }
+            if ("readAttributes".equals(method.getName())) {
+                final AssetId id = (AssetId) args[0];
+                reads.add(id);
+                return published.contains(id) || voided.contains(id) ? data(id) : null;
+            }
+            throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private static AssetData data(final AssetId id) {
+        return (AssetData) Proxy.newProxyInstance(AssetData.class.getClassLoader(),
+                new Class<?>[] { AssetData.class }, new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        if ("getAssetId".equals(method.getName())) {
+                            return id;
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    private static final class RecordingClosure implements AssetClosure {
+        final List<AssetId> seen = new ArrayList<AssetId>();
+        final int max;
+
+        RecordingClosure(final int max) {
+            this.max = max;
+        }
+
+        public boolean work(final AssetData asset) {
+            seen.add(asset.getAssetId());
+            return seen.size() < max;
+        }
+    }
+
+    private final FakeManager manager = new FakeManager();
+
+    private AssetAccessTemplate template;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Session session = (Session) Proxy.newProxyInstance(Session.class.getClassLoader(),
+                new Class<?>[] { Session.class }, new InvocationHandler() {
+                    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        final AssetDataManager m = (AssetDataManager) Proxy.newProxyInstance(
+                AssetDataManager.class.getClassLoader(), new Class<?>[] { AssetDataManager.class }, manager);
+        template = new AssetAccessTemplate(session) {
+            @Override
+            protected AssetDataManager getAssetDataManager() {
+                return m;
+            }
+        };
+    }
+
+    public void testOneBasicSearchPerType() {
+        final AssetId a1 = new AssetIdImpl("Article", 1);
+        final AssetId p2 = new AssetIdImpl("Page", 2);
+        final AssetId a3 = new AssetIdImpl("Article", 3);
+        manager.published.addAll(Arrays.asList(a1, p2, a3));
+
+        final RecordingClosure closure = new RecordingClosure(Integer.MAX_VALUE);
+        template.readAsset(Arrays.asList(a3, p2, a1), closure, "name");
+
+        assertEquals(Arrays.asList(a3, p2, a1), closure.seen);
+        assertEquals(2, manager.queries.size());
+        for (final SimpleQuery q : manager.queries) {
+            assertNull(q.getSubType());
+            assertTrue(q.getProperties().getIsBasicSearch());
+        }
+        assertTrue(manager.reads.isEmpty());
+    }
+
+    public void testVoidedAssetIsReadById() {
+        final AssetId a1 = new AssetIdImpl("Article", 1);
+        final AssetId a2 = new AssetIdImpl("Article", 2);
+        final AssetId a3 = new AssetIdImpl("Article", 3);
+        manager.published.addAll(Arrays.asList(a1, a3));
+        manager.voided.add(a2);
+
+        final RecordingClosure closure = new RecordingClosure(Integer.MAX_VALUE);
+        template.readAsset(Arrays.asList(a1, a2, a3), closure, "name");
+
+        // the same as a read per id
+        assertEquals(Arrays.asList(a1, a2, a3), closure.seen);
+        assertEquals(Arrays.asList(a2), manager.reads);
+    }
+
+    public void testMissingAssetIsSkipped() {
+        final AssetId a1 = new AssetIdImpl("Article", 1);
+        final AssetId a2 = new AssetIdImpl("Article", 2);
+        manager.published.add(a1);
+
+        final RecordingClosure closure = new RecordingClosure(Integer.MAX_VALUE);
+        template.readAsset(Arrays.asList(a2, a1, a2, null), closure, "name");
+
+        assertEquals(Arrays.asList(a1), closure.seen);
+        assertEquals(Arrays.asList(a2), manager.reads);
+    }
+
+    public void testClosureStopsTheRead() {
+        final List<AssetId> ids = new ArrayList<AssetId>();
+        for (int i = 0; i < AssetAccessTemplate.BULK_READ_WINDOW * 2; i++) {
+            final AssetId id = new AssetIdImpl("Article", i);
+            ids.add(id);
+            manager.published.add(id);
+        }
+
+        final RecordingClosure closure = new RecordingClosure(3);
+        template.readAsset(ids, closure, "name");
+
+        assertEquals(ids.subList(0, 3), closure.seen);
+        assertEquals(1, manager.queries.size());
+    }
+
+}
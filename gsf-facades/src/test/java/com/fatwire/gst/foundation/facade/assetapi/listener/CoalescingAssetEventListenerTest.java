@@ -0,0 +1,189 @@
+/*
+ * Copyright 2008 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.facade.assetapi.listener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.assetapi.AssetIdUtils;
+import com.fatwire.gst.foundation.facade.assetapi.listener.CoalescingAssetEventListener.AssetEvent;
+import com.fatwire.gst.foundation.facade.assetapi.listener.CoalescingAssetEventListener.Type;
+import com.fatwire.gst.foundation.test.MockICS;
+
+import junit.framework.TestCase;
+
+public final class CoalescingAssetEventListenerTest extends TestCase {
+
+    private static final List<List<AssetEvent>> BATCHES = new ArrayList<List<AssetEvent>>();
+
+    public static final class RecordingListener extends CoalescingAssetEventListener {
+
+        @Override
+        protected void process(final List<AssetEvent> events) {
+            synchronized (BATCHES) {
+                BATCHES.add(events);
+                BATCHES.notifyAll();
+            }
+        }
+
+        @Override
+        protected ICS createWorkerICS() {
+            return new MockICS();
+        }
+    }
+
+    public static final class SynchronousDeleteListener extends CoalescingAssetEventListener {
+
+        @Override
+        protected void process(final List<AssetEvent> events) {
+            synchronized (BATCHES) {
+                BATCHES.add(events);
+                BATCHES.notifyAll();
+            }
+        }
+
+        @Override
+        protected boolean isSynchronous(final AssetEvent event) {
+            return event.getType() == Type.DELETED;
+        }
+
+        @Override
+        protected ICS createWorkerICS() {
+            return new MockICS();
+        }
+    }
+
+    public static final class FailingWorkerListener extends CoalescingAssetEventListener {
+
+        @Override
+        protected void process(final List<AssetEvent> events) {
+            synchronized (BATCHES) {
+                BATCHES.add(events);
+                BATCHES.notifyAll();
+            }
+        }
+
+        @Override
+        protected ICS createWorkerICS() throws Exception {
+            throw new IllegalStateException("no ICS");
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        BATCHES.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty(CoalescingAssetEventListener.ASYNC_PROPNAME);
+        System.clearProperty(CoalescingAssetEventListener.WINDOW_PROPNAME);
+        CoalescingAssetEventListener.shutdown();
+    }
+
+    public void testMerge() {
+        final AssetId id = AssetIdUtils.fromString("article:1");
+        final AssetEvent added = new AssetEvent(id, Type.ADDED, 1);
+        final AssetEvent updated = new AssetEvent(id, Type.UPDATED, 2);
+        final AssetEvent deleted = new AssetEvent(id, Type.DELETED, 3);
+
+        assertEquals(Type.ADDED, added.merge(updated).getType());
+        assertEquals(Type.DELETED, added.merge(deleted).getType());
+        assertEquals(Type.ADDED, deleted.merge(added).getType());
+        assertEquals(Type.DELETED, updated.merge(deleted).getType());
+        assertEquals(1, added.merge(deleted).getReceivedAt());
+    }
+
+    public void testSynchronous() {
+        final RecordingListener listener = new RecordingListener();
+        listener.init(new MockICS());
+        listener.assetUpdated(AssetIdUtils.fromString("article:1"));
+
+        assertEquals(1, BATCHES.size());
+        assertEquals(Type.UPDATED, BATCHES.get(0).get(0).getType());
+        assertTrue(CoalescingAssetEventListener.getStatistics().isEmpty());
+    }
+
+    public void testAsynchronousCoalesces() throws InterruptedException {
+        System.setProperty(CoalescingAssetEventListener.ASYNC_PROPNAME, "true");
+        System.setProperty(CoalescingAssetEventListener.WINDOW_PROPNAME, "200");
+
+        final RecordingListener listener = new RecordingListener();
+        listener.init(new MockICS());
+        final AssetId one = AssetIdUtils.fromString("article:1");
+        final AssetId two = AssetIdUtils.fromString("article:2");
+        listener.assetAdded(one);
+        listener.assetUpdated(one);
+        listener.assetDeleted(two);
+        listener.assetUpdated(one);
+
+        synchronized (BATCHES) {
+            final long due = System.currentTimeMillis() + 5000;
+            while (BATCHES.isEmpty() && System.currentTimeMillis() < due) {
+                BATCHES.wait(100);
+            }
+        }
+        assertEquals(1, BATCHES.size());
+        final List<AssetEvent> batch = BATCHES.get(0);
+        assertEquals(2, batch.size());
+        assertEquals(one, batch.get(0).getId());
+        assertEquals(Type.ADDED, batch.get(0).getType());
+        assertEquals(two, batch.get(1).getId());
+        assertEquals(Type.DELETED, batch.get(1).getType());
+
+        final CoalescingAssetEventListener.Statistics stats = CoalescingAssetEventListener.getStatistics().get(
+                RecordingListener.class.getName());
+        assertEquals(4, stats.getReceived());
+        assertEquals(2, stats.getCoalesced());
+        assertEquals(0, stats.getQueueDepth());
+    }
+
+    public void testAsynchronousWithSynchronousEvent() {
+        System.setProperty(CoalescingAssetEventListener.ASYNC_PROPNAME, "true");
+        System.setProperty(CoalescingAssetEventListener.WINDOW_PROPNAME, "60000");
+
+        final SynchronousDeleteListener listener = new SynchronousDeleteListener();
+        listener.init(new MockICS());
+        listener.assetUpdated(AssetIdUtils.fromString("article:1"));
+        listener.assetDeleted(AssetIdUtils.fromString("article:2"));
+
+        // the delete is processed straight away, the update is still waiting
+        assertEquals(1, BATCHES.size());
+        assertEquals(Type.DELETED, BATCHES.get(0).get(0).getType());
+
+        // the waiting update is processed on shutdown
+        CoalescingAssetEventListener.shutdown();
+        assertEquals(2, BATCHES.size());
+        assertEquals(Type.UPDATED, BATCHES.get(1).get(0).getType());
+    }
+
+    public void testPipelineCannotStart() {
+        System.setProperty(CoalescingAssetEventListener.ASYNC_PROPNAME, "true");
+
+        final FailingWorkerListener listener = new FailingWorkerListener();
+        listener.init(new MockICS());
+        listener.assetUpdated(AssetIdUtils.fromString("article:1"));
+        listener.assetUpdated(AssetIdUtils.fromString("article:2"));
+
+        // processed in the calling thread, no pipeline is kept
+        assertEquals(2, BATCHES.size());
+        assertTrue(CoalescingAssetEventListener.getStatistics().isEmpty());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.facade.cache;
+
+import junit.framework.TestCase;
+
+public final class ClassCacheTest extends TestCase {
+
+    public void testPutGet() {
+        ClassCache<String> c = new ClassCache<String>();
+        assertNull(c.get(String.class));
+        c.put(String.class, "a");
+        c.put(Integer.class, "b");
+        assertEquals("a", c.get(String.class));
+        assertEquals("b", c.get(Integer.class));
+        assertNull(c.get(Long.class));
+
+        c.put(String.class, "c");
+        assertEquals(2, c.size());
+        assertEquals("c", c.get(String.class));
+    }
+
+    public void testClassIdentity() {
+        Object a = new Object() {
+        };
+        Object b = new Object() {
+        };
+        ClassCache<String> c = new ClassCache<String>();
+        c.put(a.getClass(), "a");
+        assertNull(c.get(b.getClass()));
+        assertEquals("a", c.get(a.getClass()));
+    }
+
+}
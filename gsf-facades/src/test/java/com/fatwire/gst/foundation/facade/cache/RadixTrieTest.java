@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.facade.cache;
+
+import junit.framework.TestCase;
+
+public final class RadixTrieTest extends TestCase {
+
+    public void testPutGet() {
+        RadixTrie<String> t = new RadixTrie<String>();
+        assertNull(t.put("/news/sports", "a"));
+        assertNull(t.put("/news/sport", "b"));
+        assertNull(t.put("/news", "c"));
+        assertNull(t.put("/about", "d"));
+        assertEquals(4, t.size());
+        assertEquals("a", t.get("/news/sports"));
+        assertEquals("b", t.get("/news/sport"));
+        assertEquals("c", t.get("/news"));
+        assertEquals("d", t.get("/about"));
+        assertNull(t.get("/news/"));
+        assertNull(t.get("/new"));
+        assertNull(t.get("/news/sportsx"));
+
+        assertEquals("a", t.put("/news/sports", "e"));
+        assertEquals(4, t.size());
+        assertEquals("e", t.get("/news/sports"));
+    }
+
+    public void testRemove() {
+        RadixTrie<String> t = new RadixTrie<String>();
+        t.put("/news/sports", "a");
+        t.put("/news/sport", "b");
+        t.put("/news/weather", "c");
+
+        assertNull(t.remove("/news/"));
+        assertEquals("b", t.remove("/news/sport"));
+        assertEquals(2, t.size());
+        assertNull(t.get("/news/sport"));
+        assertEquals("a", t.get("/news/sports"));
+
+        assertEquals("c", t.remove("/news/weather"));
+        assertEquals("a", t.get("/news/sports"));
+        assertEquals("a", t.remove("/news/sports"));
+        assertTrue(t.isEmpty());
+
+        t.put("/x", "x");
+        assertEquals("x", t.get("/x"));
+    }
+
+    public void testLongestPrefix() {
+        RadixTrie<String> t = new RadixTrie<String>();
+        t.put("http://www.example.com", "root");
+        t.put("http://www.example.com/en", "en");
+        t.put("http://www.example.com/english", "english");
+
+        assertEquals("english", t.getLongestPrefix("http://www.example.com/english/news"));
+        assertEquals("en", t.getLongestPrefix("http://www.example.com/en/news"));
+        assertEquals("en", t.getLongestPrefix("http://www.example.com/eng"));
+        assertEquals("root", t.getLongestPrefix("http://www.example.com/fr"));
+        assertNull(t.getLongestPrefix("http://www.example.org/"));
+    }
+
+}
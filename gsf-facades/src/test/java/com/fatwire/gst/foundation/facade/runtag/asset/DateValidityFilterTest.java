@@ -0,0 +1,114 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.facade.runtag.asset;
+
+import java.util.Date;
+
+import junit.framework.TestCase;
+
+import com.fatwire.gst.foundation.test.MockICS;
+
+public final class DateValidityFilterTest extends TestCase {
+
+    private static final String MAY = "2012-05-01 00:00:00";
+    private static final String JUNE = "2012-06-01 00:00:00";
+    private static final String JULY = "2012-07-01 00:00:00";
+
+    /**
+     * An ICS with site preview set to contentmanagement and the given
+     * previewDate variable.
+     */
+    private static final class PreviewICS extends MockICS {
+        private final String previewDate;
+
+        PreviewICS(final String previewDate) {
+            this.previewDate = previewDate;
+        }
+
+        @Override
+        public boolean LoadProperty(final String arg0) {
+            return true;
+        }
+
+        @Override
+        public String GetProperty(final String arg0) {
+            return "cs.sitepreview".equals(arg0) ? "contentmanagement" : null;
+        }
+
+        @Override
+        public String GetVar(final String arg0) {
+            return "previewDate".equals(arg0) ? previewDate : null;
+        }
+    }
+
+    /**
+     * Asserts that DateValidityFilter and the tag's date check agree on the
+     * range, and that the result is the expected one.
+     */
+    private static void assertValid(final boolean expected, final String start, final Date date, final String end) {
+        final Date[] dates = { parse(start), parse(end) };
+        assertEquals(expected, FilterAssetsByDate.isDateWithinRange(start, date, end));
+        assertEquals(expected, DateValidityFilter.isValid(dates, date));
+    }
+
+    private static Date parse(final String jdbc) {
+        return jdbc == null ? null : FilterAssetsByDate.parseJdbcDate(jdbc);
+    }
+
+    public void testNoStartAndEnd() {
+        assertValid(true, null, parse(JUNE), null);
+        assertValid(true, null, null, null);
+    }
+
+    public void testNullStart() {
+        assertValid(true, null, parse(JUNE), JULY);
+        assertValid(true, null, parse(JULY), JULY);
+        assertValid(false, null, parse(JULY), JUNE);
+    }
+
+    public void testNullEnd() {
+        assertValid(true, MAY, parse(JUNE), null);
+        assertValid(true, JUNE, parse(JUNE), null);
+        assertValid(false, JULY, parse(JUNE), null);
+    }
+
+    public void testStartAndEnd() {
+        assertValid(true, MAY, parse(JUNE), JULY);
+        assertValid(false, JUNE, parse(JUNE), JULY);
+        assertValid(false, MAY, parse(JUNE), JUNE);
+        assertValid(false, JUNE, parse(MAY), JULY);
+    }
+
+    public void testMissingAsset() {
+        assertFalse(DateValidityFilter.isValid(null, parse(JUNE)));
+    }
+
+    public void testPreviewDate() {
+        final DateValidityFilter filter = new DateValidityFilter(new PreviewICS(JUNE));
+        final Date date = filter.getEffectiveDate(null);
+        assertEquals(parse(JUNE), date);
+        assertValid(true, MAY, date, JULY);
+        assertValid(false, null, date, MAY);
+        assertValid(false, JULY, date, null);
+    }
+
+    public void testDateOverridesPreviewDate() {
+        final DateValidityFilter filter = new DateValidityFilter(new PreviewICS(MAY));
+        assertEquals(parse(JULY), filter.getEffectiveDate(parse(JULY)));
+    }
+
+}
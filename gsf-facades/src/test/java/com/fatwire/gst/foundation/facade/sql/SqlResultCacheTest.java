@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.facade.sql;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.test.MockICS;
+
+public class SqlResultCacheTest extends TestCase {
+
+    private final ICS ics = new MockICS();
+
+    private int loads;
+
+    private final SqlResultCache.Loader loader = new SqlResultCache.Loader() {
+
+        public ColumnarRows load() {
+            loads++;
+            return ColumnarRows.copyOf(null);
+        }
+    };
+
+    public void testSelect_cachedByStatementAndValues() {
+        final List<String> tables = Collections.singletonList("Test_A");
+        SqlResultCache.select(ics, "stmt1", tables, new Object[] { "x", 1L }, loader);
+        SqlResultCache.select(ics, "stmt1", tables, new Object[] { "x", 1L }, loader);
+        assertEquals(1, loads);
+        SqlResultCache.select(ics, "stmt1", tables, new Object[] { "x", 2L }, loader);
+        SqlResultCache.select(ics, "stmt2", tables, new Object[] { "x", 1L }, loader);
+        assertEquals(3, loads);
+
+        final SqlResultCache.Statistics stats = SqlResultCache.getStatistics().get("stmt1");
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+    }
+
+    public void testInvalidate_table() {
+        final List<String> tables = Arrays.asList("Test_B", "Test_C");
+        SqlResultCache.select(ics, "stmt3", tables, null, loader);
+        SqlResultCache.invalidate("Test_D");
+        SqlResultCache.select(ics, "stmt3", tables, null, loader);
+        assertEquals(1, loads);
+
+        // table names are case insensitive
+        SqlResultCache.invalidate("test_c");
+        SqlResultCache.select(ics, "stmt3", tables, null, loader);
+        assertEquals(2, loads);
+    }
+
+    public void testInvalidate_all() {
+        final List<String> tables = Collections.singletonList("Test_E");
+        SqlResultCache.select(ics, "stmt4", tables, null, loader);
+        SqlResultCache.invalidate();
+        SqlResultCache.select(ics, "stmt4", tables, null, loader);
+        assertEquals(2, loads);
+    }
+
+}
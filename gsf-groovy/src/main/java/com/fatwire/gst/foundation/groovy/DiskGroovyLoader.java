@@ -25,6 +25,13 @@ import java.io.FileFilter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.ServletContext;
 
@@ -38,6 +45,18 @@ import com.fatwire.gst.foundation.facade.logging.LogUtil;
 
 /**
  * Loader for groovy script classes, configured via the ServletContext
+ * <p/>
+ * In production mode the loaded classes are kept in memory by name, and names
+ * that are neither a script nor a class are remembered as such, so a load is a
+ * map read; at most {@value #MAX_NOT_FOUND} names are remembered as not found.
+ * Every <tt>scanInterval</tt> seconds a load checks the timestamps of the
+ * scripts under the script path; when a script was added, changed or removed
+ * all the cached classes are discarded and the GroovyScriptEngine recompiles
+ * the changed scripts on the next load.
+ * <p/>
+ * The GroovyScriptEngine is not safe for concurrent compilation, so in
+ * production mode the loads that miss the cache, and the precompilation, are
+ * serialised on one lock. Loads that hit the cache do not take that lock.
  * 
  * @author Dolf Dijkstra
  * @since Mar 28, 2011
@@ -48,12 +67,33 @@ import com.fatwire.gst.foundation.facade.logging.LogUtil;
  */
 public class DiskGroovyLoader implements GroovyLoader {
 
+    /** upper bound on the number of names remembered as not found */
+    private static final int MAX_NOT_FOUND = 1000;
+
+    /** accepts the directories and groovy scripts */
+    private static final FileFilter SCRIPTS = new FileFilter() {
+
+        @Override
+        public boolean accept(File pathname) {
+            return pathname.isDirectory() || pathname.getName().endsWith(".groovy");
+        }
+
+    };
+
     private Log logger = LogUtil.getLog(getClass());
     private GroovyScriptEngine groovyScriptEngine;
 
     private File scriptPath;
     private String configPath = "/WEB-INF/gsf-groovy";
     private int minimumRecompilationInterval = 0;
+    private boolean productionMode = false;
+    private int scanInterval = 5;
+
+    private final ConcurrentMap<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+    private final Set<String> notFound = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong lastScan = new AtomicLong();
+    private final Object compileLock = new Object();
+    private volatile long scriptsSignature;
 
     public DiskGroovyLoader() {
         super();
@@ -85,29 +125,162 @@ public class DiskGroovyLoader implements GroovyLoader {
     }
 
     @Override
-    public Object load(ICS ics,final String name) throws Exception {
+    public Object load(ICS ics, final String name) throws Exception {
+        final Class<?> c = productionMode ? findCachedClass(name) : findClass(name);
+        return c == null ? null : c.newInstance();
+    }
 
-        Class<?> c;
-        try {
-            c = groovyScriptEngine.loadScriptByName(toScriptName(name));
-        } catch (ResourceException e) {
+    /**
+     * Looks up the class in the cache, loading it on first use.
+     * 
+     * @param name the name of the script or class
+     * @return the class, null if not found
+     * @throws Exception
+     */
+    protected Class<?> findCachedClass(final String name) throws Exception {
+        checkForChanges();
+        final String key = toScriptName(name);
+        Class<?> c = classes.get(key);
+        if (c != null || notFound.contains(key)) {
+            return c;
+        }
+        synchronized (compileLock) {
+            // another thread may have loaded it while this one waited
+            c = classes.get(key);
+            if (c != null || notFound.contains(key)) {
+                return c;
+            }
+            c = findClass(name);
+            if (c == null) {
+                // the names may come from requests, do not let the set grow
+                // unbounded
+                if (notFound.size() < MAX_NOT_FOUND) {
+                    notFound.add(key);
+                }
+            } else {
+                classes.put(key, c);
+            }
+        }
+        return c;
+    }
 
-            if (logger.isDebugEnabled())
-                logger.debug("GroovyScriptEngine was not able to load " + name + " as a script: " + e.getMessage()
-                        + ". Now trying as a class.");
-            String className = name.replace('/', '.');
+    /**
+     * @return the lock that serialises the compilation of scripts in
+     *         production mode.
+     */
+    protected final Object getCompileLock() {
+        return compileLock;
+    }
+
+    /**
+     * Loads the script with the name, or if that is not found the class.
+     * 
+     * @param name the name of the script or class
+     * @return the class, null if not found
+     * @throws Exception
+     */
+    protected Class<?> findClass(final String name) throws Exception {
+        final String scriptName = toScriptName(name);
+        if (!productionMode || isScript(scriptName)) {
             try {
-                c = groovyScriptEngine.getGroovyClassLoader().loadClass(className);
-            } catch (ClassNotFoundException cnfe) {
+                return groovyScriptEngine.loadScriptByName(scriptName);
+            } catch (ResourceException e) {
+
                 if (logger.isDebugEnabled())
-                    logger.debug("GroovyClassLoader was not able to load " + className + ": " + cnfe.getMessage()
-                            + ". Aborting.");
-                return null;
+                    logger.debug("GroovyScriptEngine was not able to load " + name + " as a script: "
+                            + e.getMessage() + ". Now trying as a class.");
+            }
+        }
+        String className = name.replace('/', '.');
+        try {
+            return groovyScriptEngine.getGroovyClassLoader().loadClass(className);
+        } catch (ClassNotFoundException cnfe) {
+            if (logger.isDebugEnabled())
+                logger.debug("GroovyClassLoader was not able to load " + className + ": " + cnfe.getMessage()
+                        + ". Aborting.");
+            return null;
 
+        }
+    }
+
+    /**
+     * @param scriptName the name of the script, relative to the script path
+     * @return true if the script file exists
+     */
+    protected boolean isScript(String scriptName) {
+        return scriptPath == null || new File(scriptPath, scriptName).isFile();
+    }
+
+    /**
+     * Discards the cached classes if any script under the script path was
+     * added, changed or removed since the last scan. Only one thread scans at
+     * a time, at most once per scanInterval.
+     */
+    protected void checkForChanges() {
+        final long last = lastScan.get();
+        final long now = System.currentTimeMillis();
+        if (now - last < scanInterval * 1000L || !lastScan.compareAndSet(last, now)) {
+            return;
+        }
+        if (scriptsChanged()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Groovy scripts have changed, discarding the cached classes.");
             }
+            discardCaches();
+        }
+    }
+
+    /**
+     * @return true if the {@link #scriptsSignature()} changed since the last
+     *         call.
+     */
+    protected boolean scriptsChanged() {
+        final long signature = scriptsSignature();
+        if (signature == scriptsSignature) {
+            return false;
         }
+        scriptsSignature = signature;
+        return true;
+    }
 
-        return c.newInstance();
+    /**
+     * Discards the cached classes.
+     */
+    protected void discardCaches() {
+        classes.clear();
+        notFound.clear();
+    }
+
+    /**
+     * @return a value that changes when a script under the script path is
+     *         added, changed or removed.
+     */
+    protected long scriptsSignature() {
+        return signature(scriptPath);
+    }
+
+    /**
+     * @param dir the directory to scan, may be null
+     * @return a value that changes when a groovy script under the directory
+     *         is added, changed or removed.
+     */
+    protected final long signature(File dir) {
+        if (dir == null) {
+            return 0;
+        }
+        long signature = dir.getPath().hashCode();
+        File[] files = dir.listFiles(SCRIPTS);
+        if (files == null) {
+            return signature;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                signature += signature(file);
+            } else {
+                signature += 31L * file.getPath().hashCode() + file.lastModified();
+            }
+        }
+        return signature;
     }
 
     protected String toScriptName(String name) {
@@ -122,35 +295,61 @@ public class DiskGroovyLoader implements GroovyLoader {
         return name.replace('/', '.').replace('\\', '.').substring(0, name.length() - 7);
     }
 
+    /**
+     * Compiles all the scripts under the script path, one at a time as the
+     * GroovyScriptEngine is not safe for concurrent compilation. A script that
+     * fails to compile is logged and skipped. In production mode the compiled
+     * classes are put in the cache.
+     */
     public void precompile() {
-        doDir(scriptPath);
+        final List<String> names = new ArrayList<String>();
+        doDir(scriptPath, names);
+        if (productionMode) {
+            scriptsSignature = scriptsSignature();
+            lastScan.set(System.currentTimeMillis());
+        }
+        for (String name : names) {
+            try {
+                precompile(name);
+            } catch (RuntimeException e) {
+                logger.warn(e.getMessage() + " on " + name + " during precompilation.", e);
+            }
+        }
+    }
 
+    protected void precompile(String name) {
+        try {
+            synchronized (compileLock) {
+                Class<?> c = groovyScriptEngine.loadScriptByName(name);
+                if (productionMode) {
+                    classes.put(name, c);
+                }
+            }
+        } catch (CompilationFailedException e) {
+            logger.warn(e.getMessage() + " on " + name + " during precompilation.");
+        } catch (ResourceException e) {
+            logger.warn(e.getMessage() + " on " + name + " during precompilation.");
+        } catch (ScriptException e) {
+            logger.warn(e.getMessage() + " on " + name + " during precompilation.");
+        }
     }
 
     protected void doDir(File dir) {
-        File[] listFiles = dir.listFiles(new FileFilter() {
-
-            @Override
-            public boolean accept(File pathname) {
-                return pathname.isDirectory() || pathname.getName().endsWith(".groovy");
-            }
+        List<String> names = new ArrayList<String>();
+        doDir(dir, names);
+        for (String name : names) {
+            precompile(name);
+        }
+    }
 
-        });
+    protected void doDir(File dir, List<String> names) {
+        File[] listFiles = dir.listFiles(SCRIPTS);
         for (File file : listFiles) {
             if (file.isDirectory()) {
-                doDir(file);
+                doDir(file, names);
             } else {
-                String name = file.getAbsolutePath().substring(scriptPath.getAbsolutePath().length() + 1);
-                try {
-
-                    groovyScriptEngine.loadScriptByName(name);
-                } catch (CompilationFailedException e) {
-                    logger.warn(e.getMessage() + " on " + name + " during precompilation.");
-                } catch (ResourceException e) {
-                    logger.warn(e.getMessage() + " on " + name + " during precompilation.");
-                } catch (ScriptException e) {
-                    logger.warn(e.getMessage() + " on " + name + " during precompilation.");
-                }
+                names.add(file.getAbsolutePath().substring(scriptPath.getAbsolutePath().length() + 1)
+                        .replace(File.separatorChar, '/'));
             }
         }
     }
@@ -191,6 +390,41 @@ public class DiskGroovyLoader implements GroovyLoader {
         }
     }
 
+    /**
+     * @return true if the loaded classes are cached
+     */
+    public boolean isProductionMode() {
+        return productionMode;
+    }
+
+    /**
+     * Sets production mode, where the loaded classes are cached and the
+     * scripts are only checked for changes every scanInterval seconds.
+     * 
+     * @param productionMode the productionMode to set
+     */
+    public void setProductionMode(boolean productionMode) {
+        this.productionMode = productionMode;
+        discardCaches();
+    }
+
+    /**
+     * @return the scanInterval in seconds
+     */
+    public int getScanInterval() {
+        return scanInterval;
+    }
+
+    /**
+     * Sets the number of seconds between checks for changed scripts in
+     * production mode.
+     * 
+     * @param scanInterval the scanInterval to set
+     */
+    public void setScanInterval(int scanInterval) {
+        this.scanInterval = scanInterval;
+    }
+
     public GroovyScriptEngine getGroovyScriptEngine() {
         return groovyScriptEngine;
     }
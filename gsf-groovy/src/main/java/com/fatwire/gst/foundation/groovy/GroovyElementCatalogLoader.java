@@ -18,10 +18,13 @@ package com.fatwire.gst.foundation.groovy;
 
 import groovy.util.GroovyScriptEngine;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.ServletContext;
 
@@ -33,6 +36,7 @@ import COM.FutureTense.Interfaces.Utilities;
 
 import com.fatwire.cs.core.db.PreparedStmt;
 import com.fatwire.cs.core.db.StatementParam;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
 import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
 import com.fatwire.gst.foundation.facade.sql.Row;
@@ -40,6 +44,22 @@ import com.fatwire.gst.foundation.facade.sql.SqlHelper;
 
 /**
  * Loader for groovy script classes from the ElementCatalog
+ * <p/>
+ * In production mode the ElementCatalog row of an element is read once and
+ * kept as an {@link ElementDescriptor}, and the script classes of the elements
+ * are kept as well, so repeated execution of an element does not run any SQL.
+ * Names that are not an element are not kept. The dependencies on the Template
+ * and CSElement are still logged on every load.
+ * <p/>
+ * Every <tt>scanInterval</tt> seconds (default
+ * {@value #DEFAULT_SCAN_INTERVAL}) a load checks the timestamps of the groovy
+ * element files that are kept, and of the scripts under the script path. When
+ * one of them was changed or removed, as saving a CSElement or Template
+ * writes its element file, the descriptors and classes are discarded. The rest
+ * of the ElementCatalog directory is not scanned. Descriptors are also read
+ * again after the reload interval in seconds as configured by the property
+ * <tt>com.fatwire.gst.foundation.groovy.elementcatalog.reload</tt> (default
+ * 900, 0 means never).
  * 
  * @author Dolf Dijkstra
  * @since September 21,2012
@@ -49,10 +69,90 @@ import com.fatwire.gst.foundation.facade.sql.SqlHelper;
  * http://groovy.codehaus.org/Alternate+Spring-Groovy-Integration
  */
 public class GroovyElementCatalogLoader extends DiskGroovyLoader {
+	public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.groovy.elementcatalog.reload";
+
+	private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+	private static final int DEFAULT_SCAN_INTERVAL = 60;
+
 	private PreparedStmt stmt;
 	private Log logger = LogUtil.getLog(getClass());
 	private boolean isLoaded = false;
 	private String path;
+	private File elementCatalogDir;
+	private final ConcurrentMap<String, ElementDescriptor> elements = new ConcurrentHashMap<String, ElementDescriptor>();
+	private final ConcurrentMap<String, Class<?>> elementClasses = new ConcurrentHashMap<String, Class<?>>();
+
+	/**
+	 * Immutable view of the ElementCatalog row of an element.
+	 */
+	public static final class ElementDescriptor {
+		private final String name;
+		private final boolean element;
+		private final String url;
+		private final String tid;
+		private final String eid;
+		private final long lastModified;
+		private final long loadedAt = System.currentTimeMillis();
+
+		ElementDescriptor(final String name, final boolean element,
+				final String url, final String tid, final String eid,
+				final long lastModified) {
+			this.name = name;
+			this.element = element;
+			this.url = url;
+			this.tid = tid;
+			this.eid = eid;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @return the element name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return true if the name is an element in the ElementCatalog
+		 */
+		public boolean isElement() {
+			return element;
+		}
+
+		/**
+		 * @return the url of the element file
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return the id of the Template of the element, or null
+		 */
+		public String getTid() {
+			return tid;
+		}
+
+		/**
+		 * @return the id of the CSElement of the element, or null
+		 */
+		public String getEid() {
+			return eid;
+		}
+
+		/**
+		 * @return true if the element is a groovy script
+		 */
+		public boolean isGroovy() {
+			return element && url != null && url.endsWith(".groovy");
+		}
+
+		@Override
+		public String toString() {
+			return name + " => " + url;
+		}
+	}
 
 	public GroovyElementCatalogLoader(ServletContext servletContext) {
 		super(servletContext);
@@ -64,7 +164,7 @@ public class GroovyElementCatalogLoader extends DiskGroovyLoader {
 				"SELECT * FROM ElementCatalog WHERE elementname=?",
 				Collections.singletonList("CSElement"));
 		stmt.setElement(0, java.sql.Types.VARCHAR);
-
+		setScanInterval(DEFAULT_SCAN_INTERVAL);
 	}
 
 	@Override
@@ -76,39 +176,23 @@ public class GroovyElementCatalogLoader extends DiskGroovyLoader {
 
 		if (logger.isDebugEnabled())
 			logger.debug("Loading groovy script " + resourceName);
-		if (ics.IsElement(resourceName)) {
-
-			final StatementParam param = stmt.newParam();
-			param.setString(0, resourceName);
-			Row row = SqlHelper.selectSingle(ics, stmt, param);
-
-			// ELEMENTNAME DESCRIPTION URL RESDETAILS1
-			// RESDETAILS2
-
-			String url = row.getString("url");
-			String res1 = row.getString("resdetails1");
-			String res2 = row.getString("resdetails2");
-			Map<String, String> m = new HashMap<String, String>();
-			Utilities.getParams(res1, m, false);
-			Utilities.getParams(res2, m, false);
-			String tid = m.get("tid");
-			String eid = m.get("eid");
-			if (StringUtils.isNotBlank(tid)) {
-				LogDep.logDep(ics, "Template", tid);
+		final ElementDescriptor element = isProductionMode() ? findCachedElement(
+				ics, resourceName) : findElement(ics, resourceName);
+		if (element.isElement()) {
+			if (StringUtils.isNotBlank(element.getTid())) {
+				LogDep.logDep(ics, "Template", element.getTid());
 			}
-			if (StringUtils.isNotBlank(eid)) {
-				LogDep.logDep(ics, "CSElement", eid);
+			if (StringUtils.isNotBlank(element.getEid())) {
+				LogDep.logDep(ics, "CSElement", element.getEid());
 			}
 			// prevent case where resourcename is same as a jsp element.
-			if (url.endsWith(".groovy")) {
+			if (element.isGroovy()) {
 				// no loading based on fallback class name as the super method
 				// has.
 				if (logger.isDebugEnabled()) {
-					logger.debug("Found element for " + resourceName + " => "
-							+ url);
+					logger.debug("Found element for " + element);
 				}
-				Class<?> x = getGroovyScriptEngine().loadScriptByName(url);
-				return x.newInstance();
+				return loadElementClass(element.getUrl()).newInstance();
 
 			} else {
 				return super.load(ics, resourceName);
@@ -119,6 +203,146 @@ public class GroovyElementCatalogLoader extends DiskGroovyLoader {
 
 	}
 
+	/**
+	 * Looks up the element in the cache, reading it from the ElementCatalog
+	 * on first use or when it is older than the reload interval. Names that
+	 * are not an element are not cached.
+	 * 
+	 * @param ics Content Server context
+	 * @param resourceName the element name
+	 * @return the element descriptor, never null
+	 */
+	protected ElementDescriptor findCachedElement(ICS ics, String resourceName) {
+		checkForChanges();
+		ElementDescriptor element = elements.get(resourceName);
+		if (element == null || isExpired(ics, element)) {
+			if (element != null && isModified(element)) {
+				// the class of the old element file is kept by url
+				elementClasses.remove(element.getUrl());
+			}
+			element = findElement(ics, resourceName);
+			// only elements are kept, as the names may come from requests
+			if (element.isElement()) {
+				elements.put(resourceName, element);
+			} else {
+				elements.remove(resourceName);
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * Reads the element from the ElementCatalog.
+	 * 
+	 * @param ics Content Server context
+	 * @param resourceName the element name
+	 * @return the element descriptor, never null
+	 */
+	protected ElementDescriptor findElement(ICS ics, String resourceName) {
+		if (!ics.IsElement(resourceName)) {
+			return new ElementDescriptor(resourceName, false, null, null,
+					null, 0);
+		}
+		final StatementParam param = stmt.newParam();
+		param.setString(0, resourceName);
+		Row row = SqlHelper.selectSingle(ics, stmt, param);
+		if (row == null) {
+			return new ElementDescriptor(resourceName, false, null, null,
+					null, 0);
+		}
+
+		// ELEMENTNAME DESCRIPTION URL RESDETAILS1
+		// RESDETAILS2
+
+		String url = row.getString("url");
+		String res1 = row.getString("resdetails1");
+		String res2 = row.getString("resdetails2");
+		Map<String, String> m = new HashMap<String, String>();
+		Utilities.getParams(res1, m, false);
+		Utilities.getParams(res2, m, false);
+		final File file = elementFile(url);
+		return new ElementDescriptor(resourceName, true, url, m.get("tid"),
+				m.get("eid"), file == null ? 0 : file.lastModified());
+	}
+
+	private Class<?> loadElementClass(String url) throws Exception {
+		if (!isProductionMode()) {
+			return getGroovyScriptEngine().loadScriptByName(url);
+		}
+		Class<?> x = elementClasses.get(url);
+		if (x == null) {
+			synchronized (getCompileLock()) {
+				x = elementClasses.get(url);
+				if (x == null) {
+					x = getGroovyScriptEngine().loadScriptByName(url);
+					elementClasses.put(url, x);
+				}
+			}
+		}
+		return x;
+	}
+
+	private boolean isExpired(ICS ics, ElementDescriptor element) {
+		final long maxAge = ConfigProperties.getReloadInterval(ics,
+				RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+		return maxAge > 0
+				&& System.currentTimeMillis() - element.loadedAt > maxAge;
+	}
+
+	/**
+	 * Discards the cached element descriptors and classes.
+	 */
+	public void invalidate() {
+		discardCaches();
+	}
+
+	@Override
+	protected void discardCaches() {
+		super.discardCaches();
+		elements.clear();
+		elementClasses.clear();
+	}
+
+	@Override
+	protected boolean isScript(String scriptName) {
+		return elementCatalogDir != null
+				&& new File(elementCatalogDir, scriptName).isFile()
+				|| path != null && new File(path, scriptName).isFile();
+	}
+
+	@Override
+	protected long scriptsSignature() {
+		return signature(path == null ? null : new File(path));
+	}
+
+	/**
+	 * Checks the groovy element files that are kept, instead of scanning the
+	 * whole ElementCatalog directory.
+	 */
+	@Override
+	protected boolean scriptsChanged() {
+		if (super.scriptsChanged()) {
+			return true;
+		}
+		for (final ElementDescriptor element : elements.values()) {
+			if (isModified(element)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean isModified(final ElementDescriptor element) {
+		final File file = elementFile(element.getUrl());
+		return element.isGroovy() && file != null
+				&& file.lastModified() != element.lastModified;
+	}
+
+	private File elementFile(final String url) {
+		return elementCatalogDir == null || url == null ? null : new File(
+				elementCatalogDir, url);
+	}
+
 	@Override
 	public void bootEngine(final String path) {
 		this.path = path;
@@ -131,6 +355,8 @@ public class GroovyElementCatalogLoader extends DiskGroovyLoader {
 				.ResolveVariables("CS.CatalogDir.ElementCatalog");
 		root[0] = elementCatalogDefDir;
 		root[1] = path;
+		elementCatalogDir = StringUtils.isBlank(elementCatalogDefDir) ? null
+				: new File(elementCatalogDefDir);
 
 		GroovyScriptEngine gse;
 		try {
@@ -41,6 +41,8 @@ import com.fatwire.gst.foundation.groovy.action.GroovyActionLocator;
  * 
  */
 public class GroovyWebContext extends DefaultWebAppContext {
+    public static final String PRODUCTION_MODE_PARAM = "com.fatwire.gst.foundation.groovy.production";
+
     private GroovyClassLoader classLoader;
 
     /**
@@ -85,7 +87,23 @@ public class GroovyWebContext extends DefaultWebAppContext {
      * @return GroovyLoader that looks at elementcatalog and /WEB-INF/gsf-groovy for groovy classes.
      */
     protected GroovyLoader getGroovyLoader() {
-        return new GroovyElementCatalogLoader(getServletContext());
+        GroovyElementCatalogLoader loader = new GroovyElementCatalogLoader(getServletContext());
+        loader.setProductionMode(isProductionMode());
+        return loader;
+    }
+
+    /**
+     * Production mode is switched on by the system property or servlet context
+     * init parameter <tt>com.fatwire.gst.foundation.groovy.production</tt>.
+     * 
+     * @return true if the loaded groovy classes and elements are cached
+     */
+    protected boolean isProductionMode() {
+        String value = System.getProperty(PRODUCTION_MODE_PARAM);
+        if (value == null) {
+            value = getServletContext().getInitParameter(PRODUCTION_MODE_PARAM);
+        }
+        return Boolean.valueOf(value);
     }
 
     protected ActionLocator getRootActionLocator(Injector injector) {
@@ -39,6 +39,8 @@ public class SpringDiskGroovyLoader extends WebApplicationObjectSupport implemen
     private DiskGroovyLoader groovyLoader;
     private String configPath;
     private int minimumRecompilationInterval = 0;
+    private boolean productionMode = false;
+    private int scanInterval = 5;
 
     public SpringDiskGroovyLoader() {
         super();
@@ -56,7 +58,12 @@ public class SpringDiskGroovyLoader extends WebApplicationObjectSupport implemen
         groovyLoader = new DiskGroovyLoader();
         groovyLoader.setConfigPath(configPath);
         groovyLoader.setMinimumRecompilationInterval(minimumRecompilationInterval);
+        groovyLoader.setProductionMode(productionMode);
+        groovyLoader.setScanInterval(scanInterval);
         groovyLoader.bootEngine(getConfigPath());
+        if (productionMode) {
+            groovyLoader.precompile();
+        }
 
     }
 
@@ -109,4 +116,40 @@ public class SpringDiskGroovyLoader extends WebApplicationObjectSupport implemen
         }
     }
 
+    /**
+     * @return the productionMode
+     */
+    public boolean isProductionMode() {
+        return productionMode;
+    }
+
+    /**
+     * Sets production mode on the DiskGroovyLoader. The scripts are
+     * precompiled at startup and the loaded classes are cached.
+     * 
+     * @param productionMode the productionMode to set
+     * @see DiskGroovyLoader#setProductionMode(boolean)
+     */
+    public void setProductionMode(boolean productionMode) {
+        this.productionMode = productionMode;
+    }
+
+    /**
+     * @return the scanInterval in seconds
+     */
+    public int getScanInterval() {
+        return scanInterval;
+    }
+
+    /**
+     * @param scanInterval the number of seconds between checks for changed
+     *            scripts in production mode
+     */
+    public void setScanInterval(int scanInterval) {
+        this.scanInterval = scanInterval;
+        if (groovyLoader != null) {
+            groovyLoader.setScanInterval(scanInterval);
+        }
+    }
+
 }
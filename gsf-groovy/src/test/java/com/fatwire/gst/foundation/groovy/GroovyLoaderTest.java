@@ -71,4 +71,22 @@ public class GroovyLoaderTest extends TestCase {
         }
 
     }
+
+    public void testProductionMode() throws Exception {
+        DiskGroovyLoader loader = new DiskGroovyLoader();
+        loader.setProductionMode(true);
+        loader.setScanInterval(60);
+        loader.bootEngine("./src/test/groovy");
+        loader.precompile();
+
+        Object a = loader.load(null, "test/MyAction");
+        assertTrue(a instanceof Action);
+        Object b = loader.load(null, "test/MyAction");
+        assertNotSame(a, b);
+        assertSame(a.getClass(), b.getClass());
+
+        assertNull(loader.load(null, "test/NoSuchAction"));
+        assertNull(loader.load(null, "test/NoSuchAction"));
+        assertNotNull(loader.load(null, "com.fatwire.gst.foundation.groovy.action.GroovyActionLocator"));
+    }
 }
@@ -37,7 +37,9 @@ import com.fatwire.mda.DimensionFilterInstance;
  * rule is straight forward. If the template is X then a lookup is done if there
  * is a Template with the name X_mobile and that is used if the visitor is using
  * a mobile device. The same for _desktop and _tablet. If such a template does
- * not exist, the 'normal' template is used. </p>
+ * not exist, the 'normal' template is used. </p> Which variants exist is
+ * remembered in the {@link DeviceVariantTable}; install the
+ * {@link DeviceVariantEventListener} to clear it when templates change. </p>
  * 
  * 
  * @author Dolf Dijkstra
@@ -53,6 +55,8 @@ public class DeviceAwareRenderPageAction extends RenderPage {
     @InjectForRequest
     public LocaleService localeService;
 
+    private DeviceType deviceType;
+
     @Override
     protected AssetIdWithSite resolveAssetId() {
         final AssetIdWithSite id = super.resolveAssetId();
@@ -65,7 +69,7 @@ public class DeviceAwareRenderPageAction extends RenderPage {
 
     @Override
     protected void callTemplate(AssetIdWithSite id, String tname) {
-        DeviceType type = detector.detectDeviceType(ics);
+        DeviceType type = getDeviceType();
         if (LOG.isDebugEnabled())
             LOG.debug("detected device type: " + type);
         String dtname = checkForDeviceTName(id, tname, type);
@@ -75,13 +79,23 @@ public class DeviceAwareRenderPageAction extends RenderPage {
 
     @Override
     protected void callPage(AssetIdWithSite id, String pagename, String packedArgs) {
-        DeviceType type = detector.detectDeviceType(ics);
+        DeviceType type = getDeviceType();
         if (LOG.isDebugEnabled())
             LOG.debug("detected device type: " + type);
         String nn = checkForDevicePagename(id, pagename, type);
         super.callPage(id, nn, packedArgs);
     }
 
+    /**
+     * @return the device type of the visitor, detected once per request.
+     */
+    protected DeviceType getDeviceType() {
+        if (deviceType == null) {
+            deviceType = detector.detectDeviceType(ics);
+        }
+        return deviceType;
+    }
+
     protected AssetIdWithSite findTranslation(AssetIdWithSite id) {
         
         if (localeService == null)
@@ -114,21 +128,29 @@ public class DeviceAwareRenderPageAction extends RenderPage {
                 || StringUtils.endsWith(tname, "_desktop")) {
             return tname;
         }
-        String pf = getPostfix(type);
-        final String targetPagename = tname.startsWith("/") ? (id.getSite() + tname + pf) : (id.getSite() + "/"
-                + id.getType() + "/" + tname + pf);
-        try {
-            if (ics.getPageData(targetPagename).isRegistered()) {
-                return tname + pf;
-            } else if (LOG.isTraceEnabled()) {
-                log.trace("There is no special template for " + type + " at template " + tname);
+        final String key = DeviceVariantTable.templateKey(id.getSite(), id.getType(), tname, type);
+        String resolved = DeviceVariantTable.get(ics, key);
+        if (resolved == null) {
+            String pf = getPostfix(type);
+            final String targetPagename = tname.startsWith("/") ? (id.getSite() + tname + pf) : (id.getSite() + "/"
+                    + id.getType() + "/" + tname + pf);
+            try {
+                if (ics.getPageData(targetPagename).isRegistered()) {
+                    resolved = tname + pf;
+                } else {
+                    if (LOG.isTraceEnabled()) {
+                        log.trace("There is no special template for " + type + " at template " + tname);
+                    }
+                    resolved = tname;
+                }
+                DeviceVariantTable.put(ics, key, resolved);
+            } catch (IllegalArgumentException e) {
+                LOG.warn(e.getMessage());
+                // ignore
+                resolved = tname;
             }
-        } catch (IllegalArgumentException e) {
-            LOG.warn(e.getMessage());
-            // ignore
         }
-
-        return tname;
+        return resolved;
     }
 
     protected String checkForDevicePagename(AssetIdWithSite id, String pagename, DeviceType type) {
@@ -136,22 +158,28 @@ public class DeviceAwareRenderPageAction extends RenderPage {
                 || StringUtils.endsWith(pagename, "_desktop")) {
             return pagename;
         }
-        String pf = getPostfix(type);
-        final String targetPagename = pagename + pf;
-
-        try {
-
-            if (ics.getPageData(targetPagename).isRegistered()) {
-                return targetPagename;
-            } else if (LOG.isTraceEnabled()) {
-                log.trace("There is no device specific pagename for " + type + " at page " + pagename);
+        final String key = DeviceVariantTable.pagenameKey(pagename, type);
+        String resolved = DeviceVariantTable.get(ics, key);
+        if (resolved == null) {
+            String pf = getPostfix(type);
+            final String targetPagename = pagename + pf;
+            resolved = pagename;
+            try {
+
+                if (ics.getPageData(targetPagename).isRegistered()) {
+                    resolved = targetPagename;
+                } else if (LOG.isTraceEnabled()) {
+                    log.trace("There is no device specific pagename for " + type + " at page " + pagename);
+                }
+                DeviceVariantTable.put(ics, key, resolved);
+            } catch (NullPointerException e) {
+                // ignore
+                DeviceVariantTable.put(ics, key, resolved);
+            } catch (IllegalArgumentException e) {
+                LOG.warn(e.getMessage());
+                // ignore
             }
-        } catch (NullPointerException e) {
-            // ignore
-        } catch (IllegalArgumentException e) {
-            LOG.warn(e.getMessage());
-            // ignore
         }
-        return pagename;
+        return resolved;
     }
 }
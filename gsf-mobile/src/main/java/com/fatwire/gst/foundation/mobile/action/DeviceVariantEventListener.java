@@ -0,0 +1,56 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.mobile.action;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.assetapi.listener.RunOnceAssetEventListener;
+
+/**
+ * Asset event listener that clears the {@link DeviceVariantTable} when a
+ * Template, SiteEntry or CSElement asset changes, as that may add or remove a
+ * device specific variant.
+ * <p/>
+ * It is installed by the GSF installer, or with
+ * {@link #install(COM.FutureTense.Interfaces.ICS)}.
+ */
+public class DeviceVariantEventListener extends RunOnceAssetEventListener {
+
+    @Override
+    protected void doAssetAdded(final AssetId assetId) {
+        invalidate(assetId);
+    }
+
+    @Override
+    protected void doAssetUpdated(final AssetId assetId) {
+        invalidate(assetId);
+    }
+
+    @Override
+    protected void doAssetDeleted(final AssetId assetId) {
+        invalidate(assetId);
+    }
+
+    private void invalidate(final AssetId assetId) {
+        final String type = assetId.getType();
+        if ("Template".equals(type) || "SiteEntry".equals(type) || "CSElement".equals(type)) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Clearing the device variant table for " + assetId);
+            }
+            DeviceVariantTable.invalidate(getICS());
+        }
+    }
+
+}
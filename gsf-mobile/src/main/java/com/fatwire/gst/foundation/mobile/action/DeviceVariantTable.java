@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.mobile.action;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Interfaces.ISyncHash;
+
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.mobile.DeviceType;
+
+/**
+ * Remembers which device specific variants of templates and pagenames exist,
+ * so that the SiteCatalog is not consulted on every request. The table is
+ * shared by all threads in the JVM and is filled lazily; it also remembers
+ * that a variant does not exist.
+ * <p/>
+ * The table is cleared by {@link #invalidate(ICS)}, which the
+ * {@link DeviceVariantEventListener} calls for events on Template, SiteEntry
+ * and CSElement assets, and after the reload interval in seconds as
+ * configured by the property
+ * <tt>com.fatwire.gst.foundation.mobile.variant.cache.reload</tt> (default
+ * 900, 0 means never). To reach every cluster member, a marker is kept in a
+ * cluster-synchronized ISyncHash that depends on the SiteCatalog, Template,
+ * SiteEntry and CSElement tables, as the CachedPropertyDao does. When that
+ * hash is flushed, because one of these tables changed or
+ * {@link #invalidate(ICS)} was called on any member, the table is cleared as
+ * well.
+ */
+public final class DeviceVariantTable {
+    private static final Log LOG = LogUtil.getLog(DeviceVariantTable.class);
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.mobile.variant.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    private static final int MAX_ENTRIES = 10000;
+
+    /** the key of the marker in the ISyncHash */
+    private static final String LOADED = "loaded";
+
+    private static final int TIMEOUT_MINUTES = 60 * 24; // one day
+
+    private static volatile Table table;
+
+    private static final class Table {
+        private final ConcurrentMap<String, String> resolved = new ConcurrentHashMap<String, String>();
+        private final long loadedAt = System.currentTimeMillis();
+    }
+
+    private DeviceVariantTable() {
+    }
+
+    /**
+     * Clears the table on all cluster members.
+     * 
+     * @param ics Content Server context
+     */
+    public static void invalidate(final ICS ics) {
+        LOG.debug("Device variant table is invalidated.");
+        table = null;
+        getMarker(ics).clear();
+    }
+
+    private static ISyncHash getMarker(final ICS ics) {
+        final String dsn = ics.GetProperty("cs.dsn");
+        return ics.GetSynchronizedHash(DeviceVariantTable.class.getName(), true, TIMEOUT_MINUTES, 1, true, true,
+                Arrays.asList(dsn + "SiteCatalog", dsn + "Template", dsn + "SiteEntry", dsn + "CSElement"));
+    }
+
+    /**
+     * @param ics Content Server context
+     * @param key the key of the variant
+     * @return the effective template or pagename, or null if it is not known
+     *         yet
+     */
+    static String get(final ICS ics, final String key) {
+        return getTable(ics).resolved.get(key);
+    }
+
+    /**
+     * @param ics Content Server context
+     * @param key the key of the variant
+     * @param value the effective template or pagename
+     */
+    static void put(final ICS ics, final String key, final String value) {
+        final Table t = getTable(ics);
+        if (t.resolved.size() >= MAX_ENTRIES) {
+            t.resolved.clear();
+        }
+        t.resolved.put(key, value);
+    }
+
+    /**
+     * @return the key for a template variant
+     */
+    static String templateKey(final String site, final String assetType, final String tname, final DeviceType type) {
+        return "t|" + site + '|' + assetType + '|' + tname + '|' + type;
+    }
+
+    /**
+     * @return the key for a pagename variant
+     */
+    static String pagenameKey(final String pagename, final DeviceType type) {
+        return "p|" + pagename + '|' + type;
+    }
+
+    private static Table getTable(final ICS ics) {
+        Table t = table;
+        final ISyncHash marker = getMarker(ics);
+        if (t == null || isExpired(ics, t) || marker.get(LOADED) == null) {
+            // set before filling, a flush in the meantime clears the new table
+            marker.put(LOADED, Long.valueOf(System.currentTimeMillis()));
+            t = new Table();
+            table = t;
+        }
+        return t;
+    }
+
+    private static boolean isExpired(final ICS ics, final Table t) {
+        final long maxAge = ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+        return maxAge > 0 && System.currentTimeMillis() - t.loadedAt > maxAge;
+    }
+}
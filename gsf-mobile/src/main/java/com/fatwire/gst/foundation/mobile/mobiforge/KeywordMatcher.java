@@ -0,0 +1,172 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.fatwire.gst.foundation.mobile.mobiforge;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Aho-Corasick automaton over a set of ASCII keywords, each with a bit flag.
+ * {@link #match(CharSequence, int)} scans the input once, case insensitive
+ * for ASCII letters, and returns the flags of all keywords that occur in the
+ * input. It does not allocate.
+ * <p/>
+ * The keywords are expected in lower case: an upper case character in a
+ * keyword never matches, just like <tt>ua.toLowerCase().contains(keyword)</tt>
+ * would never match. Non-ASCII characters in the input do not match any
+ * keyword.
+ * <p/>
+ * Instances are immutable and thread safe.
+ */
+final class KeywordMatcher {
+
+    private static final int ALPHABET = 128;
+
+    /** transition table, state * ALPHABET + char; complete (a DFA) */
+    private final int[] next;
+
+    /** flags of the keywords ending in a state, including via fail links */
+    private final int[] output;
+
+    /**
+     * Builder for the automaton.
+     */
+    static final class Builder {
+        private final List<int[]> gotos = new ArrayList<int[]>();
+        private final List<Integer> flags = new ArrayList<Integer>();
+
+        Builder() {
+            newState();
+        }
+
+        /**
+         * @param keyword ASCII keyword
+         * @param flag the flag to report when the keyword is found
+         * @return this builder
+         */
+        Builder add(final String keyword, final int flag) {
+            if (keyword.length() == 0) {
+                throw new IllegalArgumentException("Keyword must not be empty.");
+            }
+            int s = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                final char c = keyword.charAt(i);
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("Keyword '" + keyword + "' is not ASCII.");
+                }
+                if (gotos.get(s)[c] < 0) {
+                    gotos.get(s)[c] = newState();
+                }
+                s = gotos.get(s)[c];
+            }
+            flags.set(s, flags.get(s) | flag);
+            return this;
+        }
+
+        /**
+         * @param keywords ASCII keywords
+         * @param flag the flag to report when any of the keywords is found
+         * @return this builder
+         */
+        Builder add(final String[] keywords, final int flag) {
+            for (final String keyword : keywords) {
+                add(keyword, flag);
+            }
+            return this;
+        }
+
+        KeywordMatcher build() {
+            return new KeywordMatcher(this);
+        }
+
+        private int newState() {
+            final int[] g = new int[ALPHABET];
+            Arrays.fill(g, -1);
+            gotos.add(g);
+            flags.add(0);
+            return gotos.size() - 1;
+        }
+    }
+
+    private KeywordMatcher(final Builder b) {
+        final int states = b.gotos.size();
+        next = new int[states * ALPHABET];
+        output = new int[states];
+        final int[] fail = new int[states];
+
+        // breadth first, so the fail state of a state is complete before the
+        // state itself is visited
+        final LinkedList<Integer> queue = new LinkedList<Integer>();
+        for (int c = 0; c < ALPHABET; c++) {
+            final int t = b.gotos.get(0)[c];
+            if (t < 0) {
+                next[c] = 0;
+            } else {
+                next[c] = t;
+                fail[t] = 0;
+                queue.add(t);
+            }
+        }
+        output[0] = b.flags.get(0);
+        while (!queue.isEmpty()) {
+            final int s = queue.removeFirst();
+            output[s] = b.flags.get(s) | output[fail[s]];
+            for (int c = 0; c < ALPHABET; c++) {
+                final int t = b.gotos.get(s)[c];
+                if (t < 0) {
+                    next[s * ALPHABET + c] = next[fail[s] * ALPHABET + c];
+                } else {
+                    next[s * ALPHABET + c] = t;
+                    fail[t] = next[fail[s] * ALPHABET + c];
+                    queue.add(t);
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans the input for the keywords.
+     * 
+     * @param input the text to scan
+     * @param stopFlags stop scanning as soon as any of these flags is found, 0
+     *            to scan the whole input
+     * @return the flags of the keywords found
+     */
+    int match(final CharSequence input, final int stopFlags) {
+        int found = 0;
+        int s = 0;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= ALPHABET) {
+                s = 0;
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            s = next[s * ALPHABET + c];
+            found |= output[s];
+            if ((found & stopFlags) != 0) {
+                return found;
+            }
+        }
+        return found;
+    }
+
+}
@@ -16,8 +16,11 @@
 
 package com.fatwire.gst.foundation.mobile.mobiforge;
 
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -33,6 +36,8 @@ import com.fatwire.gst.foundation.mobile.DeviceType;
  * algorithm and takes care of most of the devices based on User-Agent header.
  * </p> To override the User-Agent algorithm, you can add a parameter <tt>d</tt>
  * with a value of <tt>mobile, tablet or desktop</tt>.
+ * </p> All keywords are compiled into a single automaton, so that the
+ * User-Agent is scanned only once, and the outcome is cached per User-Agent.
  * 
  * @author Dolf Dijkstra
  * @since 25 jun. 2012
@@ -93,35 +98,63 @@ public class MobiForgeDeviceDetector implements DeviceDetector {
     protected DeviceType detectDeviceType(String ua) {
         if (StringUtils.isBlank(ua) || ua.length() < 5)
             return DeviceType.DESKTOP;
-        String userAgent = ua.toLowerCase(Locale.US);
-
-        String mobile_ua = userAgent.substring(0, 4);
-        for (String prefix : KNOWN_MOBILE_USER_AGENT_PREFIXES) {
-            if (prefix.equals(mobile_ua))
-                return DeviceType.MOBILE;
+        if (ua.length() > MAX_CACHED_USER_AGENT_LENGTH)
+            return classify(ua);
+        DeviceType type = CACHE.get(ua);
+        if (type == null) {
+            type = classify(ua);
+            if (CACHE.size() >= MAX_CACHE_SIZE) {
+                // the User-Agent is client controlled, do not let it grow
+                // unbounded
+                CACHE.clear();
+            }
+            CACHE.put(ua, type);
         }
+        return type;
+    }
 
-        // UserAgent keyword detection for Mobile and Tablet devices
+    /**
+     * Classifies the User-Agent with a single pass over the string.
+     * 
+     * @param userAgent the User-Agent, at least 5 characters long
+     * @return the device type
+     */
+    static DeviceType classify(CharSequence userAgent) {
+        if (Arrays.binarySearch(PREFIXES, pack(userAgent)) >= 0)
+            return DeviceType.MOBILE;
 
-        for (String keyword : KNOWN_MOBILE_USER_AGENT_KEYWORDS) {
-            if (userAgent.contains(keyword)) {
-                return DeviceType.MOBILE;
-            }
-        }
-        for (String keyword : KNOWN_TABLET_USER_AGENT_KEYWORDS) {
-            if (userAgent.contains(keyword)) {
-                return DeviceType.TABLET;
-            }
-        }
-        // Android special case
-        if (userAgent.contains("android") && userAgent.contains("mobile")) {
+        // UserAgent keyword detection for Mobile and Tablet devices
+        int found = MATCHER.match(userAgent, MOBILE_KEYWORD);
+        if ((found & MOBILE_KEYWORD) != 0)
             return DeviceType.MOBILE;
-        } else if (userAgent.contains("android") && !userAgent.contains("mobile")) {
+        if ((found & TABLET_KEYWORD) != 0)
             return DeviceType.TABLET;
+
+        // Android special case
+        if ((found & ANDROID) != 0) {
+            return (found & MOBILE) != 0 ? DeviceType.MOBILE : DeviceType.TABLET;
         }
         return DeviceType.DESKTOP;// default to desktop
     }
 
+    /**
+     * @param s at least 4 characters
+     * @return the first 4 characters in lower case packed in an int, -1 if any
+     *         of them is not ASCII.
+     */
+    private static int pack(CharSequence s) {
+        int p = 0;
+        for (int i = 0; i < 4; i++) {
+            char c = s.charAt(i);
+            if (c >= 128)
+                return -1;
+            if (c >= 'A' && c <= 'Z')
+                c += 'a' - 'A';
+            p = p << 8 | c;
+        }
+        return p;
+    }
+
     private static final String[] KNOWN_MOBILE_USER_AGENT_PREFIXES = new String[] { "w3c ", "w3c-", "acs-", "alav",
             "alca", "amoi", "audi", "avan", "benq", "bird", "blac", "blaz", "brew", "cell", "cldc", "cmd-", "dang",
             "doco", "eric", "hipt", "htc_", "inno", "ipaq", "ipod", "jigs", "kddi", "keji", "leno", "lg-c", "lg-d",
@@ -136,4 +169,28 @@ public class MobiForgeDeviceDetector implements DeviceDetector {
 
     private static final String[] KNOWN_TABLET_USER_AGENT_KEYWORDS = new String[] { "ipad", "playbook", "hp-tablet" };
 
+    private static final int MOBILE_KEYWORD = 1;
+    private static final int TABLET_KEYWORD = 2;
+    private static final int ANDROID = 4;
+    private static final int MOBILE = 8;
+
+    private static final KeywordMatcher MATCHER = new KeywordMatcher.Builder()
+            .add(KNOWN_MOBILE_USER_AGENT_KEYWORDS, MOBILE_KEYWORD).add(KNOWN_TABLET_USER_AGENT_KEYWORDS, TABLET_KEYWORD)
+            .add("android", ANDROID).add("mobile", MOBILE).build();
+
+    private static final int[] PREFIXES = new int[KNOWN_MOBILE_USER_AGENT_PREFIXES.length];
+
+    static {
+        for (int i = 0; i < PREFIXES.length; i++) {
+            PREFIXES[i] = pack(KNOWN_MOBILE_USER_AGENT_PREFIXES[i]);
+        }
+        Arrays.sort(PREFIXES);
+    }
+
+    private static final int MAX_CACHE_SIZE = 5000;
+    private static final int MAX_CACHED_USER_AGENT_LENGTH = 1024;
+
+    /** User-Agent to device type, shared by all instances */
+    private static final ConcurrentMap<String, DeviceType> CACHE = new ConcurrentHashMap<String, DeviceType>();
+
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.mobile.mobiforge;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class KeywordMatcherTest {
+
+	private final KeywordMatcher matcher = new KeywordMatcher.Builder().add("he", 1).add("she", 2).add("his", 4)
+			.add("hers", 8).build();
+
+	@Test
+	public void testMatch_overlapping() {
+		assertEquals(1 | 2 | 8, matcher.match("ushers", 0));
+	}
+
+	@Test
+	public void testMatch_none() {
+		assertEquals(0, matcher.match("xyz hs", 0));
+	}
+
+	@Test
+	public void testMatch_caseInsensitive() {
+		assertEquals(4, matcher.match("tHIs", 0));
+	}
+
+	@Test
+	public void testMatch_upperCaseKeywordNeverMatches() {
+		KeywordMatcher m = new KeywordMatcher.Builder().add("nintendo DS", 1).build();
+		assertEquals(0, m.match("Nintendo DS", 0));
+	}
+
+	@Test
+	public void testMatch_nonAsciiResets() {
+		assertEquals(0, matcher.match("h\u00e9e", 0));
+	}
+
+	@Test
+	public void testMatch_stopsEarly() {
+		// 'hers' is after 'she', not reported when stopping on 2
+		assertEquals(1 | 2, matcher.match("she hers", 2));
+	}
+
+}
@@ -51,4 +51,41 @@ public class MobiForceDeviceDetectorTest {
 
 	}
 
+	@Test
+	public void testDetectDeviceTypeString_androidPhone() {
+		String ua = "Mozilla/5.0 (Linux; U; Android 4.0.3; en-us; Nexus S Build/IML74K) AppleWebKit/534.30 (KHTML, like Gecko) Version/4.0 Mobile Safari/534.30";
+
+		DeviceType type = new MobiForgeDeviceDetector().detectDeviceType(ua);
+		assertEquals(DeviceType.MOBILE, type);
+
+	}
+
+	@Test
+	public void testDetectDeviceTypeString_androidTablet() {
+		String ua = "Mozilla/5.0 (Linux; U; Android 3.2; en-us; Xoom Build/HTJ85B) AppleWebKit/534.13 (KHTML, like Gecko) Version/4.0 Safari/534.13";
+
+		DeviceType type = new MobiForgeDeviceDetector().detectDeviceType(ua);
+		assertEquals(DeviceType.TABLET, type);
+
+	}
+
+	@Test
+	public void testDetectDeviceTypeString_prefix() {
+		String ua = "Nokia6230i/2.0 (03.25) Profile/MIDP-2.0 Configuration/CLDC-1.1";
+
+		DeviceType type = new MobiForgeDeviceDetector().detectDeviceType(ua);
+		assertEquals(DeviceType.MOBILE, type);
+
+	}
+
+	@Test
+	public void testDetectDeviceTypeString_cached() {
+		String ua = "Mozilla/5.0 (iPad; CPU OS 5_1 like Mac OS X) AppleWebKit/534.46 (KHTML, like Gecko) Version/5.1 Mobile/9B176 Safari/7534.48.3";
+
+		MobiForgeDeviceDetector detector = new MobiForgeDeviceDetector();
+		assertEquals(DeviceType.TABLET, detector.detectDeviceType(ua));
+		assertEquals(DeviceType.TABLET, detector.detectDeviceType(new String(ua)));
+
+	}
+
 }
@@ -15,62 +15,68 @@
  */
 package com.fatwire.gst.foundation.tagging;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import com.fatwire.assetapi.data.AssetId;
-import com.fatwire.gst.foundation.facade.assetapi.listener.RunOnceAssetEventListener;
+import com.fatwire.gst.foundation.facade.assetapi.listener.CoalescingAssetEventListener;
+import com.fatwire.gst.foundation.tagging.db.TagFlushAggregator;
 
 /**
  * Cache manager to be used to deal with cache updates
+ * <p/>
+ * By default each event is processed in the calling thread. When
+ * <tt>com.fatwire.gst.foundation.listener.async</tt> is set the events are
+ * processed in the background and the pages of all tags of a batch are
+ * flushed at once. The batch then collects the events of
+ * <tt>com.fatwire.gst.foundation.tagging.flush.delay</tt> milliseconds, or of
+ * the window of the pipeline if that delay is 0.
  * 
  * @author Tony Field
  * @author Dolf Dijkstra
  * @since Jul 28, 2010
  */
-public final class CacheMgrTaggedAssetEventListener extends RunOnceAssetEventListener {
-
-    
+public final class CacheMgrTaggedAssetEventListener extends CoalescingAssetEventListener {
 
     private AssetTaggingService getService() {
         return AssetTaggingServiceFactory.getService(getICS());
     }
 
     @Override
-    public void doAssetAdded(AssetId assetId) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Heard assetAdded event for " + assetId);
-        }
-
-        AssetTaggingService svc = getService();
-        if (svc.isTagged(assetId)) {
-            Collection<Tag> tags = svc.getTags(assetId);
-            svc.clearCacheForTag(tags);
-        }
+    protected long getWindow() {
+        long delay = TagFlushAggregator.getDelay(getICS());
+        return delay > 0 ? delay : super.getWindow();
     }
 
+    /**
+     * A deleted asset is processed in the calling thread, as its tags are gone
+     * by the time the background thread would get to it.
+     */
     @Override
-    public void doAssetUpdated(AssetId assetId) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Heard assetUpdated event for " + assetId);
-        }
-        AssetTaggingService svc = getService();
-        if (svc.isTagged(assetId)) {
-            Collection<Tag> tags = svc.getTags(assetId);
-            svc.clearCacheForTag(tags);
-        }
+    protected boolean isSynchronous(final AssetEvent event) {
+        return event.getType() == Type.DELETED;
     }
 
+    /**
+     * Flushes the pages of all the tags of the assets in the batch at once.
+     * The assets of the batch are loaded together; assets that are not tagged
+     * have no tags to flush.
+     */
     @Override
-    public void doAssetDeleted(AssetId assetId) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Heard assetDeleted event for " + assetId);
+    protected void process(final List<AssetEvent> events) {
+        List<AssetId> ids = new ArrayList<AssetId>(events.size());
+        for (AssetEvent event : events) {
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Heard " + event.getType() + " event for " + event.getId());
+            }
+            ids.add(event.getId());
         }
         AssetTaggingService svc = getService();
-        if (svc.isTagged(assetId)) {
-            Collection<Tag> tags = svc.getTags(assetId);
+        Collection<Tag> tags = svc.getTags(ids);
+        if (!tags.isEmpty()) {
             svc.clearCacheForTag(tags);
         }
     }
 
- 
 }
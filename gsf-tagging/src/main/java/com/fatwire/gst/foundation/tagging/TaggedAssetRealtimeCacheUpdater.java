@@ -17,7 +17,9 @@ package com.fatwire.gst.foundation.tagging;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import COM.FutureTense.Interfaces.ICS;
 
@@ -55,19 +57,39 @@ public final class TaggedAssetRealtimeCacheUpdater extends PageCacheUpdaterImpl
     protected void beforeSelect(ICS ics, Collection<String> invalKeys, Collection<String> regenKeys,
             Collection<AssetId> assetIds) {
         AssetTaggingService svc = AssetTaggingServiceFactory.getService(ics);
-        List<AssetId> tagged = new ArrayList<AssetId>();
-        for (AssetId id : assetIds) {
-            if (svc.isTagged(id)) {
-                tagged.add(id);
+        // the tags are loaded per asset type, so that a type that can not be
+        // read as a tagged asset does not stop the others
+        for (Map.Entry<String, List<AssetId>> e : groupByType(assetIds).entrySet()) {
+            Collection<Tag> tags;
+            try {
+                tags = svc.getTags(e.getValue());
+            } catch (RuntimeException ex) {
+                if (LOG.isTraceEnabled())
+                    LOG.trace("beforeSelect found that the assets of type " + e.getKey()
+                            + " are not tagged assets.  We found an exception: " + ex.toString(), ex);
+                continue;
+            }
+            for (Tag tag : tags) {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("AssetTag found in beforeSelect: " + tag
+                            + ". Adding this to the list of compositional dependencies to be flushed.");
+                String sTag = convertTagToCacheDepString(tag);
+                invalKeys.add(sTag);
             }
-        }
-        for (Tag tag : svc.getTags(tagged)) {
-            if (LOG.isDebugEnabled())
-                LOG.debug("AssetTag found in beforeSelect: " + tag
-                        + ". Adding this to the list of compositional dependencies to be flushed.");
-            String sTag = convertTagToCacheDepString(tag);
-            invalKeys.add(sTag);
         }
         super.beforeSelect(ics, invalKeys, regenKeys, assetIds);
     }
+
+    private static Map<String, List<AssetId>> groupByType(Collection<AssetId> assetIds) {
+        Map<String, List<AssetId>> byType = new LinkedHashMap<String, List<AssetId>>();
+        for (AssetId id : assetIds) {
+            List<AssetId> ids = byType.get(id.getType());
+            if (ids == null) {
+                ids = new ArrayList<AssetId>();
+                byType.put(id.getType(), ids);
+            }
+            ids.add(id);
+        }
+        return byType;
+    }
 }
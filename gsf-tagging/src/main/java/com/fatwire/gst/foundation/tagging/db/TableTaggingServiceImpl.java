@@ -20,9 +20,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import COM.FutureTense.Cache.CacheHelper;
 import COM.FutureTense.Cache.CacheManager;
 import COM.FutureTense.Interfaces.ICS;
 
@@ -96,15 +97,15 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
         CacheManager.RecordItem(ics, convertTagToCacheDepString(tag));
     }
 
+    /**
+     * The flushes are merged by the {@link TagFlushAggregator}.
+     */
     public void clearCacheForTag(Collection<Tag> tags) {
         List<String> ids = new ArrayList<String>();
         for (Tag tag : tags) {
             ids.add(convertTagToCacheDepString(tag));
         }
-        CacheManager cm = new CacheManager(ics);
-        cm.setPagesByID(ics, ids.toArray(new String[ids.size()]));
-        cm.flushCSEngine(ics, CacheHelper._both);
-        cm.flushSSEngines(ics);
+        TagFlushAggregator.clear(ics, ids);
     }
 
     public void addAsset(AssetId id) {
@@ -158,17 +159,95 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
 
     public Collection<Tag> getTags(Collection<AssetId> ids) {
         HashSet<Tag> tags = new HashSet<Tag>();
-        // todo: medium priority: IMPORTANT: This should be optimized so that we
-        // don't kill the db
-        if (ids.size() > 5)
-            LOG.warn("Fetching tags serially for " + ids.size()
-                    + " assets.  TableTaggingServiceImpl isn't yet optimized to handle this very nicely");
-        for (AssetId id : ids) {
-            tags.addAll(getTags(id));
+        for (TaggedAsset asset : loadTaggedAssets(ids)) {
+            tags.addAll(asset.getTags());
         }
         return tags;
     }
 
+    /**
+     * Number of ids in the IN list of one statement.
+     */
+    private static final int BATCH_SIZE = 250;
+
+    /**
+     * Retrieve the tagged assets for a collection of assets, with a handful of
+     * statements per asset type instead of a couple per asset. Like
+     * {@link #loadTaggedAsset(AssetId)} this method records a compositional
+     * dependency on both the input assets AND the tags themselves.
+     * 
+     * @param ids asset ids
+     * @return the tagged assets, assets that do not exist are omitted.
+     */
+    private Collection<TaggedAsset> loadTaggedAssets(Collection<AssetId> ids) {
+        Map<String, List<Long>> byType = new LinkedHashMap<String, List<Long>>();
+        for (AssetId id : ids) {
+            LogDep.logDep(ics, id);
+            List<Long> l = byType.get(id.getType());
+            if (l == null) {
+                l = new ArrayList<Long>();
+                byType.put(id.getType(), l);
+            }
+            l.add(id.getId());
+        }
+
+        List<TaggedAsset> ret = new ArrayList<TaggedAsset>(ids.size());
+        for (Map.Entry<String, List<Long>> e : byType.entrySet()) {
+            String type = e.getKey();
+            List<Long> typeIds = e.getValue();
+            boolean flex = directSqlAccessTools.isFlex(new AssetIdImpl(type, typeIds.get(0)));
+            for (int i = 0; i < typeIds.size(); i += BATCH_SIZE) {
+                List<Long> batch = typeIds.subList(i, Math.min(typeIds.size(), i + BATCH_SIZE));
+                Map<Long, Map<String, String>> gsttags = flex ? directSqlAccessTools.getFlexAttributeValues(type,
+                        batch, "gsttag") : null;
+
+                String sql = (flex ? "SELECT id,startdate,enddate" : "SELECT *") + " FROM " + type + " WHERE id IN ("
+                        + StringUtils.join(batch, ",") + ")";
+                for (Row row : SqlHelper.select(ics, type, sql)) {
+                    AssetId id = new AssetIdImpl(type, row.getLong("id"));
+                    Date start = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
+                    Date end = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
+                    TaggedAsset asset = new TaggedAsset(id, start, end);
+                    String gsttagAttrVal;
+                    if (flex) {
+                        Map<String, String> values = gsttags.get(id.getId());
+                        gsttagAttrVal = values == null ? null : values.get("gsttag");
+                    } else {
+                        gsttagAttrVal = getBasicTagValue(row);
+                    }
+                    addTags(asset, gsttagAttrVal);
+                    ret.add(asset);
+                }
+            }
+        }
+        if (LOG.isTraceEnabled())
+            LOG.trace("Loaded " + ret.size() + " tagged assets for " + ids.size() + " asset ids.");
+        return ret;
+    }
+
+    private String getBasicTagValue(Row row) {
+        String s = "";
+        try {
+            if (row.isField("gsttag")) {
+                s = row.getString("gsttag");
+            }
+        } catch (Exception e) {
+            LOG.trace("Could not get gsttag data from basic asset.  Maybe this is just because "
+                    + "there is no gsttag column - which is just fine.", e);
+        }
+        return s;
+    }
+
+    private void addTags(TaggedAsset asset, String gsttagAttrVal) {
+        if (StringUtils.isNotBlank(gsttagAttrVal)) {
+            for (String tag : gsttagAttrVal.split(",")) {
+                Tag oTag = asTag(tag);
+                recordCacheDependency(oTag);
+                asset.addTag(oTag);
+            }
+        }
+    }
+
     /**
      * Retrieve the tags for the tagged asset. This method records a
      * compositional dependency on both the input asset AND the tags themselves.
@@ -197,8 +276,6 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
             Date start = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
             Date end = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
             ret = new TaggedAsset(id, start, end);
-            // todo: medium: optimize as this is very inefficient for flex
-            // assets
             gsttagAttrVal = directSqlAccessTools.getFlexAttributeValue(id, "gsttag");
 
         } else {
@@ -214,25 +291,10 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
             Date start = StringUtils.isBlank(row.getString("startdate")) ? null : row.getDate("startdate");
             Date end = StringUtils.isBlank(row.getString("enddate")) ? null : row.getDate("enddate");
             ret = new TaggedAsset(id, start, end);
-            String s = "";
-            try {
-                if (row.isField("gsttag")) {
-                    s = row.getString("gsttag");
-                }
-            } catch (Exception e) {
-                LOG.trace("Could not get gsttag data from basic asset.  Maybe this is just because "
-                        + "there is no gsttag column - which is just fine.", e);
-            }
-            gsttagAttrVal = s;
+            gsttagAttrVal = getBasicTagValue(row);
         }
 
-        if (StringUtils.isNotBlank(gsttagAttrVal)) {
-            for (String tag : gsttagAttrVal.split(",")) {
-                Tag oTag = asTag(tag);
-                recordCacheDependency(oTag);
-                ret.addTag(oTag);
-            }
-        }
+        addTags(ret, gsttagAttrVal);
 
         // End temporary deadlock workaround
 
@@ -288,14 +350,18 @@ public final class TableTaggingServiceImpl implements AssetTaggingService {
         for (final Row asset : SqlHelper.select(ics, REGISTRY_SELECT, param)) {
             AssetId id = new AssetIdImpl(asset.getString("assettype"), asset.getLong("assetid"));
             LogDep.logDep(ics, id);
-            if (FilterAssetsByDate.isValidOnDate(ics, id, null)) {
-                ids.add(id);
-            } else {
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Asset " + id + " tagged with " + tag + " is not active based on startdate/enddate");
-            }
+            ids.add(id);
+        }
+        if (ids.isEmpty()) {
+            return ids;
+        }
+        Collection<AssetId> valid = FilterAssetsByDate.filter(ics, null, ids);
+        if (LOG.isDebugEnabled() && valid.size() < ids.size()) {
+            List<AssetId> inactive = new ArrayList<AssetId>(ids);
+            inactive.removeAll(valid);
+            LOG.debug("Assets " + inactive + " tagged with " + tag + " are not active based on startdate/enddate");
         }
-        return ids;
+        return valid;
     }
 
     public boolean isTagged(AssetId id) {
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.tagging.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import COM.FutureTense.Cache.CacheHelper;
+import COM.FutureTense.Cache.CacheManager;
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+
+import org.apache.commons.logging.Log;
+
+/**
+ * Flushes the pages for the cache dependency keys of tags together, with one
+ * CacheManager flush for the CS engine and one for the SS engines.
+ * <p/>
+ * When the asset events are processed asynchronously, as configured by
+ * <tt>com.fatwire.gst.foundation.listener.async</tt>, the background pipeline
+ * of the CacheMgrTaggedAssetEventListener flushes the keys of all the events
+ * that arrive within <tt>com.fatwire.gst.foundation.tagging.flush.delay</tt>
+ * milliseconds at once (default 0, the window of the pipeline). A flush never
+ * contains more than <tt>com.fatwire.gst.foundation.tagging.flush.maxkeys</tt>
+ * keys (default 1000). The keys of a flush that failed are logged and
+ * dropped.
+ */
+public final class TagFlushAggregator {
+
+    private static final Log LOG = LogUtil.getLog(TagFlushAggregator.class);
+
+    public static final String DELAY_PROPNAME = "com.fatwire.gst.foundation.tagging.flush.delay";
+
+    public static final String MAXKEYS_PROPNAME = "com.fatwire.gst.foundation.tagging.flush.maxkeys";
+
+    private static final long DEFAULT_DELAY_MILLIS = 0;
+
+    private static final int DEFAULT_MAX_KEYS = 1000;
+
+    private static final Object LOCK = new Object();
+
+    private static long collected;
+
+    private static long duplicates;
+
+    private static long flushes;
+
+    private static long flushedKeys;
+
+    private static long failures;
+
+    private TagFlushAggregator() {
+    }
+
+    /**
+     * @param ics Content Server context
+     * @return the milliseconds that keys are collected before they are
+     *         flushed, 0 to use the window of the event pipeline.
+     */
+    public static long getDelay(final ICS ics) {
+        return ConfigProperties.getLong(ics, DELAY_PROPNAME, DEFAULT_DELAY_MILLIS);
+    }
+
+    /**
+     * Flushes the pages that recorded a dependency on any of the keys.
+     *
+     * @param ics Content Server context
+     * @param keys the cache dependency keys of the tags
+     */
+    public static void clear(final ICS ics, final Collection<String> keys) {
+        final List<String> ready = new ArrayList<String>(new LinkedHashSet<String>(keys));
+        synchronized (LOCK) {
+            collected += keys.size();
+            duplicates += keys.size() - ready.size();
+        }
+        flush(ics, ready);
+    }
+
+    /**
+     * @return the number of keys passed to {@link #clear(ICS, Collection)}.
+     */
+    public static long getKeysCollected() {
+        synchronized (LOCK) {
+            return collected;
+        }
+    }
+
+    /**
+     * @return the number of keys that occurred more than once in a call to
+     *         {@link #clear(ICS, Collection)}.
+     */
+    public static long getDuplicateKeys() {
+        synchronized (LOCK) {
+            return duplicates;
+        }
+    }
+
+    /**
+     * @return the number of CacheManager flushes issued.
+     */
+    public static long getFlushes() {
+        synchronized (LOCK) {
+            return flushes;
+        }
+    }
+
+    /**
+     * @return the number of keys flushed.
+     */
+    public static long getKeysFlushed() {
+        synchronized (LOCK) {
+            return flushedKeys;
+        }
+    }
+
+    /**
+     * @return the number of CacheManager flushes that failed.
+     */
+    public static long getFailures() {
+        synchronized (LOCK) {
+            return failures;
+        }
+    }
+
+    private static void flush(final ICS ics, final List<String> keys) {
+        final int maxKeys = Math.max(1, (int) ConfigProperties.getLong(ics, MAXKEYS_PROPNAME, DEFAULT_MAX_KEYS));
+        for (int i = 0; i < keys.size(); i += maxKeys) {
+            final List<String> chunk = keys.subList(i, Math.min(keys.size(), i + maxKeys));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Flushing the pages for " + chunk.size() + " tags.");
+            }
+            try {
+                final CacheManager cm = new CacheManager(ics);
+                cm.setPagesByID(ics, chunk.toArray(new String[chunk.size()]));
+                cm.flushCSEngine(ics, CacheHelper._both);
+                cm.flushSSEngines(ics);
+            } catch (final RuntimeException e) {
+                synchronized (LOCK) {
+                    failures++;
+                }
+                LOG.error("Flushing the pages for " + chunk.size() + " tags failed, the pages for " + chunk
+                        + " may be stale: " + e.getMessage(), e);
+                continue;
+            }
+            synchronized (LOCK) {
+                flushes++;
+                flushedKeys += chunk.size();
+            }
+        }
+    }
+
+}
@@ -22,7 +22,7 @@ import javax.servlet.jsp.JspException;
 
 import COM.FutureTense.Interfaces.ICS;
 
-import com.fatwire.gst.foundation.properties.AssetApiPropertyDao;
+import com.fatwire.gst.foundation.properties.CachedPropertyDao;
 import com.fatwire.gst.foundation.properties.PropertyDao;
 
 /**
@@ -46,7 +46,7 @@ public class GetPropertiesTag extends GsfSimpleTag {
 
     private Map<String, String> getAllPropsAsMap() {
         final ICS ics = getICS();
-        PropertyDao propertyDao = AssetApiPropertyDao.getInstance(ics);
+        PropertyDao propertyDao = new CachedPropertyDao(ics);
         HashMap<String, String> map = new HashMap<String, String>();
         for (String name : propertyDao.getPropertyNames()) {
             map.put(name, propertyDao.getProperty(name).asString());
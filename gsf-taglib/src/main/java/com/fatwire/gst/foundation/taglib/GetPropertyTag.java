@@ -20,7 +20,7 @@ import javax.servlet.jsp.JspException;
 
 import COM.FutureTense.Interfaces.ICS;
 
-import com.fatwire.gst.foundation.properties.AssetApiPropertyDao;
+import com.fatwire.gst.foundation.properties.CachedPropertyDao;
 import com.fatwire.gst.foundation.properties.Property;
 import com.fatwire.gst.foundation.properties.PropertyDao;
 
@@ -43,7 +43,7 @@ public final class GetPropertyTag extends GsfSimpleTag {
     @Override
     public void doTag() throws JspException, IOException {
         final ICS ics = getICS();
-        PropertyDao propertyDao = AssetApiPropertyDao.getInstance(ics);
+        PropertyDao propertyDao = new CachedPropertyDao(ics);
         Property p = propertyDao.getProperty(property);
         if (p != null) {
             getJspContext().setAttribute(name, p.asString());
@@ -27,6 +27,7 @@ import COM.FutureTense.Interfaces.ICS;
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.facade.mda.DimensionUtils;
 import com.fatwire.gst.foundation.facade.mda.LocaleUtils;
+import com.fatwire.gst.foundation.facade.mda.TranslationCache;
 import com.fatwire.mda.Dimension;
 import com.fatwire.mda.DimensionException;
 import com.fatwire.mda.DimensionFilterInstance;
@@ -49,6 +50,7 @@ public abstract class MultilingualGsfSimpleTag extends GsfSimpleTag {
     private long dimensionSetId = -1L;
     private String localeName = null;
     private long localeId = -1L;
+    private String translationContext = null;
 
     public final void setDimset(String s) {
         try {
@@ -96,6 +98,7 @@ public abstract class MultilingualGsfSimpleTag extends GsfSimpleTag {
             Collection<AssetId> preferredLocales = getPreferredLocales();
             DimensionSetInstance dimSet = getDimensionSet();
             filter = DimensionUtils.getDimensionFilter(DimensionUtils.getDM(ics), preferredLocales, dimSet);
+            translationContext = TranslationCache.context("filter", dimSet.getId().getId(), preferredLocales);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Multilingual-enabled tag located dimension filter: " + filter + " in dimensionSet " + dimSet + " with preferred locales: " + preferredLocales + " ");
             }
@@ -109,6 +112,28 @@ public abstract class MultilingualGsfSimpleTag extends GsfSimpleTag {
         return filter;
     }
 
+    /**
+     * Translates the assets with the filter, through the
+     * {@link TranslationCache}.
+     *
+     * @param filter the filter as returned by {@link #getDimensionFilter()}
+     * @param ids the assets to translate
+     * @return the translations in the same order as the input, with null for the assets that do not have a
+     * translation.
+     */
+    protected final List<AssetId> translate(final DimensionFilterInstance filter, List<AssetId> ids) {
+        return TranslationCache.translate(getICS(), translationContext, ids, new TranslationCache.BatchTranslator() {
+            public AssetId translate(AssetId id) {
+                Collection<AssetId> result = filter.filterAssets(Collections.singletonList(id));
+                return result == null || result.isEmpty() ? null : result.iterator().next();
+            }
+
+            public Collection<AssetId> translateAll(Collection<AssetId> ids) {
+                return filter.filterAssets(ids);
+            }
+        });
+    }
+
     /**
      * Get the locale that the user explicitly specified.  If not set, null is returned.
      * @return the id of the locale that the user explicitly set.  Handles setting by name or assetid.
@@ -16,9 +16,7 @@
 package com.fatwire.gst.foundation.taglib;
 
 import java.io.IOException;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import javax.servlet.jsp.JspException;
 
 import COM.FutureTense.Interfaces.ICS;
@@ -51,23 +49,21 @@ public final class TranslateAssetTag extends MultilingualGsfSimpleTag {
 
         final ICS ics = getICS();
 
-        List<AssetId> toFilterList = Collections.singletonList(assetId);
-
-        Collection<AssetId> result;
+        AssetId result;
 
         DimensionFilterInstance filter = getDimensionFilter();
 
         if (filter == null) {
             LOG.debug("Unable to locate dimension filter. Not filtering assets.  Returning input list");
-            result = toFilterList;
+            result = assetId;
         } else {
-            result = filter.filterAssets(toFilterList);
+            result = translate(filter, Collections.singletonList(assetId)).get(0);
             if (LOG.isDebugEnabled()) {
-                LOG.debug("Filtered " + toFilterList + " using " + filter + " and got " + result);
+                LOG.debug("Filtered " + assetId + " using " + filter + " and got " + result);
             }
         }
 
-        AssetId finalOutput = result == null || result.size() == 0 ? assetId : result.iterator().next();
+        AssetId finalOutput = result == null ? assetId : result;
 
         // register the result
         ics.SetVar(output + ":c", finalOutput.getType());
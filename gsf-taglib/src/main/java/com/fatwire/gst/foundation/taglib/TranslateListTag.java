@@ -18,7 +18,9 @@ package com.fatwire.gst.foundation.taglib;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import javax.servlet.jsp.JspException;
 
 import COM.FutureTense.Interfaces.ICS;
@@ -65,7 +67,14 @@ public final class TranslateListTag extends MultilingualGsfSimpleTag {
             LOG.debug("Unable to locate dimension filter. Not filtering assets.  Returning input list");
             result = toFilterList;
         } else {
-            result = filter.filterAssets(toFilterList);
+            // keep the order, drop assets without translation and duplicates
+            Set<AssetId> translated = new LinkedHashSet<AssetId>();
+            for (AssetId id : translate(filter, toFilterList)) {
+                if (id != null) {
+                    translated.add(id);
+                }
+            }
+            result = new ArrayList<AssetId>(translated);
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Filtered " + toFilterList + " using " + filter + " and got " + result);
             }
@@ -48,6 +48,7 @@ import com.fatwire.gst.foundation.facade.runtag.publication.PublicationGet;
 import com.fatwire.gst.foundation.facade.runtag.publication.PublicationLoad;
 import com.fatwire.gst.foundation.facade.runtag.publication.PublicationSave;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.mobile.action.DeviceVariantEventListener;
 import com.fatwire.gst.foundation.tagging.CacheMgrTaggedAssetEventListener;
 import com.fatwire.gst.foundation.tagging.TaggedAssetEventListener;
 import com.fatwire.gst.foundation.tagging.db.TableTaggingServiceImpl;
@@ -70,8 +71,9 @@ public final class InstallerEngine {
 
     /* Order of the components is important */
     private final GSFComponent[] components = new GSFComponent[] { new PublicationComponent(),
-            new TagRegistryComponent(), new UrlRegistryComponent(), new AssemblerComponent(), new PageRefComponent(),
-            new GSTDispatcherComponent(), new FlexFamilyComponent(), new FlexAttributesComponent(),
+            new TagRegistryComponent(), new UrlRegistryComponent(), new DeviceVariantComponent(),
+            new AssemblerComponent(), new PageRefComponent(), new GSTDispatcherComponent(),
+            new FlexFamilyComponent(), new FlexAttributesComponent(),
             new AttributesInFamilyComponent(), new DefinitionsComponent(), new UserInSiteComponent(),
             new TreetabsInSiteComponent(), new CSElementSiteEntryInSiteComponent(), };
 
@@ -233,6 +235,28 @@ public final class InstallerEngine {
 
     }
 
+    class DeviceVariantComponent implements GSFComponent {
+        @Override
+        public String getDescription() {
+            return "Mobile device variant listener";
+        }
+
+        public String getName() { return getClass().getSimpleName(); }
+
+        @Override
+        public boolean isInstalled() {
+            return new DeviceVariantEventListener().isInstalled(ics);
+        }
+
+        public boolean install() {
+            LOG.info("Installing device variant listener...");
+            new DeviceVariantEventListener().install(ics);
+            LOG.info("...device variant listener install complete");
+            return true;
+        }
+
+    }
+
     class FlexFamilyComponent implements GSFComponent {
         @Override
         public String getDescription() {
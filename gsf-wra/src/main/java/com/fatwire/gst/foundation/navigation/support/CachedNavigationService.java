@@ -0,0 +1,370 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.navigation.support;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.assetapi.query.Query;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+import com.fatwire.gst.foundation.navigation.NavigationNode;
+import com.fatwire.gst.foundation.navigation.NavigationService;
+
+/**
+ * NavigationService decorator that materializes the complete navigation tree
+ * of a site in memory, as produced by the delegate, and answers
+ * {@link #getRootNodesForSite(String, int, String)} and
+ * {@link #getNodeByName(String, String, int, String)} from that tree.
+ * <p/>
+ * The trees are shared by all threads in the JVM and are keyed by site, link
+ * attribute, a variant key and the preview date, if one is set. The variant
+ * key is provided by the creator of this object and needs to describe
+ * everything else that influences the tree, for instance the locales the
+ * dimension filter prefers.
+ * <p/>
+ * A tree is built once, by one thread, with the delegate. Callers get a copy
+ * of the requested part of the tree. The <tt>active</tt> flag is set on the
+ * copy for the page in the ics variable <tt>p</tt>. For each read a
+ * dependency is logged on all the assets that make up the tree, the same as
+ * when the tree is built by the delegate.
+ * <p/>
+ * Trees are dropped on asset events through {@link #invalidate(AssetId)}:
+ * all trees for a Page event, as the SitePlanTree might have changed, and the
+ * trees that contain the asset for other events. They are rebuilt on next use.
+ * A tree that was being built while the trees were invalidated is handed out
+ * but not cached. As the validity of assets depends on the current date, trees
+ * are also rebuilt after the reload interval in seconds as configured by the
+ * property <tt>com.fatwire.gst.foundation.navigation.cache.reload</tt>
+ * (default 300, 0 means never).
+ * <p/>
+ * The asset events only reach the cluster member the asset was saved or
+ * published on, other members keep serving their trees until the reload
+ * interval has passed. The cache is therefore only used when the property
+ * <tt>com.fatwire.gst.foundation.navigation.cache</tt> is set to
+ * <tt>true</tt>, see {@link #isEnabled(ICS)}.
+ */
+public class CachedNavigationService implements NavigationService {
+    private static final Log LOG = LogFactory.getLog(CachedNavigationService.class);
+
+    public static final String ENABLED_PROPNAME = "com.fatwire.gst.foundation.navigation.cache";
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.navigation.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 300;
+
+    private static final int MAX_TREES = 256;
+
+    /** LRU map of all the trees */
+    private static final Map<String, Tree> TREES = Collections.synchronizedMap(new LinkedHashMap<String, Tree>(16,
+            0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Tree> eldest) {
+            return size() > MAX_TREES;
+        }
+    });
+
+    /** incremented on every invalidation, guarded by the lock on TREES */
+    private static long generation;
+
+    /** builds in progress */
+    private static final ConcurrentMap<String, FutureTask<Tree>> BUILDS = new ConcurrentHashMap<String, FutureTask<Tree>>();
+
+    private final ICS ics;
+    private final NavigationService delegate;
+    private final String variant;
+    private final Date date;
+
+    /**
+     * A materialized navigation tree.
+     */
+    private static final class Tree {
+        private final List<NavigationNode> roots;
+        private final Map<String, NavigationNode> byName = new HashMap<String, NavigationNode>();
+        private final Set<AssetId> assets = new LinkedHashSet<AssetId>();
+        private final long builtAt = System.currentTimeMillis();
+        private final long maxAge;
+
+        Tree(final Collection<NavigationNode> roots, final long maxAge) {
+            this.roots = new ArrayList<NavigationNode>(roots);
+            this.maxAge = maxAge;
+            for (final NavigationNode node : this.roots) {
+                index(node);
+            }
+        }
+
+        private void index(final NavigationNode node) {
+            if (node.getPagename() != null && !byName.containsKey(node.getPagename())) {
+                byName.put(node.getPagename(), node);
+            }
+            if (node.getPage() != null) {
+                assets.add(node.getPage());
+            }
+            if (node.getId() != null) {
+                assets.add(node.getId());
+            }
+            for (final NavigationNode child : node.getChildren()) {
+                index(child);
+            }
+        }
+
+        boolean isExpired() {
+            return maxAge > 0 && System.currentTimeMillis() - builtAt > maxAge;
+        }
+    }
+
+    /**
+     * @param ics Content Server context
+     * @param delegate the service that builds the trees
+     * @param variant key for everything, apart from site, link attribute and
+     *            date, that makes the delegate produce a different tree.
+     * @param previewDate the date the delegate checks asset validity for,
+     *            null for the current date. Only pass a date if a preview date
+     *            was requested, as every distinct date gets its own tree.
+     */
+    public CachedNavigationService(final ICS ics, final NavigationService delegate, final String variant,
+            final Date previewDate) {
+        this.ics = ics;
+        this.delegate = delegate;
+        this.variant = variant == null ? "" : variant;
+        this.date = previewDate;
+    }
+
+    /**
+     * @param ics Content Server context
+     * @return true if the navigation trees are cached, as configured by
+     *         <tt>com.fatwire.gst.foundation.navigation.cache</tt>.
+     */
+    public static boolean isEnabled(final ICS ics) {
+        return "true".equalsIgnoreCase(ConfigProperties.getProperty(ics, ENABLED_PROPNAME));
+    }
+
+    /**
+     * Drops the trees that might be affected by an event on this asset.
+     * 
+     * @param id the asset that was added, updated or deleted.
+     */
+    public static void invalidate(final AssetId id) {
+        if ("Page".equals(id.getType())) {
+            invalidate();
+            return;
+        }
+        synchronized (TREES) {
+            // a tree that is being built might contain the asset
+            generation++;
+            for (final Iterator<Tree> i = TREES.values().iterator(); i.hasNext();) {
+                if (i.next().assets.contains(id)) {
+                    i.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all the trees.
+     */
+    public static void invalidate() {
+        LOG.debug("Navigation trees are invalidated.");
+        synchronized (TREES) {
+            generation++;
+            TREES.clear();
+        }
+    }
+
+    @Override
+    public Collection<NavigationNode> getRootNodesForSite(final int depth) {
+        return getRootNodesForSite(ics.GetVar("site"), depth);
+    }
+
+    @Override
+    public Collection<NavigationNode> getRootNodesForSite(final String site, final int depth) {
+        return getRootNodesForSite(site, depth, null);
+    }
+
+    @Override
+    public Collection<NavigationNode> getRootNodesForSite(final String site, final int depth,
+            final String linkAttribute) {
+        if (StringUtils.isBlank(site))
+            throw new IllegalArgumentException("site cannot be blank");
+        final Tree tree = getTree(site, linkAttribute);
+        final long p = getActivePage();
+        final List<NavigationNode> nodes = new ArrayList<NavigationNode>(tree.roots.size());
+        for (final NavigationNode node : tree.roots) {
+            nodes.add(copy(node, 0, depth, p));
+        }
+        return nodes;
+    }
+
+    @Override
+    public NavigationNode getNodeByName(final String pagename, final int depth) {
+        return getNodeByName(ics.GetVar("site"), pagename, depth);
+    }
+
+    @Override
+    public NavigationNode getNodeByName(final String site, final String pagename, final int depth) {
+        return getNodeByName(site, pagename, depth, null);
+    }
+
+    @Override
+    public NavigationNode getNodeByName(final String pagename, final int depth, final String linkAttribute) {
+        return getNodeByName(ics.GetVar("site"), pagename, depth, linkAttribute);
+    }
+
+    @Override
+    public NavigationNode getNodeByName(final String site, final String pagename, final int depth,
+            final String linkAttribute) {
+        if (StringUtils.isBlank(site))
+            throw new IllegalArgumentException("site cannot be blank");
+        if (StringUtils.isBlank(pagename))
+            throw new IllegalArgumentException("pagename cannot be blank");
+        final NavigationNode node = getTree(site, linkAttribute).byName.get(pagename);
+        if (node == null) {
+            // not reachable from the root of the site, for instance because a
+            // parent is not valid on this date; ask the delegate.
+            return linkAttribute == null ? delegate.getNodeByName(site, pagename, depth) : delegate.getNodeByName(
+                    site, pagename, depth, linkAttribute);
+        }
+        return copy(node, 0, depth, getActivePage());
+    }
+
+    @Override
+    public NavigationNode getNodeByQuery(final Query query, final int depth, final String linkAttribute) {
+        return delegate.getNodeByQuery(query, depth, linkAttribute);
+    }
+
+    private Tree getTree(final String site, final String linkAttribute) {
+        final String key = site + '|' + (linkAttribute == null ? "" : linkAttribute) + '|' + variant + '|'
+                + (date == null ? "" : Long.toString(date.getTime()));
+        Tree tree = TREES.get(key);
+        if (tree == null || tree.isExpired()) {
+            tree = build(key, site, linkAttribute);
+        }
+        for (final AssetId id : tree.assets) {
+            LogDep.logDep(ics, id);
+        }
+        return tree;
+    }
+
+    /**
+     * Builds the tree, concurrent callers for the same key share one build.
+     * The tree is not cached if the trees were invalidated during the build.
+     */
+    private Tree build(final String key, final String site, final String linkAttribute) {
+        FutureTask<Tree> task = new FutureTask<Tree>(new Callable<Tree>() {
+            public Tree call() {
+                final long t = System.currentTimeMillis();
+                final long gen;
+                synchronized (TREES) {
+                    gen = generation;
+                }
+                final Collection<NavigationNode> roots = linkAttribute == null ? delegate.getRootNodesForSite(
+                        site, -1) : delegate.getRootNodesForSite(site, -1, linkAttribute);
+                final Tree tree = new Tree(roots, ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME,
+                        DEFAULT_RELOAD_SECONDS));
+                synchronized (TREES) {
+                    if (gen == generation) {
+                        TREES.put(key, tree);
+                    }
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Built navigation tree for " + key + " with " + tree.assets.size() + " assets in "
+                            + (System.currentTimeMillis() - t) + "ms.");
+                }
+                return tree;
+            }
+        });
+        final FutureTask<Tree> other = BUILDS.putIfAbsent(key, task);
+        if (other == null) {
+            try {
+                task.run();
+            } finally {
+                BUILDS.remove(key, task);
+            }
+        } else {
+            task = other;
+        }
+        try {
+            return task.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while building navigation tree for " + key, e);
+        } catch (final ExecutionException e) {
+            final Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Copies the node and its children up to the depth, as the trees are
+     * shared and NavigationNode is mutable.
+     */
+    private static NavigationNode copy(final NavigationNode node, final int level, final int depth, final long p) {
+        final NavigationNode copy = new NavigationNode();
+        copy.setPage(node.getPage());
+        copy.setLevel(level);
+        copy.setPagesubtype(node.getPagesubtype());
+        copy.setPagename(node.getPagename());
+        copy.setId(node.getId());
+        copy.setUrl(node.getUrl());
+        copy.setLinktext(node.getLinktext());
+        copy.setActive(node.getPage() != null && node.getPage().getId() == p);
+        if (depth < 0 || depth > level) {
+            for (final NavigationNode child : node.getChildren()) {
+                copy.addChild(copy(child, level + 1, depth, p));
+            }
+        }
+        return copy;
+    }
+
+    private long getActivePage() {
+        final String p = ics.GetVar("p");
+        if (StringUtils.isNotBlank(p)) {
+            try {
+                return Long.parseLong(p);
+            } catch (final NumberFormatException e) {
+                // not a page id
+            }
+        }
+        return -1L;
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.properties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Interfaces.ISyncHash;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.assetapi.query.OpTypeEnum;
+import com.fatwire.assetapi.query.Query;
+import com.fatwire.gst.foundation.facade.assetapi.QueryBuilder;
+import com.fatwire.gst.foundation.facade.assetapi.asset.TemplateAsset;
+import com.fatwire.gst.foundation.facade.assetapi.asset.TemplateAssetAccess;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+import com.openmarket.xcelerate.asset.AssetIdImpl;
+
+/**
+ * PropertyDao that reads the GSTProperty assets from a snapshot in memory,
+ * shared by all threads in the JVM. Reads do not take a lock.
+ * <p/>
+ * All the properties are loaded in bulk with one query on first use. A
+ * property that is not in the snapshot, for instance because it was added on
+ * another cluster member, is loaded by one thread only; concurrent readers of
+ * the same name wait for that load. Properties that do not exist are
+ * remembered as such.
+ * <p/>
+ * The snapshot is refreshed after the reload interval in seconds as configured
+ * by the property <tt>com.fatwire.gst.foundation.properties.cache.reload</tt>
+ * (default 900, 0 means never), or when it is invalidated. To reach every
+ * cluster member, a marker is kept in a cluster-synchronized ISyncHash that
+ * depends on the GSTProperty table, as the AssetApiPropertyDao does for the
+ * properties themselves. When that hash is flushed, because the table changed
+ * or {@link #invalidate(ICS)} was called on any member, the snapshot is
+ * refreshed. The refresh is done by the first thread that notices it is due,
+ * with its own ICS, while the other threads continue to read the previous
+ * snapshot.
+ * <p/>
+ * As with the {@link AssetApiPropertyDao} a dependency is logged on the
+ * property asset for every read. Writes go through the AssetApiPropertyDao.
+ */
+public final class CachedPropertyDao implements PropertyDao {
+    private static final Log LOG = LogFactory.getLog("com.fatwire.gst.foundation.properties");
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.properties.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    private static final Entry MISSING = new Entry(null, null);
+
+    /** the key of the marker in the ISyncHash */
+    private static final String LOADED = "loaded";
+
+    private static final int TIMEOUT_MINUTES = 60 * 24; // one day
+
+    private static volatile Snapshot snapshot;
+
+    private static final Object LOAD_LOCK = new Object();
+
+    private static final AtomicBoolean REFRESHING = new AtomicBoolean();
+
+    /** single-name loads in progress */
+    private static final ConcurrentMap<String, FutureTask<Entry>> LOADS = new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    private final ICS ics;
+    private PropertyDao delegate;
+    private ISyncHash marker;
+
+    /**
+     * A property with the asset it was read from.
+     */
+    private static final class Entry {
+        private final Property prop;
+        private final AssetId id;
+
+        Entry(final Property prop, final AssetId id) {
+            this.prop = prop;
+            this.id = id;
+        }
+    }
+
+    private static final class Snapshot {
+        private final ConcurrentMap<String, Entry> entries;
+        private final long loadedAt = System.currentTimeMillis();
+        private final long maxAge;
+        private volatile boolean stale = false;
+
+        Snapshot(final Map<String, Entry> entries, final long maxAge) {
+            this.entries = new ConcurrentHashMap<String, Entry>(entries);
+            this.maxAge = maxAge;
+        }
+    }
+
+    public CachedPropertyDao(final ICS ics) {
+        if (ics == null) {
+            throw new IllegalArgumentException("ics must not be null.");
+        }
+        this.ics = ics;
+    }
+
+    /**
+     * Marks the snapshot as stale on all cluster members; it will be refreshed
+     * by the next reader.
+     * 
+     * @param ics Content Server context
+     */
+    public static void invalidate(final ICS ics) {
+        final Snapshot s = snapshot;
+        if (s != null) {
+            LOG.debug("Property snapshot is invalidated.");
+            s.stale = true;
+        }
+        getMarker(ics).clear();
+    }
+
+    private static ISyncHash getMarker(final ICS ics) {
+        return ics.GetSynchronizedHash(CachedPropertyDao.class.getName(), true, TIMEOUT_MINUTES, 1, true, true,
+                Arrays.asList(ics.GetProperty("cs.dsn") + AssetApiPropertyDao.TYPE));
+    }
+
+    public Property getProperty(final String name) {
+        if (name == null) {
+            return null;
+        }
+        final Snapshot s = getSnapshot();
+        Entry e = s.entries.get(name);
+        if (e == null) {
+            e = loadEntry(s, name);
+        }
+        if (e.id != null) {
+            LogDep.logDep(ics, e.id);
+        }
+        return e.prop;
+    }
+
+    public Collection<String> getPropertyNames() {
+        final List<String> names = new ArrayList<String>();
+        for (final Map.Entry<String, Entry> e : getSnapshot().entries.entrySet()) {
+            if (e.getValue().prop != null) {
+                names.add(e.getKey());
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    public void setProperty(final Property property) {
+        if (property == null)
+            throw new IllegalArgumentException("Can't set a null property object");
+        setProperty(property.getName(), property.getDescription(), property.asString());
+    }
+
+    public void setProperty(final String name, final String description, final String propertyValue) {
+        getDelegate().setProperty(name, description, propertyValue);
+        // read back, to get the id of an added asset
+        final Snapshot s = snapshot;
+        if (s != null) {
+            s.entries.put(name, readProperty(name));
+        }
+    }
+
+    public void addToSite(final String name, final String... sitename) {
+        getDelegate().addToSite(name, sitename);
+    }
+
+    private PropertyDao getDelegate() {
+        if (delegate == null) {
+            delegate = AssetApiPropertyDao.newInstance(ics);
+        }
+        return delegate;
+    }
+
+    private ISyncHash getMarker() {
+        if (marker == null) {
+            marker = getMarker(ics);
+        }
+        return marker;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot s = snapshot;
+        if (s != null && getMarker().get(LOADED) == null) {
+            // flushed on this or another cluster member
+            s.stale = true;
+        }
+        if (s == null) {
+            // nothing to read yet, only one thread loads and the others wait
+            synchronized (LOAD_LOCK) {
+                s = snapshot;
+                if (s == null) {
+                    s = load();
+                    snapshot = s;
+                }
+            }
+        } else if (isDue(s) && REFRESHING.compareAndSet(false, true)) {
+            // this thread refreshes, other threads keep reading the old one
+            try {
+                s = load();
+                snapshot = s;
+            } catch (final RuntimeException e) {
+                LOG.warn("Refreshing the property snapshot failed, continuing with the previous one: "
+                        + e.getMessage());
+            } finally {
+                REFRESHING.set(false);
+            }
+        }
+        return s;
+    }
+
+    private boolean isDue(final Snapshot s) {
+        if (s.stale) {
+            return true;
+        }
+        return s.maxAge > 0 && System.currentTimeMillis() - s.loadedAt > s.maxAge;
+    }
+
+    private Snapshot load() {
+        final long t = System.currentTimeMillis();
+        // set before loading, a flush during the load marks the new snapshot
+        // as stale
+        getMarker().put(LOADED, Long.valueOf(t));
+        final Map<String, Entry> entries = new HashMap<String, Entry>();
+        final Query loadQuery = new QueryBuilder(AssetApiPropertyDao.TYPE, AssetApiPropertyDao.SUBTYPE)
+                .attributes("id", "name", "description", "value").condition("status", OpTypeEnum.NOT_EQUALS, "VO")
+                .setBasicSearch(true).toQuery();
+        for (final TemplateAsset d : new TemplateAssetAccess(ics).query(loadQuery)) {
+            final Entry e = toEntry(d);
+            if (e != null) {
+                entries.put(e.prop.getName(), e);
+            }
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loaded " + entries.size() + " properties into the snapshot in "
+                    + (System.currentTimeMillis() - t) + "ms.");
+        }
+        return new Snapshot(entries, ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS));
+    }
+
+    /**
+     * Loads a single property that is not in the snapshot. Concurrent callers
+     * for the same name share one load.
+     */
+    private Entry loadEntry(final Snapshot s, final String name) {
+        FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+            public Entry call() {
+                return readProperty(name);
+            }
+        });
+        final FutureTask<Entry> other = LOADS.putIfAbsent(name, task);
+        if (other == null) {
+            try {
+                task.run();
+            } finally {
+                LOADS.remove(name, task);
+            }
+        } else {
+            task = other;
+        }
+        try {
+            final Entry e = task.get();
+            s.entries.put(name, e);
+            return e;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading property " + name, e);
+        } catch (final ExecutionException e) {
+            final Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new RuntimeException(t);
+        }
+    }
+
+    private Entry readProperty(final String name) {
+        final Query loadQuery = new QueryBuilder(AssetApiPropertyDao.TYPE, AssetApiPropertyDao.SUBTYPE)
+                .attributes("id", "name", "description", "value").condition("status", OpTypeEnum.NOT_EQUALS, "VO")
+                .condition("name", OpTypeEnum.EQUALS, name).setBasicSearch(true).setFixedList(true).toQuery();
+        for (final TemplateAsset d : new TemplateAssetAccess(ics).query(loadQuery)) {
+            final Entry e = toEntry(d);
+            if (e != null) {
+                if (LOG.isTraceEnabled())
+                    LOG.trace("Loaded property: " + name);
+                return e;
+            }
+        }
+        if (LOG.isTraceEnabled())
+            LOG.trace("Property not found: " + name);
+        return MISSING;
+    }
+
+    private Entry toEntry(final TemplateAsset d) {
+        final String name = d.asString("name");
+        final String value = d.asString("value");
+        if (name == null || value == null) {
+            return null;
+        }
+        return new Entry(new PropertyImpl(name, d.asString("description"), value), new AssetIdImpl(
+                AssetApiPropertyDao.TYPE, d.asLong("id")));
+    }
+
+}
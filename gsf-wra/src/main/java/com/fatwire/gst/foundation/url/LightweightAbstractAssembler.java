@@ -29,7 +29,8 @@ import java.util.*;
  * Lightweight abstract assembler that handles property management, provides a
  * logger, handles encoding and decoding and query string processing. Much
  * lighter in weight than <code>com.fatwire.cs.core.uri.AbstractAssembler</code>
- * .
+ * . With UTF-8, the encoding, decoding and parsing is done by the
+ * {@link QueryStringCodec}.
  * 
  * @author Tony Field
  * @since Sep 27, 2008
@@ -45,6 +46,9 @@ public abstract class LightweightAbstractAssembler implements Assembler {
 
     private final String encoding;
 
+    /** true if the encoding is UTF-8, so that the QueryStringCodec can be used */
+    private final boolean utf8;
+
     private final Map<String, String> properties = new HashMap<String, String>();
 
     /**
@@ -74,6 +78,11 @@ public abstract class LightweightAbstractAssembler implements Assembler {
             enc = null;
         }
         this.encoding = enc;
+        this.utf8 = isUtf8(enc);
+    }
+
+    private static boolean isUtf8(String enc) {
+        return "UTF-8".equalsIgnoreCase(enc) || "UTF8".equalsIgnoreCase(enc);
     }
 
     public void setProperties(Properties props) {
@@ -115,6 +124,8 @@ public abstract class LightweightAbstractAssembler implements Assembler {
         try {
             if (string == null) {
                 result = null;
+            } else if (utf8) {
+                result = QueryStringCodec.encode(string);
             } else {
                 result = Util.encode(string, encoding);
             }
@@ -162,7 +173,11 @@ public abstract class LightweightAbstractAssembler implements Assembler {
                 encoding = this.encoding;
             }
             try {
-                result = Util.decode(string, encoding);
+                if (isUtf8(encoding)) {
+                    result = QueryStringCodec.decode(string);
+                } else {
+                    result = Util.decode(string, encoding);
+                }
             } catch (IllegalArgumentException iae) {
                 throw new IllegalArgumentException("Failure decoding string '" + string + "' using encoding '"
                         + encoding + "'.  (" + iae.getMessage() + ")");
@@ -210,19 +225,17 @@ public abstract class LightweightAbstractAssembler implements Assembler {
             bf.append("//").append(authority); // nothing legal to quote until
                                                // I18N URLs work
         }
-        // Path needs quoting though, so let the URI object do it for us.
-        // Use the toASCIIString() method because we need the quoted values.
-        // (toString() is really just for readability and debugging, not
-        // programmatic use)
+        // Path needs quoting though, the codec quotes it the same way as the
+        // multi-arg URI constructor does.
         if (path != null) {
-            bf.append(new URI(null, null, path, null, null).getRawPath());
+            QueryStringCodec.appendPath(path, bf);
         }
         if (quotedQueryString != null) {
             bf.append('?').append(quotedQueryString); // already quoted
         }
         // needs quoting
         if (fragment != null) {
-            bf.append(new URI(null, null, null, null, fragment).toASCIIString());
+            QueryStringCodec.appendFragment(fragment, bf);
         }
         URI uri = new URI(bf.toString());
 
@@ -253,110 +266,65 @@ public abstract class LightweightAbstractAssembler implements Assembler {
      *             make it impossible to parse.
      */
     protected final Map<String, String[]> parseQueryString(String qry) {
-        Map<String, String[]> rawPairs = new HashMap<String, String[]>();
-        if (qry == null) {
-            return rawPairs;
-        }
-        int inlen = qry.length();
-        if (inlen == 0) {
-            return rawPairs;
-        }
+        return parse(qry).toMap();
+    }
 
+    /**
+     * Parses and decodes the query string into name/value pairs, in the order
+     * of the query string.
+     * 
+     * @param qry
+     * @return the decoded pairs
+     * @see #parseQueryString(String)
+     */
+    private QueryStringCodec.Parameters parse(String qry) {
+        if (qry == null || qry.length() == 0) {
+            return new QueryStringCodec.Parameters(1);
+        }
         if (LOG.isTraceEnabled()) {
             LOG.trace("Parsing query string: " + qry);
         }
-
-        int iequal;
-        int iamper;
-        int startAt = 0;
-        boolean bDone = false;
-
-        while (!bDone) {
-            String n;
-            String v;
-            if ((iequal = qry.indexOf("=", startAt)) != -1) {
-                // End of current name=value is '&' or EOL
-                iamper = qry.indexOf("&", iequal);
-                n = qry.substring(startAt, iequal);
-                n = n.trim(); // deal with accidental odd chars in the URL
-                iequal++;
-                if (iequal >= inlen) {
-                    break;
-                }
-
-                if (iamper == -1) {
-                    v = qry.substring(iequal);
-                } else {
-                    v = qry.substring(iequal, iamper);
-                }
-
-                if (iamper != -1) {
-                    startAt = iamper + 1;
-                } else {
-                    bDone = true;
-                }
-
-                v = v.trim(); // deal with stupid value
-
-                // add the value to the result.
-                String[] av = rawPairs.get(n);
-                if (av == null) {
-                    av = new String[1];
-                    av[0] = v;
-                    rawPairs.put(n, av);
-                } else {
-                    // param specified twice in the url.
-                    String[] newVal = new String[av.length + 1];
-                    System.arraycopy(av, 0, newVal, 0, av.length);
-                    newVal[av.length] = v;
-                    rawPairs.put(n, newVal);
-                }
-            } else {
-                break; // no more pairs
-            }
-        }
+        QueryStringCodec.Parameters raw = QueryStringCodec.split(qry);
 
         // Figure out which encoding to use to decode the params
-        String[] _charset_ = rawPairs.get(CHARSET_lower) == null ? rawPairs.get(CHARSET_upper) : rawPairs
-                .get(CHARSET_lower);
+        String charsetName = raw.count(CHARSET_lower) > 0 ? CHARSET_lower : CHARSET_upper;
         final String encoding;
-        if (_charset_ == null) {
-            encoding = null; // try to follow the spec
+        switch (raw.count(charsetName)) {
+            case 0:
+                encoding = null; // try to follow the spec
+                break;
+            case 1:
+                encoding = raw.get(charsetName); // url contains an override
+                                                 // for the spec
+                break;
+            default:
+                throw new IllegalStateException("Too many values of _charset_ found in the URL");
+        }
+
+        // Decode the raw pairs using the proper encoding
+        QueryStringCodec.Parameters res;
+        if (encoding == null ? utf8 : isUtf8(encoding)) {
+            try {
+                res = QueryStringCodec.decode(raw);
+            } catch (IllegalArgumentException iae) {
+                throw new IllegalArgumentException("Failure decoding query string '" + qry + "' using encoding '"
+                        + (encoding == null ? this.encoding : encoding) + "'.  (" + iae.getMessage() + ")");
+            }
         } else {
-            switch (_charset_.length) {
-                case 0:
-                    throw new IllegalStateException(
-                            "Somehow an empty _charst_ param made it into our map. Impossible...");
-                case 1:
-                    encoding = _charset_[0]; // url contains an override for the
-                                             // spec
-                    break;
-                default:
-                    throw new IllegalStateException("Too many values of _charset_ found in the URL");
+            res = new QueryStringCodec.Parameters(raw.size());
+            for (int i = 0; i < raw.size(); i++) {
+                res.add(decode(raw.name(i), encoding), decode(raw.value(i), encoding));
             }
         }
-
-        // Decode the raw pairs using the proper encoding and set them into the
-        // result map
-        Map<String, String[]> res = new HashMap<String, String[]>(rawPairs.size());
-        for (String rawKey : rawPairs.keySet()) {
-            String key = decode(rawKey, encoding);
-            String[] val = rawPairs.get(rawKey);
-            for (int i = 0; i < val.length; i++) {
-                String rawVal = val[i];
-                val[i] = decode(rawVal, encoding);
-
-                if (LOG.isTraceEnabled()) {
-                    StringBuilder bf = new StringBuilder("Parsing query string.  Found raw pair [name]=[value]: ");
-                    bf.append('[').append(rawKey).append(']').append('=').append('[').append(rawVal).append(']');
-                    bf.append(" decoded to: ");
-                    bf.append('[').append(key).append(']').append('=').append('[').append(val[i]).append(']');
-                    LOG.trace(bf);
-                }
+        if (LOG.isTraceEnabled()) {
+            for (int i = 0; i < res.size(); i++) {
+                StringBuilder bf = new StringBuilder("Parsing query string.  Found raw pair [name]=[value]: ");
+                bf.append('[').append(raw.name(i)).append(']').append('=').append('[').append(raw.value(i)).append(']');
+                bf.append(" decoded to: ");
+                bf.append('[').append(res.name(i)).append(']').append('=').append('[').append(res.value(i)).append(']');
+                LOG.trace(bf);
             }
-            res.put(key, val);
         }
-
         return res;
     }
 
@@ -371,9 +339,11 @@ public abstract class LightweightAbstractAssembler implements Assembler {
      */
     protected final String constructQueryString(Map<String, String[]> parameters) {
         StringBuilder qryStr = new StringBuilder();
-        for (String key : parameters.keySet()) {
-            String[] vals = parameters.get(key);
+        for (Map.Entry<String, String[]> e : parameters.entrySet()) {
+            String key = e.getKey();
+            String[] vals = e.getValue();
             if (vals != null) {
+                String encodedKey = null;
                 // Loop through the values for the parameter
                 for (String val : vals) {
                     if (val != null && val.length() > 0) {
@@ -381,17 +351,25 @@ public abstract class LightweightAbstractAssembler implements Assembler {
                         if (qryStr.length() > 0) {
                             qryStr.append('&');
                         }
+                        if (encodedKey == null) {
+                            encodedKey = encode(key);
+                        }
 
                         // Append the name and value to the URL
                         if (LOG.isTraceEnabled()) {
                             StringBuilder bf = new StringBuilder("About to add [key]=[value] to url [" + key + "]=["
                                     + val + "]");
-                            bf.append(" after encoding: [").append(encode(key)).append("]=[").append(encode(val))
+                            bf.append(" after encoding: [").append(encodedKey).append("]=[").append(encode(val))
                                     .append("]");
                             LOG.trace(bf);
 
                         }
-                        qryStr.append(encode(key)).append('=').append(encode(val));
+                        qryStr.append(encodedKey).append('=');
+                        if (utf8) {
+                            QueryStringCodec.encode(val, qryStr);
+                        } else {
+                            qryStr.append(encode(val));
+                        }
                     }
                 }
             }
@@ -429,20 +407,20 @@ public abstract class LightweightAbstractAssembler implements Assembler {
 
         String[] newPackedargsStrings = new String[origPackedargsStrings.length];
 
+        StringBuilder b = new StringBuilder();
         for (int i = 0; i < origPackedargsStrings.length; i++) {
-            Map<String, String[]> oldPacked = parseQueryString(origPackedargsStrings[i]);
-            Map<String, String[]> newPacked = new HashMap<String, String[]>();
-            for (String opK : oldPacked.keySet()) {
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("checking to see if a param should be excluded from packedargs: " + opK);
-                }
-                if (!toExclude.contains(opK)) {
-                    newPacked.put(opK, oldPacked.get(opK));
-                }
+            QueryStringCodec.Parameters oldPacked = parse(origPackedargsStrings[i]);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("excluding " + toExclude + " from packedargs: " + origPackedargsStrings[i]);
+            }
+            if (utf8) {
+                b.setLength(0);
+                newPackedargsStrings[i] = QueryStringCodec.append(oldPacked, toExclude, b) ? b.toString() : null;
+            } else {
+                Map<String, String[]> newPacked = oldPacked.toMap();
+                newPacked.keySet().removeAll(toExclude);
+                newPackedargsStrings[i] = constructQueryString(newPacked);
             }
-
-            newPackedargsStrings[i] = constructQueryString(newPacked);
-
         }
 
         return newPackedargsStrings;
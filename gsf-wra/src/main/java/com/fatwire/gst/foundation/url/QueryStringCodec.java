@@ -0,0 +1,469 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encoding, decoding and parsing of query strings, working directly on
+ * StringBuilders to keep the number of intermediate objects low.
+ * <p/>
+ * Encoding and decoding follow <tt>application/x-www-form-urlencoded</tt> in
+ * UTF-8, exactly like <tt>java.net.URLEncoder</tt> and
+ * <tt>java.net.URLDecoder</tt> do with UTF-8. The path and fragment quoting
+ * follows the multi-argument constructors of <tt>java.net.URI</tt>.
+ * <p/>
+ * This class is thread safe.
+ */
+public final class QueryStringCodec {
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /** characters that are not encoded by URLEncoder */
+    private static final boolean[] FORM_SAFE = new boolean[128];
+
+    /** characters that are not quoted in a path by java.net.URI */
+    private static final boolean[] PATH_SAFE = new boolean[128];
+
+    /** characters that are not quoted in a fragment by java.net.URI */
+    private static final boolean[] FRAGMENT_SAFE = new boolean[128];
+
+    static {
+        final String alphanum = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        final String unreserved = alphanum + "_-!.~'()*";
+        mark(FORM_SAFE, alphanum + ".-*_");
+        mark(PATH_SAFE, unreserved + ":@&=+$," + ";/");
+        mark(FRAGMENT_SAFE, unreserved + ";/?:@&=+$,[]");
+    }
+
+    private static void mark(final boolean[] table, final String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            table[chars.charAt(i)] = true;
+        }
+    }
+
+    private QueryStringCodec() {
+    }
+
+    /**
+     * Name/value pairs in the order of the query string. Names may occur more
+     * than once.
+     */
+    public static final class Parameters {
+        private String[] names;
+        private String[] values;
+        private int size;
+
+        public Parameters() {
+            this(8);
+        }
+
+        public Parameters(final int capacity) {
+            names = new String[Math.max(capacity, 1)];
+            values = new String[names.length];
+        }
+
+        public void add(final String name, final String value) {
+            if (size == names.length) {
+                names = Arrays.copyOf(names, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            names[size] = name;
+            values[size] = value;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String name(final int i) {
+            return names[i];
+        }
+
+        public String value(final int i) {
+            return values[i];
+        }
+
+        /**
+         * @param name
+         * @return the number of values for the name
+         */
+        public int count(final String name) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (name.equals(names[i])) {
+                    n++;
+                }
+            }
+            return n;
+        }
+
+        /**
+         * @param name
+         * @return the first value for the name, or null
+         */
+        public String get(final String name) {
+            for (int i = 0; i < size; i++) {
+                if (name.equals(names[i])) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the parameters as a map of name to all its values, in order
+         *         of first occurrence.
+         */
+        public Map<String, String[]> toMap() {
+            final Map<String, String[]> map = new LinkedHashMap<String, String[]>(size * 2);
+            for (int i = 0; i < size; i++) {
+                final String[] current = map.get(names[i]);
+                if (current == null) {
+                    map.put(names[i], new String[] { values[i] });
+                } else {
+                    final String[] v = Arrays.copyOf(current, current.length + 1);
+                    v[current.length] = values[i];
+                    map.put(names[i], v);
+                }
+            }
+            return map;
+        }
+    }
+
+    /**
+     * Splits the query string into trimmed, still encoded, name/value pairs.
+     * <p/>
+     * The rules are those of the original
+     * LightweightAbstractAssembler.parseQueryString: a pair is terminated by
+     * the first '&' after the '='; text without a '=' becomes part of the name
+     * of the next pair; a trailing pair with an empty value at the very end of
+     * the string is dropped.
+     * 
+     * @param qry the query string, may be null
+     * @return the raw pairs, never null
+     */
+    public static Parameters split(final String qry) {
+        final Parameters raw = new Parameters();
+        if (qry == null) {
+            return raw;
+        }
+        final int inlen = qry.length();
+        int startAt = 0;
+        while (startAt <= inlen) {
+            int iequal = qry.indexOf('=', startAt);
+            if (iequal == -1) {
+                break; // no more pairs
+            }
+            final int iamper = qry.indexOf('&', iequal);
+            final String n = qry.substring(startAt, iequal).trim();
+            iequal++;
+            if (iequal >= inlen) {
+                break;
+            }
+            final String v = (iamper == -1 ? qry.substring(iequal) : qry.substring(iequal, iamper)).trim();
+            raw.add(n, v);
+            if (iamper == -1) {
+                break;
+            }
+            startAt = iamper + 1;
+        }
+        return raw;
+    }
+
+    /**
+     * Decodes all names and values as UTF-8.
+     * 
+     * @param raw the encoded pairs
+     * @return the decoded pairs
+     * @throws IllegalArgumentException if a name or value is not well formed.
+     */
+    public static Parameters decode(final Parameters raw) {
+        final Parameters decoded = new Parameters(raw.size());
+        final StringBuilder b = new StringBuilder();
+        for (int i = 0; i < raw.size(); i++) {
+            decoded.add(decodeWith(raw.name(i), b), decodeWith(raw.value(i), b));
+        }
+        return decoded;
+    }
+
+    /**
+     * Appends the pairs as a query string to the builder, leaving out empty
+     * values and the excluded names.
+     * 
+     * @param params the decoded pairs
+     * @param exclude the names to leave out, may be null
+     * @param out
+     * @return true if any pair was appended
+     */
+    public static boolean append(final Parameters params, final Collection<String> exclude, final StringBuilder out) {
+        final int start = out.length();
+        for (int i = 0; i < params.size(); i++) {
+            final String name = params.name(i);
+            final String value = params.value(i);
+            if (value == null || value.length() == 0 || exclude != null && exclude.contains(name)) {
+                continue;
+            }
+            if (out.length() > start) {
+                out.append('&');
+            }
+            encode(name, out);
+            out.append('=');
+            encode(value, out);
+        }
+        return out.length() > start;
+    }
+
+    /**
+     * @param s the string to encode
+     * @return the string encoded as application/x-www-form-urlencoded in
+     *         UTF-8, or null if s is null
+     */
+    public static String encode(final String s) {
+        if (s == null) {
+            return null;
+        }
+        if (isFormSafe(s)) {
+            return s;
+        }
+        final StringBuilder b = new StringBuilder(s.length() + 16);
+        encode(s, b);
+        return b.toString();
+    }
+
+    /**
+     * Appends the string encoded as application/x-www-form-urlencoded in
+     * UTF-8.
+     * 
+     * @param s
+     * @param out
+     */
+    public static void encode(final CharSequence s, final StringBuilder out) {
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < 128 && FORM_SAFE[c]) {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else {
+                i = appendUtf8Escaped(s, i, out);
+            }
+        }
+    }
+
+    /**
+     * @param s the string to decode
+     * @return the decoded string, or null if s is null
+     * @throws IllegalArgumentException if the string is not well formed
+     */
+    public static String decode(final String s) {
+        return s == null ? null : decodeWith(s, new StringBuilder());
+    }
+
+    /**
+     * @param s
+     * @param scratch builder to use, will be cleared
+     * @return the decoded string
+     */
+    private static String decodeWith(final String s, final StringBuilder scratch) {
+        if (s.indexOf('%') < 0 && s.indexOf('+') < 0) {
+            return s;
+        }
+        scratch.setLength(0);
+        decode(s, scratch);
+        return scratch.toString();
+    }
+
+    /**
+     * Appends the decoded form of an application/x-www-form-urlencoded UTF-8
+     * string.
+     * 
+     * @param s
+     * @param out
+     * @throws IllegalArgumentException if the string is not well formed
+     */
+    public static void decode(final CharSequence s, final StringBuilder out) {
+        final int len = s.length();
+        byte[] bytes = null;
+        int i = 0;
+        while (i < len) {
+            final char c = s.charAt(i);
+            if (c == '+') {
+                out.append(' ');
+                i++;
+            } else if (c == '%') {
+                // a run of escaped bytes is decoded as a whole
+                final int runStart = i;
+                int n = 0;
+                boolean ascii = true;
+                while (i < len && s.charAt(i) == '%') {
+                    if (i + 2 >= len) {
+                        throw new IllegalArgumentException("Incomplete trailing escape (%) pattern");
+                    }
+                    final int hi = Character.digit(s.charAt(i + 1), 16);
+                    final int lo = Character.digit(s.charAt(i + 2), 16);
+                    if (hi < 0 || lo < 0) {
+                        throw new IllegalArgumentException("Illegal hex characters in escape (%) pattern");
+                    }
+                    final int v = hi << 4 | lo;
+                    ascii &= v < 128;
+                    if (bytes == null) {
+                        bytes = new byte[(len - runStart) / 3];
+                    }
+                    bytes[n++] = (byte) v;
+                    i += 3;
+                }
+                if (ascii) {
+                    for (int k = 0; k < n; k++) {
+                        out.append((char) bytes[k]);
+                    }
+                } else {
+                    out.append(new String(bytes, 0, n, UTF8));
+                }
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Appends the path, quoted as the java.net.URI multi-argument constructors
+     * quote a path.
+     * 
+     * @param path the absolute path
+     * @param out
+     * @throws URISyntaxException if the path is not valid
+     */
+    public static void appendPath(final String path, final StringBuilder out) throws URISyntaxException {
+        if (!path.startsWith("/") || path.startsWith("//")) {
+            // a relative path or a path that looks like an authority is
+            // interpreted by the URI parser, leave that to URI
+            out.append(new URI(null, null, path, null, null).getRawPath());
+            return;
+        }
+        quote(path, PATH_SAFE, out);
+    }
+
+    /**
+     * Appends '#' and the fragment, quoted and encoded as
+     * <tt>new URI(null, null, null, null, fragment).toASCIIString()</tt>
+     * does.
+     * 
+     * @param fragment
+     * @param out
+     */
+    public static void appendFragment(final String fragment, final StringBuilder out) {
+        out.append('#');
+        final int start = out.length();
+        quote(fragment, FRAGMENT_SAFE, out);
+        // toASCIIString() normalizes and escapes the remaining non-ASCII
+        // characters
+        for (int i = start; i < out.length(); i++) {
+            if (out.charAt(i) >= 128) {
+                final String s = Normalizer.normalize(out.substring(start), Normalizer.Form.NFC);
+                out.setLength(start);
+                for (int k = 0; k < s.length(); k++) {
+                    final char c = s.charAt(k);
+                    if (c < 128) {
+                        out.append(c);
+                    } else {
+                        k = appendUtf8Escaped(s, k, out);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    private static void quote(final String s, final boolean[] safe, final StringBuilder out) {
+        final int len = s.length();
+        for (int i = 0; i < len; i++) {
+            final char c = s.charAt(i);
+            if (c < 128) {
+                if (c != 0 && safe[c]) {
+                    out.append(c);
+                } else {
+                    appendEscaped(c, out);
+                }
+            } else if (Character.isSpaceChar(c) || Character.isISOControl(c)) {
+                i = appendUtf8Escaped(s, i, out);
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Escapes the character at index i, and the low surrogate after it if it
+     * is a high surrogate.
+     * 
+     * @return the index of the last character that was consumed
+     */
+    private static int appendUtf8Escaped(final CharSequence s, final int i, final StringBuilder out) {
+        final char c = s.charAt(i);
+        int cp = c;
+        int last = i;
+        if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            cp = Character.toCodePoint(c, s.charAt(i + 1));
+            last = i + 1;
+        } else if (c >= '\uD800' && c <= '\uDFFF') {
+            cp = '?'; // unpaired surrogate, like the UTF-8 encoder replaces it
+        }
+        if (cp < 0x80) {
+            appendEscaped(cp, out);
+        } else if (cp < 0x800) {
+            appendEscaped(0xC0 | cp >> 6, out);
+            appendEscaped(0x80 | cp & 0x3F, out);
+        } else if (cp < 0x10000) {
+            appendEscaped(0xE0 | cp >> 12, out);
+            appendEscaped(0x80 | cp >> 6 & 0x3F, out);
+            appendEscaped(0x80 | cp & 0x3F, out);
+        } else {
+            appendEscaped(0xF0 | cp >> 18, out);
+            appendEscaped(0x80 | cp >> 12 & 0x3F, out);
+            appendEscaped(0x80 | cp >> 6 & 0x3F, out);
+            appendEscaped(0x80 | cp & 0x3F, out);
+        }
+        return last;
+    }
+
+    private static void appendEscaped(final int b, final StringBuilder out) {
+        out.append('%').append(HEX[b >> 4 & 0xF]).append(HEX[b & 0xF]);
+    }
+
+    private static boolean isFormSafe(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c >= 128 || !FORM_SAFE[c]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
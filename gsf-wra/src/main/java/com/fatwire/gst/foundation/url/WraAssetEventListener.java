@@ -15,43 +15,64 @@
  */
 package com.fatwire.gst.foundation.url;
 
+import java.util.List;
+
 import com.fatwire.assetapi.data.AssetId;
-import com.fatwire.gst.foundation.facade.assetapi.listener.RunOnceAssetEventListener;
+import com.fatwire.gst.foundation.facade.assetapi.listener.CoalescingAssetEventListener;
+import com.fatwire.gst.foundation.facade.mda.CachedLocaleService;
+import com.fatwire.gst.foundation.facade.mda.TranslationCache;
+import com.fatwire.gst.foundation.navigation.support.CachedNavigationService;
+import com.fatwire.gst.foundation.properties.AssetApiPropertyDao;
+import com.fatwire.gst.foundation.properties.CachedPropertyDao;
 import com.fatwire.gst.foundation.url.db.UrlRegistry2;
+import com.fatwire.gst.foundation.vwebroot.CachedVirtualWebrootDao;
 
 /**
  * Asset event for ensuring that a WRA is properly prepared for rendering.
  * Includes ensuring that the asset is accessible through the
  * WraPathTranslationService, among other things.
+ * <p/>
+ * The events can be processed in the background, see
+ * {@link CoalescingAssetEventListener}.
  * 
  * @author Tony Field
  * @author Dolf Dijkstra
  * @since Jul 21, 2010
  */
-public class WraAssetEventListener extends RunOnceAssetEventListener {
-
-    @Override
-    protected void doAssetAdded(final AssetId assetId) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Heard assetAdded event for " + assetId);
-        }
-        getService().addAsset(assetId);
-    }
+public class WraAssetEventListener extends CoalescingAssetEventListener {
 
     @Override
-    protected void doAssetUpdated(final AssetId assetId) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Heard assetUpdated event for " + assetId);
+    protected void process(final List<AssetEvent> events) {
+        final WraPathTranslationService service = getService();
+        for (final AssetEvent event : events) {
+            final AssetId assetId = event.getId();
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Heard " + event.getType() + " event for " + assetId);
+            }
+            invalidateCaches(assetId);
+            switch (event.getType()) {
+                case ADDED:
+                    service.addAsset(assetId);
+                    break;
+                case UPDATED:
+                    service.updateAsset(assetId);
+                    break;
+                case DELETED:
+                    service.deleteAsset(assetId);
+                    break;
+            }
         }
-        getService().updateAsset(assetId);
     }
 
-    @Override
-    protected void doAssetDeleted(final AssetId assetId) {
-        if (LOG.isTraceEnabled()) {
-            LOG.trace("Heard assetDeleted event for " + assetId);
+    private void invalidateCaches(final AssetId assetId) {
+        CachedNavigationService.invalidate(assetId);
+        CachedLocaleService.invalidate(getICS(), assetId);
+        TranslationCache.invalidate(assetId);
+        if ("GSTVirtualWebroot".equals(assetId.getType())) {
+            CachedVirtualWebrootDao.invalidate(getICS());
+        } else if (AssetApiPropertyDao.TYPE.equals(assetId.getType())) {
+            CachedPropertyDao.invalidate(getICS());
         }
-        getService().deleteAsset(assetId);
     }
 
     protected WraPathTranslationService getService() {
@@ -23,7 +23,9 @@ import COM.FutureTense.Util.ftMessage;
 
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.vwebroot.AssetApiVirtualWebrootDao;
+import com.fatwire.gst.foundation.vwebroot.CachedVirtualWebrootDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
 import com.fatwire.gst.foundation.wra.AssetApiWraCoreFieldDao;
 import com.fatwire.gst.foundation.wra.VanityAsset;
 import com.fatwire.gst.foundation.wra.WraCoreFieldDao;
@@ -47,7 +49,7 @@ public class WraPagePreviewReference extends PageRef {
         // no processing to do if not serving a page for SS
         if (shouldModify(args, ics)) {
             AssetId id = new AssetIdImpl((String) args.get("c"), Long.parseLong((String) args.get("cid")));
-            AssetApiVirtualWebrootDao vwDao = new AssetApiVirtualWebrootDao(ics);
+            VirtualWebrootDao vwDao = new CachedVirtualWebrootDao(ics, new AssetApiVirtualWebrootDao(ics));
             WraCoreFieldDao wraDao = new AssetApiWraCoreFieldDao(ics);
             String currentEnvironment = vwDao.getVirtualWebrootEnvironment();
             // only look up webroots for WRAs when the environment is configured
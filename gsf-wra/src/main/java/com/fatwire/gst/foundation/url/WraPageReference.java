@@ -26,7 +26,9 @@ import COM.FutureTense.Util.ftMessage;
 import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.cs.core.uri.Definition;
 import com.fatwire.gst.foundation.vwebroot.AssetApiVirtualWebrootDao;
+import com.fatwire.gst.foundation.vwebroot.CachedVirtualWebrootDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
 import com.fatwire.gst.foundation.wra.AssetApiWraCoreFieldDao;
 import com.fatwire.gst.foundation.wra.VanityAsset;
 import com.fatwire.gst.foundation.wra.WraCoreFieldDao;
@@ -204,7 +206,7 @@ public class WraPageReference extends PageRef {
 
         private final boolean requireWraFields;
         private final AssetId assetId;
-        private AssetApiVirtualWebrootDao assetApiVirtualWebrootDao;
+        private VirtualWebrootDao assetApiVirtualWebrootDao;
         private WraCoreFieldDao wraCoreFieldDao;
 
         boolean checkedForEnvironment = false;
@@ -221,9 +223,9 @@ public class WraPageReference extends PageRef {
             assetId = new AssetIdImpl(c, Long.parseLong(cid));
         }
 
-        private AssetApiVirtualWebrootDao getAssetApiVirtualWebrootDao(Map args, ICS ics) {
+        private VirtualWebrootDao getAssetApiVirtualWebrootDao(Map args, ICS ics) {
             if (assetApiVirtualWebrootDao == null) {
-                assetApiVirtualWebrootDao = new AssetApiVirtualWebrootDao(ics);
+                assetApiVirtualWebrootDao = new CachedVirtualWebrootDao(ics, new AssetApiVirtualWebrootDao(ics));
             }
             return assetApiVirtualWebrootDao;
         }
@@ -268,7 +270,7 @@ public class WraPageReference extends PageRef {
 
         private VirtualWebroot getVirtualWebrootForAsset(Map args, ICS ics) {
             if (virtualWebrootForAsset == null && checkedForWebroot == false) {
-                AssetApiVirtualWebrootDao vwdao = getAssetApiVirtualWebrootDao(args, ics);
+                VirtualWebrootDao vwdao = getAssetApiVirtualWebrootDao(args, ics);
                 VanityAsset v = getVanityAsset(args, ics);
                 virtualWebrootForAsset = vwdao.lookupVirtualWebrootForAsset(v);
                 checkedForWebroot = true;
@@ -211,17 +211,15 @@ public final class WraPathAssembler extends LightweightAbstractAssembler {
             String fragment) throws URISyntaxException {
         StringBuilder bf = new StringBuilder();
         bf.append(virtualWebroot);
-        // Path needs quoting though, so let the URI object do it for us.
-        // Use the toASCIIString() method because we need the quoted values.
-        // (toString() is really just for readability and debugging, not
-        // programmatic use)
-        bf.append(new URI(null, null, uriPath, null, null).getRawPath());
+        // Path needs quoting though, the codec quotes it the same way as the
+        // multi-arg URI constructor does.
+        QueryStringCodec.appendPath(uriPath, bf);
         if (goodString(quotedQueryString)) {
             bf.append('?').append(quotedQueryString); // already quoted
         }
         // needs quoting
         if (goodString(fragment)) {
-            bf.append(new URI(null, null, null, null, fragment).toASCIIString());
+            QueryStringCodec.appendFragment(fragment, bf);
         }
         URI uri = new URI(bf.toString());
 
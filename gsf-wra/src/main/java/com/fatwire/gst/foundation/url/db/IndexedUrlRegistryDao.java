@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.wra.SimpleWra;
+
+/**
+ * UrlRegistryDao that answers {@link #resolveAsset(String, String)} from an
+ * in-memory index of the GSTUrlRegistry table. The table, accessed through
+ * {@link UrlRegistryDaoImpl}, remains the backing store: all writes go to the
+ * table first and are then applied to the index.
+ * <p/>
+ * The index is loaded in bulk on first use. It is kept current by the writes
+ * that go through this class, as done by the WraAssetEventListener and the
+ * UrlRegistry2 rebuild. Writes done on other cluster members are picked up
+ * when the index is reloaded after the configured reload interval.
+ * <p/>
+ * The index is enabled by setting the property
+ * <tt>com.fatwire.gst.foundation.url.registry-index</tt> to <tt>true</tt>,
+ * either as a system property or in futuretense_xcel.ini. The reload interval
+ * in seconds is set by
+ * <tt>com.fatwire.gst.foundation.url.registry-index.reload</tt>; 0 means the
+ * index is never reloaded.
+ */
+public class IndexedUrlRegistryDao implements UrlRegistryDao {
+    private static final Log LOG = LogUtil.getLog(IndexedUrlRegistryDao.class);
+
+    public static final String ENABLED_PROPNAME = "com.fatwire.gst.foundation.url.registry-index";
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.url.registry-index.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    private static final Object LOAD_LOCK = new Object();
+
+    private final UrlRegistryDaoImpl delegate;
+    private final VanityUrlIndex index;
+    private final long maxAge;
+
+    public IndexedUrlRegistryDao(final ICS ics, final UrlRegistryDaoImpl delegate) {
+        this.delegate = delegate;
+        this.index = VanityUrlIndex.getInstance();
+        this.maxAge = ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+    }
+
+    /**
+     * Creates the UrlRegistryDao for this context, indexed in memory if that
+     * is enabled by configuration.
+     *
+     * @param ics Content Server context
+     * @return the UrlRegistryDao
+     */
+    public static UrlRegistryDao newInstance(final ICS ics) {
+        final UrlRegistryDaoImpl dao = new UrlRegistryDaoImpl(ics);
+        if (isEnabled(ics)) {
+            return new IndexedUrlRegistryDao(ics, dao);
+        }
+        return dao;
+    }
+
+    /**
+     * @param ics Content Server context
+     * @return true if the in-memory index is enabled by configuration.
+     */
+    public static boolean isEnabled(final ICS ics) {
+        return "true".equalsIgnoreCase(ConfigProperties.getProperty(ics, ENABLED_PROPNAME));
+    }
+
+    /**
+     * Discards the in-memory index, it will be reloaded from the table on next
+     * use.
+     */
+    public static void invalidate() {
+        VanityUrlIndex.getInstance().invalidate();
+    }
+
+    @Override
+    public List<VanityUrl> resolveAsset(final String virtual_webroot, final String url_path) {
+        ensureLoaded();
+        return index.resolve(virtual_webroot, url_path);
+    }
+
+    @Override
+    public void add(final SimpleWra wra, final VirtualWebroot vw, final String site) {
+        delegate.add(wra, vw, site);
+        if (vw != null) {
+            final VanityUrl url = delegate.read(wra.getId());
+            if (url != null) {
+                index.add(url);
+            }
+        }
+    }
+
+    @Override
+    public void update(final VanityUrl url) {
+        delegate.update(url);
+        index.add(url);
+    }
+
+    @Override
+    public VanityUrl read(final AssetId id) {
+        return delegate.read(id);
+    }
+
+    @Override
+    public void delete(final AssetId id) {
+        delegate.delete(id);
+        index.remove(id);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        index.clear();
+    }
+
+    private void ensureLoaded() {
+        if (!index.isStale(maxAge)) {
+            return;
+        }
+        // only one thread loads, others wait for that load to complete
+        synchronized (LOAD_LOCK) {
+            if (index.isStale(maxAge)) {
+                final long t = System.currentTimeMillis();
+                index.load(delegate.readAll());
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Loaded " + index.size() + " url registry keys into the in-memory index in "
+                            + (System.currentTimeMillis() - t) + "ms.");
+                }
+            }
+        }
+    }
+
+}
@@ -31,6 +31,7 @@ import com.fatwire.gst.foundation.facade.logging.LogUtil;
 import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.facade.sql.SqlResultCache;
 import com.fatwire.gst.foundation.facade.sql.table.TableColumn;
 import com.fatwire.gst.foundation.facade.sql.table.TableColumn.Type;
 import com.fatwire.gst.foundation.facade.sql.table.TableCreator;
@@ -188,7 +189,9 @@ public class UrlRegistry implements WraPathTranslationService {
             vl.setValString("opt_depth", Integer.toString(depth));
             vl.setValString("opt_site", site);
 
-            if (!ics.CatalogManager(vl) || ics.GetErrno() < 0) {
+            final boolean ok = ics.CatalogManager(vl);
+            SqlResultCache.invalidate(URLREG_TABLE);
+            if (!ok || ics.GetErrno() < 0) {
                 throw new CSRuntimeException("Failure adding tag to tag registry", ics.GetErrno());
             }
 
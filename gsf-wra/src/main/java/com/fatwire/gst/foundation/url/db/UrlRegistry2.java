@@ -21,6 +21,8 @@ import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
+import javax.sql.DataSource;
+
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 
@@ -31,10 +33,13 @@ import com.fatwire.assetapi.data.AssetId;
 import com.fatwire.gst.foundation.CSRuntimeException;
 import com.fatwire.gst.foundation.controller.AssetIdWithSite;
 import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.assetapi.asset.PreviewContext;
 import com.fatwire.gst.foundation.facade.runtag.asset.FilterAssetsByDate;
+import com.fatwire.gst.foundation.facade.sql.CsDataSource;
 import com.fatwire.gst.foundation.facade.sql.Row;
 import com.fatwire.gst.foundation.facade.sql.SqlHelper;
 import com.fatwire.gst.foundation.url.WraPathTranslationService;
+import com.fatwire.gst.foundation.vwebroot.CachedVirtualWebrootDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebrootApiBypassDao;
 import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
@@ -52,6 +57,15 @@ import com.openmarket.xcelerate.asset.AssetIdImpl;
 public class UrlRegistry2 implements WraPathTranslationService {
     private static final Log LOG = LogUtil.getLog(UrlRegistry2.class);
 
+    /**
+     * the assets that changed while a bulk rebuild was running, guarded by
+     * its own lock.
+     */
+    private static final Set<AssetId> CHANGED_DURING_REBUILD = new HashSet<AssetId>();
+
+    /** the number of bulk rebuilds running, guarded by CHANGED_DURING_REBUILD */
+    private static int rebuilds;
+
     private final ICS ics;
     private final SimpleWRADao wraDao;
     private final VirtualWebrootDao vwDao;
@@ -71,7 +85,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
             final String assettype = asset.getAssettype();
             final long assetid = asset.getAssetid();
             final AssetIdWithSite id = new AssetIdWithSite(assettype, assetid, asset.getOpt_site());
-            if (FilterAssetsByDate.isValidOnDate(ics, id, null)) {
+            if (isValidOnDate(asset, id)) {
                 if (LOG.isDebugEnabled()) {
                     LOG.debug("Resolved and validated effective date for asset " + id + " from virtual-webroot:"
                             + virtual_webroot + " and url-path:" + url_path);
@@ -89,11 +103,37 @@ public class UrlRegistry2 implements WraPathTranslationService {
         return null;
     }
 
+    /**
+     * Checks the date validity of a resolved asset. When the registry is
+     * indexed in memory, the start and end date held in the registry are
+     * checked without going to the database; otherwise the
+     * asset:filterassetsbydate tag is used.
+     * 
+     * @param url the registry entry
+     * @param id the asset of the registry entry
+     * @return true if the asset is valid on the effective date.
+     */
+    private boolean isValidOnDate(final VanityUrl url, final AssetId id) {
+        if (!(regDao instanceof IndexedUrlRegistryDao)) {
+            return FilterAssetsByDate.isValidOnDate(ics, id, null);
+        }
+        if (!PreviewContext.isSitePreviewEnabled(ics)) {
+            return true;
+        }
+        final Date date = PreviewContext.getPreviewDateFromCSVar(ics, "previewDate");
+        final boolean valid = FilterAssetsByDate.isDateWithinRange(url.getStartdate(), date, url.getEnddate());
+        if (valid) {
+            FilterAssetsByDate.logDependency(ics, id, url.getStartdate(), url.getEnddate());
+        }
+        return valid;
+    }
+
     @Override
     public void addAsset(final AssetId id) {
         if (LOG.isTraceEnabled()) {
             LOG.trace("addAsset(AssetId) called for asset " + id);
         }
+        recordChange(id);
         updateAsset_(id);
     }
 
@@ -102,7 +142,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
         if (LOG.isTraceEnabled()) {
             LOG.trace("updateAsset(AssetId) called for asset " + id);
         }
-
+        recordChange(id);
         updateAsset_(id);
     }
 
@@ -111,6 +151,7 @@ public class UrlRegistry2 implements WraPathTranslationService {
         if (LOG.isTraceEnabled()) {
             LOG.trace("deleteAsset(AssetId) called for asset " + id);
         }
+        recordChange(id);
         regDao.delete(id);
     }
 
@@ -195,15 +236,90 @@ public class UrlRegistry2 implements WraPathTranslationService {
     }
 
     /**
-     * Rebuild all entries in the GST URL Registry table. Uses brute force
-     * method and can take a very long time.
+     * Rebuild all entries in the GST URL Registry table. When the registry is
+     * stored in the GSTUrlRegistry table it is built into a shadow table with
+     * the {@link UrlRegistryRebuilder} and swapped in when complete; any other
+     * UrlRegistryDao, or a registry for which the Content Server DataSource
+     * can not be found, is rebuilt asset by asset.
+     * <p/>
+     * The swap replaces the rows that were written for asset events while the
+     * rebuild was running. The assets of those events on this JVM are
+     * therefore updated again once the rebuild is done.
      * 
      * @param stream stream a message back to the browser to prevent timeouts
      */
     public void rebuild(boolean stream) {
+        rebuild(stream, false);
+    }
+
+    /**
+     * Rebuild all entries in the GST URL Registry table.
+     * 
+     * @param stream stream a message back to the browser to prevent timeouts
+     * @param resume continue a previously failed rebuild
+     * @see #rebuild(boolean)
+     */
+    public void rebuild(boolean stream, boolean resume) {
         if (!ics.UserIsMember("xceladmin")) {
             throw new CSRuntimeException("xceladmin user required to rebuild URL Registry", ftErrors.noprivs);
         }
+        if (!(regDao instanceof UrlRegistryDaoImpl || regDao instanceof IndexedUrlRegistryDao)) {
+            rebuildThroughDao(stream);
+            return;
+        }
+        final DataSource ds;
+        try {
+            ds = CsDataSource.lookup(ics);
+        } catch (final RuntimeException e) {
+            LOG.warn("Rebuilding the url registry asset by asset, the DataSource can not be found: "
+                    + e.getMessage());
+            rebuildThroughDao(stream);
+            return;
+        }
+        final UrlRegistryRebuilder rebuilder = new UrlRegistryRebuilder(ics, vwDao);
+        rebuilder.setResume(resume);
+        synchronized (CHANGED_DURING_REBUILD) {
+            rebuilds++;
+        }
+        try {
+            rebuilder.rebuild(ds, _lookupWraAssetTypes(), stream);
+        } finally {
+            replayChanges();
+        }
+    }
+
+    private static void recordChange(final AssetId id) {
+        synchronized (CHANGED_DURING_REBUILD) {
+            if (rebuilds > 0) {
+                CHANGED_DURING_REBUILD.add(id);
+            }
+        }
+    }
+
+    /**
+     * Updates the registry entries of the assets that changed during the
+     * rebuild. Changes after this point are written to the rebuilt registry
+     * directly.
+     */
+    private void replayChanges() {
+        final Set<AssetId> changed;
+        synchronized (CHANGED_DURING_REBUILD) {
+            rebuilds--;
+            changed = new HashSet<AssetId>(CHANGED_DURING_REBUILD);
+            if (rebuilds == 0) {
+                CHANGED_DURING_REBUILD.clear();
+            }
+        }
+        if (!changed.isEmpty()) {
+            LOG.info("Updating the url registry entries of " + changed.size()
+                    + " assets that changed during the rebuild.");
+        }
+        for (final AssetId id : changed) {
+            updateAsset_(id);
+        }
+    }
+
+    private void rebuildThroughDao(boolean stream) {
         regDao.clear();
         if (stream)
             ics.StreamText("Re-creating url registry entries for ");
@@ -213,15 +329,10 @@ public class UrlRegistry2 implements WraPathTranslationService {
                 ics.StreamText("Asset type: " + type);
             for (Row r : SqlHelper.select(ics, type, "SELECT id,template,path,startdate,enddate FROM " + type
                     + " WHERE status!='VO' AND path IS NOT NULL and template IS NOT NULL")) {
-                long id = r.getLong("id");
-                AssetId aid = new AssetIdImpl(type, id);
+                AssetId aid = new AssetIdImpl(type, r.getLong("id"));
                 SimpleWra wra = new SimpleWra(r, aid);
                 if (isWra(wra)) {
                     LOG.debug("Attempting to rebuild registry entry for " + aid);
-                    // stream to prevent timeouts...???? :-(
-                    if (stream)
-                        ics.StreamText(" " + id); // stream immediately (don't
-                                                  // use StreamEvalBytes)
                     addAsset_(wra);
                 }
             }
@@ -258,8 +369,9 @@ public class UrlRegistry2 implements WraPathTranslationService {
             return (UrlRegistry2) o;
         }
 
-        final UrlRegistry2 x = new UrlRegistry2(ics, new DbSimpleWRADao(ics), new VirtualWebrootApiBypassDao(ics),
-                new UrlRegistryDaoImpl(ics));
+        final UrlRegistry2 x = new UrlRegistry2(ics, new DbSimpleWRADao(ics), new CachedVirtualWebrootDao(ics,
+                new VirtualWebrootApiBypassDao(ics)),
+                IndexedUrlRegistryDao.newInstance(ics));
 
         ics.SetObj(UrlRegistry2.class.getName(), x);
         return x;
@@ -47,30 +47,30 @@ import org.apache.commons.logging.Log;
  */
 public class UrlRegistryDaoImpl implements UrlRegistryDao {
 
-    private static final String OPT_SITE = "opt_site";
+    static final String OPT_SITE = "opt_site";
 
-    private static final String OPT_URL_PATH = "opt_url_path";
+    static final String OPT_URL_PATH = "opt_url_path";
 
-    private static final String OPT_VWEBROOT = "opt_vwebroot";
+    static final String OPT_VWEBROOT = "opt_vwebroot";
 
-    private static final String OPT_DEPTH = "opt_depth";
+    static final String OPT_DEPTH = "opt_depth";
 
-    private static final String ENDDATE = "enddate";
+    static final String ENDDATE = "enddate";
 
-    private static final String STARTDATE = "startdate";
+    static final String STARTDATE = "startdate";
 
-    private static final String PATH = "path";
+    static final String PATH = "path";
 
-    private static final String ASSETTYPE = "assettype";
+    static final String ASSETTYPE = "assettype";
 
-    private static final String ASSETID = "assetid";
+    static final String ASSETID = "assetid";
 
-    private static final String ID = "id";
+    static final String ID = "id";
 
     private static final Log LOG = LogUtil.getLog(UrlRegistryDaoImpl.class);
 
     private final ICS ics;
-    private static final String URLREG_TABLE = "GSTUrlRegistry";
+    static final String URLREG_TABLE = "GSTUrlRegistry";
     public static String TABLE_ACL_LIST = ""; // no ACLs because events are
                                               // anonymous
 
@@ -79,7 +79,15 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
     }
 
     public void install() {
-        final TableDef def = new TableDef(URLREG_TABLE, TABLE_ACL_LIST, ftMessage.objecttbl);
+        new TableCreator(ics).createTable(tableDef(URLREG_TABLE));
+    }
+
+    /**
+     * @param name the name of the table
+     * @return the definition of the registry table under the given name.
+     */
+    static TableDef tableDef(final String name) {
+        final TableDef def = new TableDef(name, TABLE_ACL_LIST, ftMessage.objecttbl);
 
         def.addColumn(ID, Type.ccbigint, true).setNullable(false);
         def.addColumn(PATH, Type.ccvarchar).setLength(4000).setNullable(false);
@@ -91,8 +99,7 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
         def.addColumn(OPT_URL_PATH, Type.ccvarchar).setLength(4000).setNullable(true);
         def.addColumn(OPT_DEPTH, Type.ccinteger).setNullable(true);
         def.addColumn(OPT_SITE, Type.ccvarchar).setLength(255).setNullable(true);
-
-        new TableCreator(ics).createTable(def);
+        return def;
     }
 
     public boolean isInstalled() {
@@ -120,23 +127,41 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
         param.setString(1, url_path);
         final List<VanityUrl> l = new LinkedList<VanityUrl>();
         for (final Row row : SqlHelper.select(ics, REGISTRY_SELECT, param)) {
-            final VanityUrl url = new VanityUrl();
-            url.setId(row.getLong(ID));
-            url.setAssetid(row.getLong(ASSETID));
-            url.setAssettype(row.getString(ASSETTYPE));
-            url.setPath(row.getString(PATH));
-            url.setStartdate(row.getDate(STARTDATE));
-            url.setEnddate(row.getDate(ENDDATE));
-            url.setOpt_depth(Integer.parseInt(row.getString(OPT_DEPTH)));
-            url.setOpt_vwebroot(row.getString(OPT_VWEBROOT));
-            url.setOpt_url_path(row.getString(OPT_URL_PATH));
-            url.setOpt_site(row.getString(OPT_SITE));
-            l.add(url);
+            l.add(toVanityUrl(row));
         }
 
         return l;
     }
 
+    /**
+     * Reads all the rows of the registry table in one statement. Used to
+     * populate in-memory indexes on top of this DAO.
+     * 
+     * @return all the registry entries.
+     */
+    public List<VanityUrl> readAll() {
+        final List<VanityUrl> l = new LinkedList<VanityUrl>();
+        for (final Row row : SqlHelper.select(ics, URLREG_TABLE, "SELECT * FROM " + URLREG_TABLE)) {
+            l.add(toVanityUrl(row));
+        }
+        return l;
+    }
+
+    private VanityUrl toVanityUrl(final Row row) {
+        final VanityUrl url = new VanityUrl();
+        url.setId(row.getLong(ID));
+        url.setAssetid(row.getLong(ASSETID));
+        url.setAssettype(row.getString(ASSETTYPE));
+        url.setPath(row.getString(PATH));
+        url.setStartdate(row.getDate(STARTDATE));
+        url.setEnddate(row.getDate(ENDDATE));
+        url.setOpt_depth(Integer.parseInt(row.getString(OPT_DEPTH)));
+        url.setOpt_vwebroot(row.getString(OPT_VWEBROOT));
+        url.setOpt_url_path(row.getString(OPT_URL_PATH));
+        url.setOpt_site(row.getString(OPT_SITE));
+        return url;
+    }
+
     @Override
     public void add(final SimpleWra wra, final VirtualWebroot vw, final String site) {
         if (LOG.isTraceEnabled()) {
@@ -200,18 +225,7 @@ public class UrlRegistryDaoImpl implements UrlRegistryDao {
         if (row == null) {
             return null;
         }
-        final VanityUrl url = new VanityUrl();
-        url.setId(row.getLong(ID));
-        url.setAssetid(row.getLong(ASSETID));
-        url.setAssettype(row.getString(ASSETTYPE));
-        url.setPath(row.getString(PATH));
-        url.setStartdate(row.getDate(STARTDATE));
-        url.setEnddate(row.getDate(ENDDATE));
-        url.setOpt_depth(Integer.parseInt(row.getString(OPT_DEPTH)));
-        url.setOpt_vwebroot(row.getString(OPT_VWEBROOT));
-        url.setOpt_url_path(row.getString(OPT_URL_PATH));
-        url.setOpt_site(row.getString(OPT_SITE));
-        return url;
+        return toVanityUrl(row);
 
     }
 
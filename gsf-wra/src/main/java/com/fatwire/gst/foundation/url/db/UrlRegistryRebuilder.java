@@ -0,0 +1,543 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.ASSETID;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.ASSETTYPE;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.ENDDATE;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.ID;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.OPT_DEPTH;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.OPT_SITE;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.OPT_URL_PATH;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.OPT_VWEBROOT;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.PATH;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.STARTDATE;
+import static com.fatwire.gst.foundation.url.db.UrlRegistryDaoImpl.URLREG_TABLE;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+
+import COM.FutureTense.Interfaces.ICS;
+
+import com.fatwire.gst.foundation.facade.logging.LogUtil;
+import com.fatwire.gst.foundation.facade.sql.CsDataSource;
+import com.fatwire.gst.foundation.facade.sql.SqlHelper;
+import com.fatwire.gst.foundation.facade.sql.table.TableCreator;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebroot;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootDao;
+import com.fatwire.gst.foundation.vwebroot.VirtualWebrootIndex;
+
+/**
+ * Rebuilds the GSTUrlRegistry table in bulk.
+ * <p/>
+ * The virtual webroots are loaded once, the sites are resolved with one query
+ * per asset type and the rows are inserted with JDBC batches. The asset types
+ * are processed in parallel, one worker per asset type, each streaming the
+ * assets in id order.
+ * <p/>
+ * By default the registry is built into a shadow table that is copied into
+ * GSTUrlRegistry in a single transaction at the end, so the registry never
+ * sits half-empty. Because assets are processed in id order and every batch
+ * is committed, a failed rebuild can be resumed: it then continues each asset
+ * type after the highest asset id already present in the target table.
+ * <p/>
+ * The workers use their own JDBC connections to the Content Server
+ * DataSource. The ICS object is only used by the calling thread: it reserves a
+ * first batch of registry ids for each worker before the worker is started,
+ * and hands out further ids when a worker asks for them while it waits for
+ * the workers to complete.
+ */
+public class UrlRegistryRebuilder {
+    private static final Log LOG = LogUtil.getLog(UrlRegistryRebuilder.class);
+
+    static final String SHADOW_TABLE = URLREG_TABLE + "Shadow";
+
+    private static final String COLUMNS = ID + "," + PATH + "," + ASSETTYPE + "," + ASSETID + "," + STARTDATE + ","
+            + ENDDATE + "," + OPT_VWEBROOT + "," + OPT_URL_PATH + "," + OPT_DEPTH + "," + OPT_SITE;
+
+    private static final long PROGRESS_INTERVAL = 5000L;
+
+    private static final long ID_POLL_INTERVAL = 50L;
+
+    private final ICS ics;
+    private final VirtualWebrootDao vwDao;
+
+    private int threads = 4;
+    private int batchSize = 500;
+    private boolean shadow = true;
+    private boolean resume = false;
+
+    private final Map<String, AtomicLong> progress = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final BlockingQueue<IdRequest> idRequests = new LinkedBlockingQueue<IdRequest>();
+
+    public UrlRegistryRebuilder(final ICS ics, final VirtualWebrootDao vwDao) {
+        this.ics = ics;
+        this.vwDao = vwDao;
+    }
+
+    /**
+     * @param threads the number of asset types that are processed in parallel
+     */
+    public void setThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * @param batchSize the number of rows per JDBC batch and per commit
+     */
+    public void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param shadow true to build into a shadow table that is swapped in at
+     *            the end, false to build directly into GSTUrlRegistry
+     */
+    public void setShadow(final boolean shadow) {
+        this.shadow = shadow;
+    }
+
+    /**
+     * @param resume true to continue a previously failed rebuild instead of
+     *            starting from an empty table
+     */
+    public void setResume(final boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @return the number of registry rows written so far, per asset type.
+     */
+    public Map<String, Long> getProgress() {
+        final Map<String, Long> m = new HashMap<String, Long>();
+        for (final Map.Entry<String, AtomicLong> e : progress.entrySet()) {
+            m.put(e.getKey(), e.getValue().get());
+        }
+        return m;
+    }
+
+    /**
+     * Rebuilds the registry for the given asset types.
+     *
+     * @param types the web-referenceable asset types
+     * @param stream stream progress messages back to the browser to prevent
+     *            timeouts
+     */
+    public void rebuild(final Collection<String> types, final boolean stream) {
+        rebuild(CsDataSource.lookup(ics), types, stream);
+    }
+
+    /**
+     * Rebuilds the registry for the given asset types.
+     *
+     * @param ds the Content Server DataSource
+     * @param types the web-referenceable asset types
+     * @param stream stream progress messages back to the browser to prevent
+     *            timeouts
+     */
+    public void rebuild(final DataSource ds, final Collection<String> types, final boolean stream) {
+        final long start = System.currentTimeMillis();
+        final VirtualWebrootIndex vwIndex = new VirtualWebrootIndex(vwDao.getVirtualWebrootEnvironment(),
+                vwDao.getAllVirtualWebroots());
+        if (vwIndex.size() == 0) {
+            LOG.warn("No virtual webroots found for environment " + vwIndex.getEnvironment()
+                    + ", the url registry will be empty.");
+        }
+
+        final String target = shadow ? SHADOW_TABLE : URLREG_TABLE;
+        prepareTarget(target);
+
+        progress.clear();
+        idRequests.clear();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, types.size())));
+        final CompletionService<Long> completion = new ExecutorCompletionService<Long>(executor);
+        try {
+            for (final String type : types) {
+                final AtomicLong counter = new AtomicLong();
+                progress.put(type, counter);
+                completion.submit(new TypeWorker(ds, vwIndex, target, type, counter, genIds(batchSize)));
+            }
+            if (stream) {
+                ics.StreamText("Re-creating url registry entries for " + types.size() + " asset types");
+            }
+            int done = 0;
+            long lastReport = System.currentTimeMillis();
+            while (done < types.size()) {
+                final IdRequest request = idRequests.poll(ID_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (request != null) {
+                    request.fulfil();
+                }
+                Future<Long> f;
+                while ((f = completion.poll()) != null) {
+                    f.get();
+                    done++;
+                }
+                if (System.currentTimeMillis() - lastReport >= PROGRESS_INTERVAL) {
+                    lastReport = System.currentTimeMillis();
+                    final String msg = "Url registry rebuild: " + done + " of " + types.size()
+                            + " asset types completed, progress " + getProgress();
+                    LOG.info(msg);
+                    if (stream) {
+                        ics.StreamText(" " + msg); // stream immediately to
+                                                   // prevent timeouts
+                    }
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Url registry rebuild was interrupted. It can be resumed.", e);
+        } catch (final ExecutionException e) {
+            throw new RuntimeException("Url registry rebuild failed: " + e.getCause().getMessage()
+                    + ". It can be resumed.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (shadow) {
+            swap(ds);
+        }
+        SqlHelper.flushCatalog(ics, target);
+        SqlHelper.flushCatalog(ics, URLREG_TABLE);
+        ics.ClearErrno();
+        IndexedUrlRegistryDao.invalidate();
+
+        final String msg = "Url registry rebuild completed in " + (System.currentTimeMillis() - start) + "ms: "
+                + getProgress();
+        LOG.info(msg);
+        if (stream) {
+            ics.StreamText("..." + msg);
+        }
+    }
+
+    private void prepareTarget(final String target) {
+        if (shadow && !SqlHelper.tableExists(ics, SHADOW_TABLE)) {
+            LOG.debug("Creating shadow table " + SHADOW_TABLE);
+            new TableCreator(ics).createTable(UrlRegistryDaoImpl.tableDef(SHADOW_TABLE));
+        }
+        ics.ClearErrno();
+        if (!resume) {
+            SqlHelper.execute(ics, target, "DELETE FROM " + target);
+        }
+    }
+
+    /**
+     * Replaces the content of GSTUrlRegistry with the content of the shadow
+     * table in one transaction.
+     */
+    private void swap(final DataSource ds) {
+        Connection c = null;
+        PreparedStatement delete = null;
+        PreparedStatement copy = null;
+        try {
+            c = ds.getConnection();
+            c.setAutoCommit(false);
+            delete = c.prepareStatement("DELETE FROM " + URLREG_TABLE);
+            delete.executeUpdate();
+            copy = c.prepareStatement("INSERT INTO " + URLREG_TABLE + " (" + COLUMNS + ") SELECT " + COLUMNS
+                    + " FROM " + SHADOW_TABLE);
+            final int rows = copy.executeUpdate();
+            c.commit();
+            LOG.info("Swapped " + rows + " rows from " + SHADOW_TABLE + " into " + URLREG_TABLE);
+        } catch (final SQLException e) {
+            rollback(c);
+            throw new RuntimeException("Swapping " + SHADOW_TABLE + " into " + URLREG_TABLE + " failed: "
+                    + e.getMessage(), e);
+        } finally {
+            CsDataSource.close(null, delete, null);
+            CsDataSource.close(null, copy, c);
+        }
+        SqlHelper.execute(ics, SHADOW_TABLE, "DELETE FROM " + SHADOW_TABLE);
+    }
+
+    private static void rollback(final Connection c) {
+        if (c != null) {
+            try {
+                c.rollback();
+            } catch (final SQLException e) {
+                LOG.debug("Rollback failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Generates registry ids in the same id space as the rest of the
+     * registry. The ICS object is not thread-safe, so this is only called by
+     * the thread that called {@link #rebuild(Collection, boolean)}.
+     */
+    private long[] genIds(final int n) {
+        final long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = Long.parseLong(ics.genID(true));
+        }
+        return ids;
+    }
+
+    /**
+     * A request from a worker for registry ids, answered by the calling
+     * thread.
+     */
+    private class IdRequest {
+        private final int n;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private long[] ids;
+        private RuntimeException failure;
+
+        IdRequest(final int n) {
+            this.n = n;
+        }
+
+        void fulfil() {
+            try {
+                ids = genIds(n);
+            } catch (final RuntimeException e) {
+                failure = e;
+            } finally {
+                done.countDown();
+            }
+        }
+
+        long[] await() throws InterruptedException {
+            done.await();
+            if (failure != null) {
+                throw failure;
+            }
+            return ids;
+        }
+    }
+
+    /**
+     * Rebuilds the registry entries of one asset type.
+     */
+    private class TypeWorker implements Callable<Long> {
+        private final DataSource ds;
+        private final VirtualWebrootIndex vwIndex;
+        private final String target;
+        private final String type;
+        private final AtomicLong counter;
+        private long[] ids;
+        private int nextId;
+
+        TypeWorker(final DataSource ds, final VirtualWebrootIndex vwIndex, final String target, final String type,
+                final AtomicLong counter, final long[] ids) {
+            this.ds = ds;
+            this.vwIndex = vwIndex;
+            this.target = target;
+            this.type = type;
+            this.counter = counter;
+            this.ids = ids;
+        }
+
+        @Override
+        public Long call() throws Exception {
+            LOG.debug("Re-creating all registry entries for asset type " + type);
+            Connection read = null;
+            Connection write = null;
+            PreparedStatement select = null;
+            PreparedStatement insert = null;
+            ResultSet rs = null;
+            try {
+                read = ds.getConnection();
+                write = ds.getConnection();
+                write.setAutoCommit(false);
+
+                final long after = resume ? lastAssetId(read) : 0;
+                if (after > 0) {
+                    LOG.info("Resuming rebuild of asset type " + type + " after asset id " + after);
+                }
+                final Map<Long, String> sites = resolveSites(read);
+
+                select = read.prepareStatement("SELECT id,template,path,startdate,enddate FROM " + type
+                        + " WHERE status!='VO' AND path IS NOT NULL AND template IS NOT NULL AND id > ? ORDER BY id");
+                select.setFetchSize(batchSize);
+                select.setLong(1, after);
+                insert = write.prepareStatement("INSERT INTO " + target + " (" + COLUMNS
+                        + ") VALUES (?,?,?,?,?,?,?,?,?,?)");
+
+                rs = select.executeQuery();
+                final RegistryRow[] batch = new RegistryRow[batchSize];
+                int n = 0;
+                while (rs.next()) {
+                    final String path = rs.getString("path");
+                    if (StringUtils.isBlank(path) || StringUtils.isBlank(rs.getString("template"))) {
+                        continue;
+                    }
+                    final VirtualWebroot vw = vwIndex.lookup(path);
+                    if (vw == null) {
+                        if (LOG.isTraceEnabled()) {
+                            LOG.trace("Did not add " + type + ":" + rs.getLong("id")
+                                    + " to url registry because no valid virtual webroot was found");
+                        }
+                        continue;
+                    }
+                    final long id = rs.getLong("id");
+                    batch[n++] = new RegistryRow(id, path, rs.getTimestamp("startdate"), rs.getTimestamp("enddate"), vw,
+                            sites.get(id));
+                    if (n == batchSize) {
+                        flush(write, insert, batch, n);
+                        n = 0;
+                    }
+                }
+                if (n > 0) {
+                    flush(write, insert, batch, n);
+                }
+                LOG.debug("Completed " + counter.get() + " registry entries for asset type " + type);
+                return counter.get();
+            } catch (final SQLException e) {
+                rollback(write);
+                throw new RuntimeException("Rebuilding url registry for asset type " + type + " failed after "
+                        + counter.get() + " rows: " + e.getMessage(), e);
+            } finally {
+                CsDataSource.close(rs, select, read);
+                CsDataSource.close(null, insert, write);
+            }
+        }
+
+        private void flush(final Connection c, final PreparedStatement insert, final RegistryRow[] batch, final int n)
+                throws SQLException, InterruptedException {
+            for (int i = 0; i < n; i++) {
+                final RegistryRow r = batch[i];
+                final String urlpath = r.path.substring(r.vw.getMasterVirtualWebroot().length());
+                insert.setLong(1, nextId());
+                insert.setString(2, r.path);
+                insert.setString(3, type);
+                insert.setLong(4, r.id);
+                insert.setTimestamp(5, r.startdate);
+                insert.setTimestamp(6, r.enddate);
+                insert.setString(7, r.vw.getEnvironmentVirtualWebroot());
+                insert.setString(8, urlpath);
+                insert.setInt(9, StringUtils.countMatches(urlpath, "/"));
+                if (r.site == null) {
+                    insert.setNull(10, Types.VARCHAR);
+                } else {
+                    insert.setString(10, r.site);
+                }
+                insert.addBatch();
+                batch[i] = null;
+            }
+            insert.executeBatch();
+            c.commit();
+            counter.addAndGet(n);
+        }
+
+        /**
+         * Takes the next reserved id, asking the calling thread for a new
+         * batch of ids when they are used up.
+         */
+        private long nextId() throws InterruptedException {
+            if (nextId == ids.length) {
+                final IdRequest request = new IdRequest(batchSize);
+                idRequests.put(request);
+                ids = request.await();
+                nextId = 0;
+            }
+            return ids[nextId++];
+        }
+
+        private long lastAssetId(final Connection c) throws SQLException {
+            PreparedStatement s = null;
+            ResultSet rs = null;
+            try {
+                s = c.prepareStatement("SELECT MAX(assetid) FROM " + target + " WHERE assettype=?");
+                s.setString(1, type);
+                rs = s.executeQuery();
+                return rs.next() ? rs.getLong(1) : 0;
+            } finally {
+                CsDataSource.close(rs, s, null);
+            }
+        }
+
+        /**
+         * Resolves the site of all the assets of this type in one query.
+         */
+        private Map<Long, String> resolveSites(final Connection c) throws SQLException {
+            final Map<Long, String> sites = new HashMap<Long, String>();
+            PreparedStatement s = null;
+            ResultSet rs = null;
+            try {
+                s = c.prepareStatement("SELECT ap.assetid, p.name FROM Publication p, AssetPublication ap "
+                        + "WHERE ap.assettype = ? AND ap.pubid=p.id");
+                s.setFetchSize(batchSize);
+                s.setString(1, type);
+                rs = s.executeQuery();
+                while (rs.next()) {
+                    final Long id = rs.getLong(1);
+                    final String previous = sites.get(id);
+                    if (previous == null) {
+                        sites.put(id, rs.getString(2));
+                    } else if (LOG.isDebugEnabled()) {
+                        LOG.debug("Found asset " + type + ":" + id + " in more than one publication, using "
+                                + previous);
+                    }
+                }
+            } finally {
+                CsDataSource.close(rs, s, null);
+            }
+            return sites;
+        }
+    }
+
+    private static class RegistryRow {
+        private final long id;
+        private final String path;
+        private final Timestamp startdate;
+        private final Timestamp enddate;
+        private final VirtualWebroot vw;
+        private final String site;
+
+        RegistryRow(final long id, final String path, final Timestamp startdate, final Timestamp enddate,
+                final VirtualWebroot vw, final String site) {
+            this.id = id;
+            this.path = path;
+            this.startdate = startdate;
+            this.enddate = enddate;
+            this.vw = vw;
+            this.site = site;
+        }
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url.db;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.fatwire.assetapi.data.AssetId;
+import com.fatwire.gst.foundation.facade.cache.RadixTrie;
+
+/**
+ * In-memory index of the GSTUrlRegistry table, keyed by virtual-webroot and
+ * url-path. The candidates for a key are kept in the same order as the
+ * REGISTRY_SELECT query returns them (by startdate, enddate), with their start
+ * and end dates so that date validity can be checked without going to the
+ * database.
+ * <p/>
+ * The index is shared by all threads in the JVM. The VanityUrl objects handed
+ * out by this class must not be modified.
+ */
+final class VanityUrlIndex {
+
+    private static final VanityUrlIndex INSTANCE = new VanityUrlIndex();
+
+    private static final char SEPARATOR = '\u0000';
+
+    private static final VanityUrl[] NONE = new VanityUrl[0];
+
+    private static final Comparator<VanityUrl> DATE_ORDER = new Comparator<VanityUrl>() {
+
+        @Override
+        public int compare(final VanityUrl o1, final VanityUrl o2) {
+            final int i = compare(o1.getStartdate(), o2.getStartdate());
+            return i != 0 ? i : compare(o1.getEnddate(), o2.getEnddate());
+        }
+
+        private int compare(final Date d1, final Date d2) {
+            if (d1 == null) {
+                return d2 == null ? 0 : -1;
+            }
+            return d2 == null ? 1 : d1.compareTo(d2);
+        }
+
+    };
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RadixTrie<VanityUrl[]> trie = new RadixTrie<VanityUrl[]>();
+
+    /** asset to the trie key it is registered under */
+    private final Map<String, String> keys = new HashMap<String, String>();
+
+    private volatile long loadedAt = -1;
+
+    static VanityUrlIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param maxAge the maximum age in milliseconds, 0 or less means that the
+     *            index never expires once loaded.
+     * @return true if the index needs to be (re)loaded from the database.
+     */
+    boolean isStale(final long maxAge) {
+        final long t = loadedAt;
+        if (t < 0) {
+            return true;
+        }
+        return maxAge > 0 && System.currentTimeMillis() - t > maxAge;
+    }
+
+    /**
+     * Marks the index as stale, it will be reloaded on next use.
+     */
+    void invalidate() {
+        loadedAt = -1;
+    }
+
+    /**
+     * Replaces the content of the index with the given rows.
+     *
+     * @param urls all the rows of the registry
+     */
+    void load(final Collection<VanityUrl> urls) {
+        lock.writeLock().lock();
+        try {
+            trie.clear();
+            keys.clear();
+            for (final VanityUrl url : urls) {
+                add_(url);
+            }
+            loadedAt = System.currentTimeMillis();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param virtual_webroot
+     * @param url_path
+     * @return the candidates for this virtual webroot and url path, ordered by
+     *         startdate and enddate. Never null.
+     */
+    List<VanityUrl> resolve(final String virtual_webroot, final String url_path) {
+        if (virtual_webroot == null || url_path == null) {
+            return Collections.emptyList();
+        }
+        final VanityUrl[] urls;
+        lock.readLock().lock();
+        try {
+            urls = trie.get(key(virtual_webroot, url_path));
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (urls == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(urls));
+    }
+
+    /**
+     * Adds or replaces the entry for the asset of this url.
+     *
+     * @param url
+     */
+    void add(final VanityUrl url) {
+        lock.writeLock().lock();
+        try {
+            remove_(url.getAssettype(), url.getAssetid());
+            add_(url);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the entry for the asset.
+     *
+     * @param id
+     */
+    void remove(final AssetId id) {
+        lock.writeLock().lock();
+        try {
+            remove_(id.getType(), id.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all entries, but keeps the index marked as loaded, reflecting an
+     * empty registry table.
+     */
+    void clear() {
+        load(Collections.<VanityUrl> emptyList());
+    }
+
+    /**
+     * @return the number of distinct (virtual-webroot, url-path) keys.
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return trie.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add_(final VanityUrl url) {
+        if (url.getOpt_vwebroot() == null || url.getOpt_url_path() == null) {
+            return; // can never be resolved
+        }
+        final String key = key(url.getOpt_vwebroot(), url.getOpt_url_path());
+        final VanityUrl[] current = trie.get(key);
+        final VanityUrl[] urls;
+        if (current == null) {
+            urls = new VanityUrl[] { url };
+        } else {
+            urls = Arrays.copyOf(current, current.length + 1);
+            urls[current.length] = url;
+            Arrays.sort(urls, DATE_ORDER);
+        }
+        trie.put(key, urls);
+        keys.put(assetKey(url.getAssettype(), url.getAssetid()), key);
+    }
+
+    private void remove_(final String type, final long id) {
+        final String key = keys.remove(assetKey(type, id));
+        if (key == null) {
+            return;
+        }
+        final VanityUrl[] current = trie.get(key);
+        if (current == null) {
+            return;
+        }
+        VanityUrl[] urls = NONE;
+        for (final VanityUrl url : current) {
+            if (url.getAssetid() != id || !type.equals(url.getAssettype())) {
+                urls = Arrays.copyOf(urls, urls.length + 1);
+                urls[urls.length - 1] = url;
+            }
+        }
+        if (urls.length == 0) {
+            trie.remove(key);
+        } else {
+            trie.put(key, urls);
+        }
+    }
+
+    private static String key(final String virtual_webroot, final String url_path) {
+        return virtual_webroot + SEPARATOR + url_path;
+    }
+
+    private static String assetKey(final String type, final long id) {
+        return type + ':' + id;
+    }
+}
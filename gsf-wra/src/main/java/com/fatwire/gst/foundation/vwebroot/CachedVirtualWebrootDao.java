@@ -0,0 +1,237 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.vwebroot;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import COM.FutureTense.Interfaces.ICS;
+import COM.FutureTense.Interfaces.ISyncHash;
+
+import com.fatwire.gst.foundation.facade.ics.ConfigProperties;
+import com.fatwire.gst.foundation.facade.runtag.render.LogDep;
+import com.fatwire.gst.foundation.wra.VanityAsset;
+
+/**
+ * VirtualWebrootDao that keeps an immutable snapshot of all the virtual
+ * webroots in memory, shared by all threads in the JVM. There is one snapshot
+ * per type of delegate DAO. Per environment the snapshot holds a
+ * {@link VirtualWebrootIndex} for longest-prefix matches on the master virtual
+ * webroot.
+ * <p/>
+ * The snapshot is loaded through the delegate DAO on first use. It is
+ * discarded after the reload interval in seconds as configured by the property
+ * <tt>com.fatwire.gst.foundation.vwebroot.cache.reload</tt> (default 900, 0
+ * means never), or when it is invalidated. To reach every cluster member, a
+ * marker is kept in a cluster-synchronized ISyncHash that depends on the
+ * GSTVirtualWebroot table, as the CachedPropertyDao does. When that hash is
+ * flushed, because the table changed or {@link #invalidate(ICS)} was called on
+ * any member, the snapshot is reloaded. The WraAssetEventListener calls
+ * {@link #invalidate(ICS)} for every event on a GSTVirtualWebroot asset.
+ * <p/>
+ * When the delegate is an {@link AssetApiVirtualWebrootDao}, a dependency on
+ * every GSTVirtualWebroot asset is recorded each time the snapshot is used, as
+ * the delegate does when it loads them. With the
+ * {@link VirtualWebrootApiBypassDao} no dependencies are recorded.
+ */
+public class CachedVirtualWebrootDao implements VirtualWebrootDao {
+    private static final Log LOG = LogFactory.getLog(CachedVirtualWebrootDao.class.getName());
+
+    public static final String RELOAD_PROPNAME = "com.fatwire.gst.foundation.vwebroot.cache.reload";
+
+    private static final long DEFAULT_RELOAD_SECONDS = 900;
+
+    private static final String TYPE = "GSTVirtualWebroot";
+
+    private static final int TIMEOUT_MINUTES = 60 * 24; // one day
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /**
+     * snapshots by class name of the delegate
+     */
+    private static final ConcurrentMap<String, Snapshot> SNAPSHOTS = new ConcurrentHashMap<String, Snapshot>();
+
+    private final ICS ics;
+    private final VirtualWebrootDao delegate;
+    private final String key;
+    private final boolean logDependencies;
+    private ISyncHash marker;
+
+    /**
+     * Immutable view of all the virtual webroots at a point in time.
+     */
+    private static final class Snapshot {
+        private final SortedSet<VirtualWebroot> all;
+        private final ConcurrentMap<String, VirtualWebrootIndex> indexes = new ConcurrentHashMap<String, VirtualWebrootIndex>();
+        private final long loadedAt = System.currentTimeMillis();
+
+        Snapshot(final SortedSet<VirtualWebroot> all) {
+            this.all = Collections.unmodifiableSortedSet(new TreeSet<VirtualWebroot>(all));
+        }
+
+        VirtualWebrootIndex forEnvironment(final String env) {
+            VirtualWebrootIndex index = indexes.get(env);
+            if (index == null) {
+                index = new VirtualWebrootIndex(env, all);
+                final VirtualWebrootIndex other = indexes.putIfAbsent(env, index);
+                if (other != null) {
+                    index = other;
+                }
+            }
+            return index;
+        }
+    }
+
+    /**
+     * @param ics Content Server context
+     * @param delegate the DAO to load the virtual webroots with
+     */
+    public CachedVirtualWebrootDao(final ICS ics, final VirtualWebrootDao delegate) {
+        this.ics = ics;
+        this.delegate = delegate;
+        this.key = delegate.getClass().getName();
+        this.logDependencies = delegate instanceof AssetApiVirtualWebrootDao;
+    }
+
+    /**
+     * Discards the snapshots of the virtual webroots on all cluster members;
+     * they will be reloaded on next use.
+     * 
+     * @param ics Content Server context
+     */
+    public static void invalidate(final ICS ics) {
+        LOG.debug("Virtual webroot snapshots are invalidated.");
+        SNAPSHOTS.clear();
+        getMarker(ics).clear();
+    }
+
+    private static ISyncHash getMarker(final ICS ics) {
+        return ics.GetSynchronizedHash(CachedVirtualWebrootDao.class.getName(), true, TIMEOUT_MINUTES, 1, true, true,
+                Arrays.asList(ics.GetProperty("cs.dsn") + TYPE));
+    }
+
+    /**
+     * @return the number of calls that were answered from the snapshot.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * @return the number of calls that had to load the snapshot.
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    @Override
+    public VirtualWebroot lookupVirtualWebrootForAsset(final VanityAsset wra) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Looking up virtual webroot for WRA " + wra.getId());
+        }
+        return lookupVirtualWebrootForUri(wra.getPath());
+    }
+
+    @Override
+    public VirtualWebroot lookupVirtualWebrootForUri(final String uri) {
+        if (uri == null) {
+            LOG.trace("WRA does not have a path set - cannot locate virtual webroot");
+            return null;
+        }
+        final String env = getVirtualWebrootEnvironment();
+        if (env == null) {
+            return null;
+        }
+        return getSnapshot().forEnvironment(env).lookup(uri);
+    }
+
+    @Override
+    public SortedSet<VirtualWebroot> getAllVirtualWebroots() {
+        return getSnapshot().all;
+    }
+
+    @Override
+    public String getVirtualWebrootEnvironment() {
+        return delegate.getVirtualWebrootEnvironment();
+    }
+
+    private ISyncHash getMarker() {
+        if (marker == null) {
+            marker = getMarker(ics);
+        }
+        return marker;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot s = SNAPSHOTS.get(key);
+        if (s != null && getMarker().get(key) == null) {
+            // flushed on this or another cluster member
+            SNAPSHOTS.remove(key, s);
+            s = null;
+        }
+        if (s != null && !isExpired(s)) {
+            HITS.incrementAndGet();
+            logDependencies(s);
+            return s;
+        }
+        synchronized (CachedVirtualWebrootDao.class) {
+            s = SNAPSHOTS.get(key);
+            if (s == null || isExpired(s)) {
+                MISSES.incrementAndGet();
+                // set before loading, a flush during the load discards the
+                // new snapshot
+                getMarker().put(key, Long.valueOf(System.currentTimeMillis()));
+                s = new Snapshot(delegate.getAllVirtualWebroots());
+                SNAPSHOTS.put(key, s);
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Loaded " + s.all.size() + " virtual webroots into the snapshot for " + key + ".");
+                }
+                return s;
+            }
+            HITS.incrementAndGet();
+        }
+        logDependencies(s);
+        return s;
+    }
+
+    /**
+     * Records the dependencies on the virtual webroots that the delegate would
+     * have recorded when loading them.
+     */
+    private void logDependencies(final Snapshot s) {
+        if (logDependencies) {
+            for (final VirtualWebroot vw : s.all) {
+                LogDep.logDep(ics, vw.getId());
+            }
+        }
+    }
+
+    private boolean isExpired(final Snapshot s) {
+        final long maxAge = ConfigProperties.getReloadInterval(ics, RELOAD_PROPNAME, DEFAULT_RELOAD_SECONDS);
+        return maxAge > 0 && System.currentTimeMillis() - s.loadedAt > maxAge;
+    }
+
+}
@@ -38,4 +38,12 @@ public interface VirtualWebrootDao {
      * @return list of virtual webroots
      */
     public SortedSet<VirtualWebroot> getAllVirtualWebroots();
+
+    /**
+     * Get the current virtual webroot environment as defined by the
+     * configuration properties. Null indicates that none is configured.
+     *
+     * @return virtual webroot environment or null if not set.
+     */
+    public String getVirtualWebrootEnvironment();
 }
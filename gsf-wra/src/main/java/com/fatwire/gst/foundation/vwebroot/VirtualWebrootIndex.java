@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.vwebroot;
+
+import java.util.Collection;
+
+import com.fatwire.gst.foundation.facade.cache.RadixTrie;
+
+/**
+ * Immutable index of the virtual webroots of one environment, keyed by master
+ * virtual webroot. A lookup returns the virtual webroot with the longest
+ * master virtual webroot that is a prefix of the uri, the same match as
+ * {@link VirtualWebrootApiBypassDao#lookupVirtualWebrootForUri(String)} finds
+ * with its linear scan.
+ * <p/>
+ * Instances are safe to share between threads.
+ */
+public final class VirtualWebrootIndex {
+
+    private final String environment;
+    private final RadixTrie<VirtualWebroot> trie;
+
+    /**
+     * @param environment the environment name, if null nothing will ever be
+     *            found.
+     * @param webroots all the virtual webroots, in the order of
+     *            {@link VirtualWebrootApiBypassDao.UrlInfoComparator}. For
+     *            duplicate master virtual webroots the first one wins.
+     */
+    public VirtualWebrootIndex(final String environment, final Collection<VirtualWebroot> webroots) {
+        this.environment = environment;
+        final RadixTrie<VirtualWebroot> t = new RadixTrie<VirtualWebroot>();
+        if (environment != null) {
+            for (final VirtualWebroot vw : webroots) {
+                if (environment.equals(vw.getEnvironmentName()) && vw.getMasterVirtualWebroot() != null
+                        && !t.containsKey(vw.getMasterVirtualWebroot())) {
+                    t.put(vw.getMasterVirtualWebroot(), vw);
+                }
+            }
+        }
+        this.trie = t;
+    }
+
+    /**
+     * @param uri the path of the asset
+     * @return the VirtualWebroot with the longest master virtual webroot that
+     *         is a prefix of uri, or null if none matches.
+     */
+    public VirtualWebroot lookup(final String uri) {
+        if (uri == null || environment == null) {
+            return null;
+        }
+        return trie.getLongestPrefix(uri);
+    }
+
+    /**
+     * @return the environment name this index is for.
+     */
+    public String getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * @return the number of virtual webroots in this index.
+     */
+    public int size() {
+        return trie.size();
+    }
+
+}
@@ -18,6 +18,7 @@ package com.fatwire.gst.foundation.wra;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
@@ -133,8 +134,6 @@ public class WraCoreFieldApiBypassDao extends AssetApiWraCoreFieldDao {
 	@Override
 	public WebReferenceableAsset getWra(final AssetId id) {
 		if (directSqlAccessTools.isFlex(id)) {
-			// todo: medium: optimize as this is very inefficient for flex
-			// assets
 			final PreparedStmt basicFields = new PreparedStmt(
 					"SELECT id,name,description,subtype,status,path,template,startdate,enddate"
 							+ " FROM " + id.getType() + " WHERE id = ?",
@@ -159,16 +158,14 @@ public class WraCoreFieldApiBypassDao extends AssetApiWraCoreFieldDao {
 				wra.setEndDate(row.getDate("enddate"));
 			}
 
-			wra.setMetaTitle(directSqlAccessTools.getFlexAttributeValue(id,
-					"metatitle"));
-			wra.setMetaDescription(directSqlAccessTools.getFlexAttributeValue(
-					id, "metadescription"));
-			wra.setMetaKeyword(directSqlAccessTools.getFlexAttributeValue(id,
-					"metakeywords"));
-			wra.setH1Title(directSqlAccessTools.getFlexAttributeValue(id,
-					"h1title"));
-			wra.setLinkText(directSqlAccessTools.getFlexAttributeValue(id,
-					"linktext"));
+			final Map<String, String> attrs = directSqlAccessTools
+					.getFlexAttributeValues(id, "metatitle", "metadescription",
+							"metakeywords", "h1title", "linktext");
+			wra.setMetaTitle(attrs.get("metatitle"));
+			wra.setMetaDescription(attrs.get("metadescription"));
+			wra.setMetaKeyword(attrs.get("metakeywords"));
+			wra.setH1Title(attrs.get("h1title"));
+			wra.setLinkText(attrs.get("linktext"));
 
 			return wra;
 		} else {
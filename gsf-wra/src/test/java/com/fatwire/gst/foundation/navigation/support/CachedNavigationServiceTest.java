@@ -0,0 +1,164 @@
+/*
+ * Copyright 2012 Oracle Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.navigation.support;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+import com.fatwire.assetapi.query.Query;
+import com.fatwire.gst.foundation.navigation.NavigationNode;
+import com.fatwire.gst.foundation.navigation.NavigationService;
+import com.fatwire.gst.foundation.test.MockICS;
+
+public class CachedNavigationServiceTest extends TestCase {
+
+    /**
+     * Builds a small tree and counts the builds. The nodes have no assets, so
+     * no dependencies are logged.
+     */
+    private static class CountingNavigationService implements NavigationService {
+        int builds;
+
+        public Collection<NavigationNode> getRootNodesForSite(int depth) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<NavigationNode> getRootNodesForSite(String site, int depth) {
+            builds++;
+            NavigationNode root = node("home", 0);
+            NavigationNode child = node("about", 1);
+            child.addChild(node("team", 2));
+            root.addChild(child);
+            return Collections.singletonList(root);
+        }
+
+        public Collection<NavigationNode> getRootNodesForSite(String site, int depth, String linkAttribute) {
+            return getRootNodesForSite(site, depth);
+        }
+
+        public NavigationNode getNodeByName(String pagename, int depth) {
+            throw new UnsupportedOperationException();
+        }
+
+        public NavigationNode getNodeByName(String site, String pagename, int depth) {
+            return null;
+        }
+
+        public NavigationNode getNodeByName(String site, String pagename, int depth, String linkAttribute) {
+            return null;
+        }
+
+        public NavigationNode getNodeByName(String pagename, int depth, String linkAttribute) {
+            throw new UnsupportedOperationException();
+        }
+
+        public NavigationNode getNodeByQuery(Query query, int depth, String linkAttribute) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static NavigationNode node(String pagename, int level) {
+            NavigationNode node = new NavigationNode();
+            node.setPagename(pagename);
+            node.setLevel(level);
+            return node;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        CachedNavigationService.invalidate();
+    }
+
+    public void testTreeIsBuiltOnce() {
+        CountingNavigationService delegate = new CountingNavigationService();
+        CachedNavigationService svc = new CachedNavigationService(new MockICS(), delegate, "test", null);
+
+        svc.getRootNodesForSite("site", -1);
+        svc.getRootNodesForSite("site", 1);
+        svc.getNodeByName("site", "about", -1);
+        assertEquals(1, delegate.builds);
+
+        svc.getRootNodesForSite("other", -1);
+        assertEquals(2, delegate.builds);
+    }
+
+    public void testDepth() {
+        CachedNavigationService svc = new CachedNavigationService(new MockICS(), new CountingNavigationService(),
+                "test", null);
+
+        NavigationNode root = svc.getRootNodesForSite("site", 0).iterator().next();
+        assertEquals("home", root.getPagename());
+        assertTrue(root.getChildren().isEmpty());
+
+        NavigationNode about = svc.getNodeByName("site", "about", -1);
+        assertEquals(0, about.getLevel());
+        assertEquals("team", about.getChildren().get(0).getPagename());
+        assertEquals(1, about.getChildren().get(0).getLevel());
+    }
+
+    public void testCopiesAreNotShared() {
+        CachedNavigationService svc = new CachedNavigationService(new MockICS(), new CountingNavigationService(),
+                "test", null);
+
+        NavigationNode root = svc.getRootNodesForSite("site", -1).iterator().next();
+        root.getChildren().clear();
+        root = svc.getRootNodesForSite("site", -1).iterator().next();
+        assertEquals(1, root.getChildren().size());
+    }
+
+    public void testInvalidate() {
+        CountingNavigationService delegate = new CountingNavigationService();
+        CachedNavigationService svc = new CachedNavigationService(new MockICS(), delegate, "test", null);
+
+        svc.getRootNodesForSite("site", -1);
+        CachedNavigationService.invalidate();
+        svc.getRootNodesForSite("site", -1);
+        assertEquals(2, delegate.builds);
+    }
+
+    public void testInvalidateDuringBuild() {
+        CountingNavigationService delegate = new CountingNavigationService() {
+            @Override
+            public Collection<NavigationNode> getRootNodesForSite(String site, int depth) {
+                Collection<NavigationNode> roots = super.getRootNodesForSite(site, depth);
+                if (builds == 1) {
+                    // an asset event arrives while the tree is being built
+                    CachedNavigationService.invalidate();
+                }
+                return roots;
+            }
+        };
+        CachedNavigationService svc = new CachedNavigationService(new MockICS(), delegate, "test", null);
+
+        assertEquals(1, svc.getRootNodesForSite("site", -1).size());
+        svc.getRootNodesForSite("site", -1);
+        svc.getRootNodesForSite("site", -1);
+        assertEquals(2, delegate.builds);
+    }
+
+    public void testIsEnabled() {
+        assertFalse(CachedNavigationService.isEnabled(new MockICS()));
+        System.setProperty(CachedNavigationService.ENABLED_PROPNAME, "true");
+        try {
+            assertTrue(CachedNavigationService.isEnabled(new MockICS()));
+        } finally {
+            System.clearProperty(CachedNavigationService.ENABLED_PROPNAME);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2010 FatWire Corporation. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fatwire.gst.foundation.url;
+
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class QueryStringCodecTest extends TestCase {
+
+    private static final String[] SAMPLES = { "", "abc", "a b", "a+b", "a&b=c", "50%", "caf\u00e9",
+            "\u65e5\u672c\u8a9e", "emoji \ud83d\ude00", "lone \ud83d surrogate", "~!*'();:@&=+$,/?#[]", "tab\tnl\n",
+            "\u00a0nbsp\u2028ls", "e\u0301 combining" };
+
+    public void testEncode_likeUrlEncoder() throws Exception {
+        for (String s : SAMPLES) {
+            assertEquals(s, URLEncoder.encode(s, "UTF-8"), QueryStringCodec.encode(s));
+        }
+        Random r = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            String s = randomString(r);
+            assertEquals(s, URLEncoder.encode(s, "UTF-8"), QueryStringCodec.encode(s));
+        }
+    }
+
+    public void testDecode_likeUrlDecoder() throws Exception {
+        for (String s : SAMPLES) {
+            String encoded = URLEncoder.encode(s, "UTF-8");
+            assertEquals(URLDecoder.decode(encoded, "UTF-8"), QueryStringCodec.decode(encoded));
+        }
+        assertEquals(URLDecoder.decode("%C3%A9%41+b%c3", "UTF-8"), QueryStringCodec.decode("%C3%A9%41+b%c3"));
+        assertEquals("a/b", QueryStringCodec.decode("a%2fb"));
+    }
+
+    public void testDecode_roundTrip() throws Exception {
+        Random r = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            String s = randomString(r);
+            assertEquals(URLDecoder.decode(URLEncoder.encode(s, "UTF-8"), "UTF-8"),
+                    QueryStringCodec.decode(QueryStringCodec.encode(s)));
+        }
+    }
+
+    public void testDecode_malformed() {
+        for (String s : new String[] { "%", "a%4", "%zz", "%g0" }) {
+            try {
+                QueryStringCodec.decode(s);
+                fail("expected an IllegalArgumentException for " + s);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    public void testSplit() {
+        QueryStringCodec.Parameters p = QueryStringCodec.split("a=1&b= 2 &a=3&c&d=4&e=");
+        assertEquals(4, p.size());
+        assertEquals("a", p.name(0));
+        assertEquals("1", p.value(0));
+        assertEquals("2", p.value(1));
+        assertEquals("3", p.value(2));
+        // text without '=' becomes part of the next name, a trailing empty
+        // value is dropped
+        assertEquals("c&d", p.name(3));
+        assertEquals("4", p.value(3));
+        assertEquals(0, QueryStringCodec.split(null).size());
+        assertEquals(0, QueryStringCodec.split("novalue").size());
+    }
+
+    public void testToMap() {
+        Map<String, String[]> m = QueryStringCodec.decode(QueryStringCodec.split("a=1&b=x+y&a=%33")).toMap();
+        assertEquals(2, m.size());
+        assertTrue(Arrays.equals(new String[] { "1", "3" }, m.get("a")));
+        assertTrue(Arrays.equals(new String[] { "x y" }, m.get("b")));
+    }
+
+    public void testAppend_excludes() {
+        QueryStringCodec.Parameters p = QueryStringCodec.decode(QueryStringCodec
+                .split("c=Page&cid=1&p=2&x=a+b&empty= "));
+        StringBuilder b = new StringBuilder();
+        assertTrue(QueryStringCodec.append(p, Arrays.asList("c", "cid"), b));
+        assertEquals("p=2&x=a+b", b.toString());
+
+        b.setLength(0);
+        assertFalse(QueryStringCodec.append(p, Arrays.asList("c", "cid", "p", "x"), b));
+        assertEquals(0, b.length());
+    }
+
+    public void testAppendPath_likeUri() throws Exception {
+        for (String s : SAMPLES) {
+            assertPath("/" + s);
+        }
+        assertPath("relative/path");
+        Random r = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            assertPath("/p" + randomString(r));
+        }
+    }
+
+    public void testAppendFragment_likeUri() throws Exception {
+        for (String s : SAMPLES) {
+            assertFragment(s);
+        }
+        Random r = new Random(5);
+        for (int i = 0; i < 2000; i++) {
+            assertFragment(randomString(r));
+        }
+    }
+
+    private void assertPath(String path) throws Exception {
+        StringBuilder b = new StringBuilder();
+        QueryStringCodec.appendPath(path, b);
+        assertEquals(path, new URI(null, null, path, null, null).getRawPath(), b.toString());
+    }
+
+    private void assertFragment(String fragment) throws Exception {
+        if (!fragment.equals(new String(fragment.getBytes("UTF-8"), "UTF-8"))) {
+            // java.net.URI fails on unpaired surrogates
+            return;
+        }
+        StringBuilder b = new StringBuilder();
+        QueryStringCodec.appendFragment(fragment, b);
+        assertEquals(fragment, new URI(null, null, null, null, fragment).toASCIIString(), b.toString());
+    }
+
+    private static String randomString(Random r) {
+        String chars = "aZ09 +%&=?#/:;@~*-_.!'()[]{}|\\^`\"<>,$\t\u0000\u007f\u00e9\u00a0\u0301\u4e2d\ud83d\ude00";
+        int len = r.nextInt(12);
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < len; i++) {
+            b.append(chars.charAt(r.nextInt(chars.length())));
+        }
+        return b.toString();
+    }
+}